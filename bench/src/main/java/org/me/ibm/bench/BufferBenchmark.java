@@ -0,0 +1,75 @@
+package org.me.ibm.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.me.ibm.Buffer;
+import org.me.ibm.DataStreamParser;
+import org.me.ibm.TelnetConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Field lookups on a formatted screen, at positions spread over the whole buffer.
+ *
+ *   java -jar target/benchmarks.jar BufferBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferBenchmark {
+	@Param({ RecordCorpus.ISPF, RecordCorpus.EWA })
+	public String corpus;
+
+	private Buffer buffer;
+	private final int[] positions = new int[1024];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		buffer = new Buffer();
+		DataStreamParser parser = new DataStreamParser(buffer, null);
+		parser.begin(-1);
+		for (byte[] record : RecordCorpus.named(corpus).getRecords()) {
+			parser.receive(record, 0, record.length);
+		}
+
+		Random random = new Random(42);
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = random.nextInt(TelnetConstants.BUFFER_SIZE);
+		}
+	}
+
+	private int nextPosition() {
+		next = (next + 1) & (positions.length - 1);
+		return positions[next];
+	}
+
+	@Benchmark
+	public int findFieldStart() {
+		return buffer.findFieldStart(nextPosition());
+	}
+
+	@Benchmark
+	public int findNextUnprotectedField() {
+		return buffer.findNextUnprotectedField(nextPosition());
+	}
+
+	@Benchmark
+	public boolean isProtected() {
+		return buffer.isProtected(nextPosition());
+	}
+}
@@ -0,0 +1,146 @@
+package org.me.ibm.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.me.ibm.Buffer;
+import org.me.ibm.DataStreamParser;
+import org.me.ibm.TelnetConstants;
+import org.me.ibm.Tn3270Conversions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Reader throughput while one thread keeps applying host records to the same buffer.
+ * Each group pairs that writer with three readers that use a different read path:
+ * the exclusive buffer lock, the optimistic read* accessors, or the published snapshot.
+ *
+ *   java -jar target/benchmarks.jar BufferReadBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferReadBenchmark {
+	private Buffer buffer;
+	private DataStreamParser parser;
+	private byte[] record;
+
+	@State(Scope.Thread)
+	public static class Reader {
+		private int row;
+
+		private int nextPosition() {
+			row = (row + 1) % TelnetConstants.SCREEN_HEIGHT;
+			return row * TelnetConstants.SCREEN_WIDTH;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		buffer = new Buffer();
+		parser = new DataStreamParser(buffer, null);
+		parser.begin(-1);
+		record = screen();
+		parser.receive(record, 0, record.length);
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public void lockedWriter() throws Exception {
+		parser.receive(record, 0, record.length);
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(3)
+	public void lockedReader(Reader reader, Blackhole blackhole) throws Exception {
+		int position = reader.nextPosition();
+		boolean gotLock = false;
+		try {
+			gotLock = buffer.acquireLock();
+			blackhole.consume(buffer.string(position, TelnetConstants.SCREEN_WIDTH));
+			blackhole.consume(buffer.isProtected(position + 1));
+			blackhole.consume(buffer.getCursorPosition());
+		} finally {
+			if (gotLock) {
+				buffer.unlock();
+			}
+		}
+	}
+
+	@Benchmark
+	@Group("optimistic")
+	@GroupThreads(1)
+	public void optimisticWriter() throws Exception {
+		parser.receive(record, 0, record.length);
+	}
+
+	@Benchmark
+	@Group("optimistic")
+	@GroupThreads(3)
+	public void optimisticReader(Reader reader, Blackhole blackhole) {
+		int position = reader.nextPosition();
+		blackhole.consume(buffer.readString(position, TelnetConstants.SCREEN_WIDTH));
+		blackhole.consume(buffer.readProtected(position + 1));
+		blackhole.consume(buffer.readCursorPosition());
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(1)
+	public void snapshotWriter() throws Exception {
+		parser.receive(record, 0, record.length);
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(3)
+	public void snapshotReader(Reader reader, Blackhole blackhole) {
+		int position = reader.nextPosition();
+		blackhole.consume(buffer.getSnapshot().getString(position, TelnetConstants.SCREEN_WIDTH));
+		blackhole.consume(buffer.getSnapshot().isProtected(position + 1));
+		blackhole.consume(buffer.getSnapshot().getCursorPosition());
+	}
+
+	// erase/write with a protected label and an input field on every row
+	private static byte[] screen() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0xF5);
+		out.write(0xC3);
+		for (int row = 0; row < TelnetConstants.SCREEN_HEIGHT; row++) {
+			byte[] address = Tn3270Conversions.getPositionAddress(row * TelnetConstants.SCREEN_WIDTH);
+			out.write(0x11);
+			out.write(address[0]);
+			out.write(address[1]);
+			out.write(0x1D);
+			out.write(0x60);
+			for (char ch : String.format("ROW %02d LABEL", row).toCharArray()) {
+				out.write(Tn3270Conversions.asciiToEbcdic(ch));
+			}
+			out.write(0x1D);
+			out.write(0x40);
+			for (char ch : "INPUT VALUE".toCharArray()) {
+				out.write(Tn3270Conversions.asciiToEbcdic(ch));
+			}
+		}
+		out.write(0xFF);
+		out.write(0xEF);
+		return out.toByteArray();
+	}
+}
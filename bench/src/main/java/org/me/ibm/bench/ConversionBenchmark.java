@@ -0,0 +1,95 @@
+package org.me.ibm.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.me.ibm.CodePage;
+import org.me.ibm.TelnetConstants;
+import org.me.ibm.Tn3270Conversions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Buffer address codecs and EBCDIC conversion, single values and whole screens.
+ *
+ *   java -jar target/benchmarks.jar ConversionBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+	private final int[] positions = new int[1024];
+	private final byte[] addresses = new byte[positions.length * 2];
+	private final byte[] address = new byte[2];
+	private int next;
+
+	private final byte[] ebcdicScreen = new byte[TelnetConstants.BUFFER_SIZE];
+	private final char[] asciiScreen = new char[TelnetConstants.BUFFER_SIZE];
+	private final CodePage codePage = CodePage.forCcsid(37);
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(42);
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = random.nextInt(TelnetConstants.BUFFER_SIZE);
+			Tn3270Conversions.encodeAddress(positions[i], addresses, i * 2);
+		}
+
+		String text = "IBMUSER.PROJ001.COBOL  Edit  Browse  View  0123456789 ";
+		for (int i = 0; i < asciiScreen.length; i++) {
+			asciiScreen[i] = text.charAt(i % text.length());
+		}
+		codePage.encode(asciiScreen, 0, asciiScreen.length, ebcdicScreen, 0);
+	}
+
+	private int nextIndex() {
+		next = (next + 1) & (positions.length - 1);
+		return next;
+	}
+
+	@Benchmark
+	public byte[] encodeAddress() {
+		Tn3270Conversions.encodeAddress(positions[nextIndex()], address, 0);
+		return address;
+	}
+
+	@Benchmark
+	public int decodeAddress() {
+		int i = nextIndex() * 2;
+		return Tn3270Conversions.decodeAddress(addresses[i], addresses[i + 1]);
+	}
+
+	@Benchmark
+	public char ebcdicToAscii() {
+		return Tn3270Conversions.ebcdicToAscii(ebcdicScreen[nextIndex()]);
+	}
+
+	@Benchmark
+	public byte asciiToEbcdic() {
+		return Tn3270Conversions.asciiToEbcdic(asciiScreen[nextIndex()]);
+	}
+
+	@Benchmark
+	public char[] decodeScreen() {
+		codePage.decode(ebcdicScreen, 0, ebcdicScreen.length, asciiScreen, 0);
+		return asciiScreen;
+	}
+
+	@Benchmark
+	public byte[] encodeScreen() {
+		codePage.encode(asciiScreen, 0, asciiScreen.length, ebcdicScreen, 0);
+		return ebcdicScreen;
+	}
+}
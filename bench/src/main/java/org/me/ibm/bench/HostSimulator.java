@@ -0,0 +1,932 @@
+package org.me.ibm.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.me.ibm.CodePage;
+import org.me.ibm.RecordBuffer;
+import org.me.ibm.TelnetConstants;
+import org.me.ibm.Tn3270Conversions;
+
+/*
+ * TN3270 host on a loopback port for load and latency tests. One selector thread accepts
+ * sessions, does the host side of the telnet negotiation (DO TERMINAL-TYPE, SEND, then
+ * binary and EOR both ways) and frames inbound records. What the host shows is up to the
+ * Application: replay() walks through recorded records, logon() is a small templated
+ * logon / ISPF / 3.4 flow that reacts to AID keys and modified fields.
+ *
+ * With setTn3270e(true) the host offers TN3270E (RFC 2355) first: it connects the terminal
+ * to an LU (from setLuNames if given, rejecting names that are unknown or in use), agrees on
+ * BIND-IMAGE, RESPONSES and SYSREQ, and asks for a response to every 3270-DATA record.
+ * Terminals that refuse TN3270E get the plain negotiation.
+ *
+ * Outbound records can be delayed, throttled to a bandwidth and cut into fragments, all of
+ * which is applied per session on a timer thread, so thousands of sessions share two threads.
+ *
+ *   java -cp telnet_3.jar:telnet_3-bench.jar org.me.ibm.bench.HostSimulator [port] [latencyMillis] [bytesPerSecond] [fragmentSize]
+ */
+public class HostSimulator implements Runnable, AutoCloseable {
+	private static final int READ_BUFFER_SIZE = 16384;
+
+	// telnet parse states of a session
+	private static final int STATE_DATA = 0;
+	private static final int STATE_IAC = 1;
+	private static final int STATE_OPTION = 2;
+	private static final int STATE_SB = 3;
+	private static final int STATE_SB_IAC = 4;
+
+	// TN3270E progress of a session
+	private static final int TN3270E_NO = 0;
+	private static final int TN3270E_OFFERED = 1;
+	private static final int TN3270E_DEVICE = 2;
+	private static final int TN3270E_ON = 3;
+
+	private static final byte TTYPE_IS = 0;
+	private static final byte TTYPE_SEND = 1;
+
+	// TN3270E functions the host agrees to
+	private static final byte[] FUNCTIONS = { TelnetConstants.E_FUNC_BIND_IMAGE, TelnetConstants.E_FUNC_RESPONSES, TelnetConstants.E_FUNC_SYSREQ };
+	// a minimal BIND RU for a 24x80 display LU (LU type 2)
+	private static final byte[] BIND_IMAGE = {
+		0x31, 0x01, 0x03, 0x03, (byte) 0xB1, (byte) 0x90, 0x30, (byte) 0x80, 0x00, 0x00, 0x00, 0x02,
+		0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x18, 0x50, 0x00, 0x7E, 0x00, 0x00
+	};
+	private static final String SSCP_READY = "SSCP READY";
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread thread;
+	private final ScheduledExecutorService scheduler;
+	private final Application application;
+	private final AtomicInteger nextSessionId = new AtomicInteger();
+	private volatile boolean running = true;
+
+	private volatile long latencyNanos;
+	private volatile long bytesPerSecond;
+	private volatile int fragmentSize;
+	private volatile boolean tn3270e;
+	private volatile List<String> luNames;
+	private final Set<String> lusInUse = new HashSet<>();
+
+	private final LongAdder sessions = new LongAdder();
+	private final LongAdder recordsReceived = new LongAdder();
+	private final LongAdder recordsSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder positiveResponses = new LongAdder();
+	private final LongAdder negativeResponses = new LongAdder();
+
+	// what the host sends, records are complete with IAC EOR, null sends nothing
+	public interface Application {
+		byte[] connected(Session session);
+		byte[] received(Session session, Inbound inbound);
+	}
+
+	public HostSimulator(Application application) throws IOException {
+		this(application, 0);
+	}
+
+	public HostSimulator(Application application, int port) throws IOException {
+		this.application = application;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+		this.server.configureBlocking(false);
+		this.server.register(selector, SelectionKey.OP_ACCEPT);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread timer = new Thread(runnable, "HostSimulator-Timer");
+			timer.setDaemon(true);
+			return timer;
+		});
+		this.thread = new Thread(this, "HostSimulator");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	// delay between an inbound record (or the end of negotiation) and the first byte of the reply
+	public void setLatency(long latency, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+	}
+
+	// 0 writes as fast as the socket takes it
+	public void setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	// records are written in pieces of at most this many bytes, 0 writes each record in one piece
+	public void setFragmentSize(int fragmentSize) {
+		this.fragmentSize = fragmentSize;
+	}
+
+	// offer TN3270E to sessions accepted from now on
+	public void setTn3270e(boolean tn3270e) {
+		this.tn3270e = tn3270e;
+	}
+
+	// the LUs TN3270E terminals may connect to, null connects each one to an LU of its own
+	public void setLuNames(List<String> luNames) {
+		this.luNames = (luNames != null ? List.copyOf(luNames) : null);
+	}
+
+	public long getPositiveResponses() {
+		return positiveResponses.sum();
+	}
+
+	public long getNegativeResponses() {
+		return negativeResponses.sum();
+	}
+
+	public long getSessionCount() {
+		return sessions.sum();
+	}
+
+	public long getRecordsReceived() {
+		return recordsReceived.sum();
+	}
+
+	public long getRecordsSent() {
+		return recordsSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	@Override
+	public void run() {
+		ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Session session = (Session) key.attachment();
+							if (key.isWritable()) {
+								flush(session);
+							}
+							if (key.isValid() && key.isReadable()) {
+								read(session, in);
+							}
+						}
+					} catch (IOException | CancelledKeyException e) {
+						if (key.attachment() != null) {
+							closeSession((Session) key.attachment());
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			if (running) {
+				System.err.println("HostSimulator stopped: " + e.getMessage());
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		// fragments have to leave as separate segments
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+		Session session = new Session(nextSessionId.incrementAndGet(), channel);
+		session.key = channel.register(selector, SelectionKey.OP_READ, session);
+		sessions.increment();
+
+		if (tn3270e) {
+			// TN3270E first, the terminal type only matters if the terminal turns it down
+			session.tn3270eState = TN3270E_OFFERED;
+			session.doSent[TelnetConstants.TN3270E] = true;
+			sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DO, TelnetConstants.TN3270E });
+			return;
+		}
+
+		// the terminal type is asked for first, the screen follows once it is known
+		session.doSent[TelnetConstants.TERMINAL_TYPE] = true;
+		sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DO, TelnetConstants.TERMINAL_TYPE });
+	}
+
+	private void requestTerminalType(Session session) throws IOException {
+		if (!session.doSent[TelnetConstants.TERMINAL_TYPE]) {
+			session.doSent[TelnetConstants.TERMINAL_TYPE] = true;
+			sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DO, TelnetConstants.TERMINAL_TYPE });
+		}
+		if (!session.terminalTypeRequested) {
+			session.terminalTypeRequested = true;
+			sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TERMINAL_TYPE, TTYPE_SEND, TelnetConstants.IAC, TelnetConstants.SE });
+		}
+	}
+
+	private void read(Session session, ByteBuffer in) throws IOException {
+		in.clear();
+		int count = session.channel.read(in);
+		if (count == -1) {
+			closeSession(session);
+			return;
+		}
+
+		byte[] data = in.array();
+		for (int i = 0; i < count; i++) {
+			byte b = data[i];
+
+			switch (session.telnetState) {
+				case STATE_DATA:
+					if (b == TelnetConstants.IAC) {
+						session.telnetState = STATE_IAC;
+					} else {
+						session.record.append(b);
+					}
+					break;
+				case STATE_IAC:
+					if (b == TelnetConstants.EOR) {
+						session.telnetState = STATE_DATA;
+						endOfRecord(session);
+					} else if (b == TelnetConstants.IAC) {
+						session.telnetState = STATE_DATA;
+						session.record.append(b);
+					} else if (b == TelnetConstants.DO || b == TelnetConstants.DONT || b == TelnetConstants.WILL || b == TelnetConstants.WONT) {
+						session.telnetCommand = b;
+						session.telnetState = STATE_OPTION;
+					} else if (b == TelnetConstants.SB) {
+						session.subnegotiation.reset();
+						session.telnetState = STATE_SB;
+					} else if (b == TelnetConstants.AO && session.tn3270eState == TN3270E_ON) {
+						session.telnetState = STATE_DATA;
+						sysreq(session);
+					} else {
+						session.telnetState = STATE_DATA;
+					}
+					break;
+				case STATE_OPTION:
+					session.telnetState = STATE_DATA;
+					option(session, session.telnetCommand, b);
+					break;
+				case STATE_SB:
+					if (b == TelnetConstants.IAC) {
+						session.telnetState = STATE_SB_IAC;
+					} else {
+						session.subnegotiation.append(b);
+					}
+					break;
+				case STATE_SB_IAC:
+					if (b == TelnetConstants.SE) {
+						session.telnetState = STATE_DATA;
+						subnegotiation(session);
+					} else {
+						session.subnegotiation.append(b);
+						session.telnetState = STATE_SB;
+					}
+					break;
+			}
+		}
+	}
+
+	// only the options a 3270 session needs are accepted, each one is answered once
+	private void option(Session session, byte command, byte option) throws IOException {
+		boolean supported = (option == TelnetConstants.BINARY || option == TelnetConstants.END_OF_RECORD
+			|| option == TelnetConstants.TERMINAL_TYPE || option == TelnetConstants.SUPPRESS_GO_AHEAD
+			|| (option == TelnetConstants.TN3270E && session.tn3270eState != TN3270E_NO));
+		int index = option & 0xFF;
+
+		if (option == TelnetConstants.TN3270E) {
+			if (command == TelnetConstants.WILL && session.tn3270eState == TN3270E_OFFERED) {
+				session.tn3270eState = TN3270E_DEVICE;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TN3270E, TelnetConstants.E_SEND, TelnetConstants.E_DEVICE_TYPE, TelnetConstants.IAC, TelnetConstants.SE });
+			} else if (command == TelnetConstants.WONT && session.tn3270eState != TN3270E_NO) {
+				tn3270eRefused(session);
+			} else if (command == TelnetConstants.DO) {
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.WONT, option });
+			}
+			return;
+		}
+
+		if (command == TelnetConstants.WILL) {
+			if (!supported) {
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DONT, option });
+			} else if (!session.doSent[index]) {
+				session.doSent[index] = true;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DO, option });
+			}
+			// while TN3270E is being negotiated the device type takes the place of the terminal type
+			if (option == TelnetConstants.TERMINAL_TYPE && !session.terminalTypeRequested && session.tn3270eState == TN3270E_NO) {
+				session.terminalTypeRequested = true;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TERMINAL_TYPE, TTYPE_SEND, TelnetConstants.IAC, TelnetConstants.SE });
+			}
+		} else if (command == TelnetConstants.DO) {
+			if (!supported || option == TelnetConstants.TERMINAL_TYPE) {
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.WONT, option });
+			} else if (!session.willSent[index]) {
+				session.willSent[index] = true;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.WILL, option });
+			}
+		}
+	}
+
+	private void subnegotiation(Session session) throws IOException {
+		RecordBuffer sb = session.subnegotiation;
+		if (sb.length() >= 3 && sb.array()[0] == TelnetConstants.TN3270E) {
+			tn3270eSubnegotiation(session, sb.array(), sb.length());
+			return;
+		}
+		if (sb.length() < 2 || sb.array()[0] != TelnetConstants.TERMINAL_TYPE || sb.array()[1] != TTYPE_IS || session.terminalType != null) {
+			return;
+		}
+		session.terminalType = new String(sb.array(), 2, sb.length() - 2, StandardCharsets.US_ASCII);
+
+		// binary and EOR both ways, in case the terminal didn't offer them on its own
+		for (byte option : new byte[] { TelnetConstants.BINARY, TelnetConstants.END_OF_RECORD }) {
+			if (!session.doSent[option]) {
+				session.doSent[option] = true;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.DO, option });
+			}
+			if (!session.willSent[option]) {
+				session.willSent[option] = true;
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.WILL, option });
+			}
+		}
+
+		send(session, application.connected(session));
+	}
+
+	private void tn3270eSubnegotiation(Session session, byte[] data, int length) throws IOException {
+		byte operation = data[1];
+		byte subOperation = data[2];
+
+		if (operation == TelnetConstants.E_DEVICE_TYPE && subOperation == TelnetConstants.E_REQUEST) {
+			int connect = 3;
+			while (connect < length && data[connect] != TelnetConstants.E_CONNECT) {
+				connect++;
+			}
+			String type = new String(data, 3, connect - 3, StandardCharsets.US_ASCII);
+			String name = (connect < length ? new String(data, connect + 1, length - connect - 1, StandardCharsets.US_ASCII) : null);
+
+			byte reason = connectLu(session, name);
+			if (reason >= 0) {
+				sendNow(session, new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TN3270E, TelnetConstants.E_DEVICE_TYPE, TelnetConstants.E_REJECT,
+					TelnetConstants.E_REASON, reason, TelnetConstants.IAC, TelnetConstants.SE });
+				return;
+			}
+			session.terminalType = type;
+
+			RecordBuffer is = new RecordBuffer(64);
+			is.append(new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TN3270E, TelnetConstants.E_DEVICE_TYPE, TelnetConstants.E_IS }, 0, 5);
+			byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+			is.append(typeBytes, 0, typeBytes.length);
+			is.append(TelnetConstants.E_CONNECT);
+			byte[] nameBytes = session.luName.getBytes(StandardCharsets.US_ASCII);
+			is.append(nameBytes, 0, nameBytes.length);
+			is.append(TelnetConstants.IAC);
+			is.append(TelnetConstants.SE);
+			sendNow(session, Arrays.copyOf(is.array(), is.length()));
+		} else if (operation == TelnetConstants.E_FUNCTIONS && (subOperation == TelnetConstants.E_REQUEST || subOperation == TelnetConstants.E_IS)) {
+			int requested = 0;
+			for (int i = 3; i < length; i++) {
+				if (data[i] >= 0 && data[i] < Integer.SIZE) {
+					requested |= 1 << data[i];
+				}
+			}
+			int supported = 0;
+			for (byte function : FUNCTIONS) {
+				supported |= 1 << function;
+			}
+			int agreed = requested & supported;
+
+			if (subOperation == TelnetConstants.E_REQUEST) {
+				// agreed when the terminal asked for nothing we don't have, otherwise counter with the overlap
+				sendFunctions(session, (agreed == requested ? TelnetConstants.E_IS : TelnetConstants.E_REQUEST), agreed);
+				if (agreed != requested) {
+					return;
+				}
+			}
+			tn3270eStarted(session, agreed);
+		}
+	}
+
+	// -1 when the session got its LU, the reject reason otherwise
+	private byte connectLu(Session session, String name) {
+		List<String> names = luNames;
+		if (names == null) {
+			session.luName = (name != null ? name : "SIMLU" + String.format("%03d", session.id));
+			return -1;
+		}
+
+		synchronized (lusInUse) {
+			if (name == null) {
+				for (String candidate : names) {
+					if (!lusInUse.contains(candidate)) {
+						name = candidate;
+						break;
+					}
+				}
+				if (name == null) {
+					return TelnetConstants.E_REASON_DEVICE_IN_USE;
+				}
+			} else if (!names.contains(name)) {
+				return TelnetConstants.E_REASON_INV_NAME;
+			} else if (lusInUse.contains(name)) {
+				return TelnetConstants.E_REASON_DEVICE_IN_USE;
+			}
+			lusInUse.add(name);
+			session.luHeld = true;
+		}
+		session.luName = name;
+		return -1;
+	}
+
+	private void releaseLu(Session session) {
+		synchronized (lusInUse) {
+			if (session.luHeld) {
+				session.luHeld = false;
+				lusInUse.remove(session.luName);
+			}
+		}
+	}
+
+	private void sendFunctions(Session session, byte operation, int functions) throws IOException {
+		RecordBuffer sb = new RecordBuffer(16);
+		sb.append(new byte[] { TelnetConstants.IAC, TelnetConstants.SB, TelnetConstants.TN3270E, TelnetConstants.E_FUNCTIONS, operation }, 0, 5);
+		for (byte function : FUNCTIONS) {
+			if ((functions & (1 << function)) != 0) {
+				sb.append(function);
+			}
+		}
+		sb.append(TelnetConstants.IAC);
+		sb.append(TelnetConstants.SE);
+		sendNow(session, Arrays.copyOf(sb.array(), sb.length()));
+	}
+
+	private void tn3270eStarted(Session session, int functions) {
+		if (session.tn3270eState == TN3270E_ON) {
+			return;
+		}
+		session.tn3270eState = TN3270E_ON;
+		session.functions = functions;
+
+		if ((functions & (1 << TelnetConstants.E_FUNC_BIND_IMAGE)) != 0) {
+			RecordBuffer bind = new RecordBuffer(64);
+			appendHeader(session, bind, TelnetConstants.E_DT_BIND_IMAGE, TelnetConstants.E_RSF_NO_RESPONSE);
+			bind.appendEscaped(BIND_IMAGE, 0, BIND_IMAGE.length);
+			bind.append(TelnetConstants.IAC);
+			bind.append(TelnetConstants.EOR);
+			sendRecord(session, Arrays.copyOf(bind.array(), bind.length()));
+		}
+		send(session, application.connected(session));
+	}
+
+	private void tn3270eRefused(Session session) throws IOException {
+		session.tn3270eState = TN3270E_NO;
+		releaseLu(session);
+		requestTerminalType(session);
+	}
+
+	// SYSREQ switches between the application and the SSCP, the application shows its screen again on the way back
+	private void sysreq(Session session) {
+		session.sscp = !session.sscp;
+		if (session.sscp) {
+			sendRecord(session, sscpText(session, SSCP_READY));
+		} else {
+			send(session, application.received(session, new Inbound(TelnetConstants.AID_SYSREQ, -1, new LinkedHashMap<>())));
+		}
+	}
+
+	private byte[] sscpText(Session session, String text) {
+		byte[] ebcdic = new byte[text.length()];
+		CodePage.DEFAULT.encode(text, 0, text.length(), ebcdic, 0);
+
+		RecordBuffer record = new RecordBuffer(ebcdic.length + 16);
+		appendHeader(session, record, TelnetConstants.E_DT_SSCP_LU_DATA, TelnetConstants.E_RSF_NO_RESPONSE);
+		record.appendEscaped(ebcdic, 0, ebcdic.length);
+		record.append(TelnetConstants.IAC);
+		record.append(TelnetConstants.EOR);
+		return Arrays.copyOf(record.array(), record.length());
+	}
+
+	private void appendHeader(Session session, RecordBuffer out, byte dataType, byte responseFlag) {
+		int sequence = session.nextSequence;
+		session.nextSequence = (sequence + 1) & 0x7FFF;
+		out.append(dataType);
+		out.append((byte) 0);
+		out.append(responseFlag);
+		out.appendEscaped((byte) (sequence >> 8));
+		out.appendEscaped((byte) sequence);
+	}
+
+	private void endOfRecord(Session session) {
+		recordsReceived.increment();
+		byte[] data = session.record.array();
+		int length = session.record.length();
+
+		if (session.tn3270eState == TN3270E_ON) {
+			byte dataType = (length >= TelnetConstants.E_HEADER_SIZE ? data[0] : -1);
+			if (dataType == TelnetConstants.E_DT_RESPONSE) {
+				(data[2] == TelnetConstants.E_RSF_POSITIVE_RESPONSE ? positiveResponses : negativeResponses).increment();
+				session.record.reset();
+				return;
+			}
+			if (dataType == TelnetConstants.E_DT_SSCP_LU_DATA) {
+				char[] text = new char[length - TelnetConstants.E_HEADER_SIZE];
+				CodePage.DEFAULT.decode(data, TelnetConstants.E_HEADER_SIZE, text.length, text, 0);
+				session.record.reset();
+				sendRecord(session, sscpText(session, new String(text).trim() + " ACCEPTED"));
+				return;
+			}
+			if (dataType != TelnetConstants.E_DT_3270_DATA) {
+				session.record.reset();
+				return;
+			}
+			Inbound inbound = Inbound.parse(data, TelnetConstants.E_HEADER_SIZE, length - TelnetConstants.E_HEADER_SIZE);
+			session.record.reset();
+			send(session, application.received(session, inbound));
+			return;
+		}
+
+		Inbound inbound = Inbound.parse(data, 0, length);
+		session.record.reset();
+		send(session, application.received(session, inbound));
+	}
+
+	// telnet replies skip the latency, they are never queued behind a delayed record
+	private void sendNow(Session session, byte[] data) throws IOException {
+		synchronized (session) {
+			session.pending.add(ByteBuffer.wrap(data));
+		}
+		flush(session);
+	}
+
+	private void send(Session session, byte[] record) {
+		if (record == null || record.length == 0) {
+			return;
+		}
+		if (session.tn3270eState == TN3270E_ON) {
+			record = with3270DataHeader(session, record);
+		}
+		sendRecord(session, record);
+	}
+
+	// the record goes out as it is, TN3270E records built here already carry their header
+	private void sendRecord(Session session, byte[] record) {
+		recordsSent.increment();
+		bytesSent.add(record.length);
+
+		long latency = latencyNanos;
+		long bandwidth = bytesPerSecond;
+		int fragment = (fragmentSize > 0 ? fragmentSize : record.length);
+
+		if (latency == 0 && bandwidth == 0 && fragment >= record.length) {
+			enqueue(session, ByteBuffer.wrap(record));
+			return;
+		}
+
+		long now = System.nanoTime();
+		long due;
+		synchronized (session) {
+			// never ahead of the end of the previous record on the same session
+			due = Math.max(now + latency, session.nextSendNanos);
+			for (int offset = 0; offset < record.length; offset += fragment) {
+				ByteBuffer piece = ByteBuffer.wrap(record, offset, Math.min(fragment, record.length - offset));
+				long pieceDue = due;
+				scheduler.schedule(() -> enqueue(session, piece), pieceDue - now, TimeUnit.NANOSECONDS);
+				if (bandwidth > 0) {
+					due += piece.remaining() * 1_000_000_000L / bandwidth;
+				}
+			}
+			session.nextSendNanos = due;
+		}
+	}
+
+	// every screen asks for a response when the terminal agreed to them
+	private byte[] with3270DataHeader(Session session, byte[] record) {
+		boolean responses = (session.functions & (1 << TelnetConstants.E_FUNC_RESPONSES)) != 0;
+		RecordBuffer out = new RecordBuffer(record.length + 8);
+		appendHeader(session, out, TelnetConstants.E_DT_3270_DATA, (responses ? TelnetConstants.E_RSF_ALWAYS_RESPONSE : TelnetConstants.E_RSF_NO_RESPONSE));
+		out.append(record, 0, record.length);
+		return Arrays.copyOf(out.array(), out.length());
+	}
+
+	private void enqueue(Session session, ByteBuffer data) {
+		synchronized (session) {
+			session.pending.add(data);
+		}
+		try {
+			flush(session);
+		} catch (IOException | CancelledKeyException e) {
+			closeSession(session);
+		}
+	}
+
+	private void flush(Session session) throws IOException {
+		synchronized (session) {
+			while (!session.pending.isEmpty()) {
+				ByteBuffer data = session.pending.peek();
+				session.channel.write(data);
+				if (data.hasRemaining()) {
+					// the rest goes out when the selector says the socket can take more
+					if (session.key != null && (session.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+						session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						selector.wakeup();
+					}
+					return;
+				}
+				session.pending.poll();
+			}
+			if (session.key != null && (session.key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+				session.key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	private void closeSession(Session session) {
+		releaseLu(session);
+		session.close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		scheduler.shutdownNow();
+		selector.wakeup();
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() != null) {
+				closeSession((Session) key.attachment());
+			}
+		}
+		server.close();
+	}
+
+	public static final class Session {
+		private final int id;
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+		private long nextSendNanos;
+
+		private final RecordBuffer record = new RecordBuffer(1024);
+		private final RecordBuffer subnegotiation = new RecordBuffer(64);
+		private int telnetState = STATE_DATA;
+		private byte telnetCommand;
+		private final boolean[] doSent = new boolean[256];
+		private final boolean[] willSent = new boolean[256];
+		private boolean terminalTypeRequested;
+		private volatile String terminalType;
+		private volatile int tn3270eState = TN3270E_NO;
+		private volatile String luName;
+		private boolean luHeld;
+		private int functions;
+		private int nextSequence;
+		private boolean sscp;
+
+		private Object state;
+
+		private Session(int id, SocketChannel channel) {
+			this.id = id;
+			this.channel = channel;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getTerminalType() {
+			return terminalType;
+		}
+
+		public boolean isTn3270e() {
+			return tn3270eState == TN3270E_ON;
+		}
+
+		// the LU a TN3270E session is connected to
+		public String getLuName() {
+			return luName;
+		}
+
+		// free for the application to keep track of where the session is
+		public Object getState() {
+			return state;
+		}
+
+		public void setState(Object state) {
+			this.state = state;
+		}
+
+		private void close() {
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				assert true;
+			}
+		}
+	}
+
+	// AID, cursor and the modified fields of one inbound record, field text decoded with the default code page
+	public static final class Inbound {
+		private final byte aid;
+		private final int cursorPosition;
+		private final Map<Integer, String> fields;
+
+		private Inbound(byte aid, int cursorPosition, Map<Integer, String> fields) {
+			this.aid = aid;
+			this.cursorPosition = cursorPosition;
+			this.fields = Collections.unmodifiableMap(fields);
+		}
+
+		static Inbound parse(byte[] data, int offset, int count) {
+			if (count == 0) {
+				return new Inbound((byte) 0, -1, new LinkedHashMap<>());
+			}
+			int length = offset + count;
+			int cursor = (count >= 3 ? Tn3270Conversions.decodeAddress(data[offset + 1], data[offset + 2]) : -1);
+
+			Map<Integer, String> fields = new LinkedHashMap<>();
+			int i = offset + 3;
+			while (i + 2 < length) {
+				if (data[i] != TelnetConstants.SBA) {
+					i++;
+					continue;
+				}
+				int address = Tn3270Conversions.decodeAddress(data[i + 1], data[i + 2]);
+				int start = i + 3;
+				int end = start;
+				while (end < length && data[end] != TelnetConstants.SBA) {
+					end++;
+				}
+				char[] text = new char[end - start];
+				CodePage.DEFAULT.decode(data, start, text.length, text, 0);
+				fields.put(address, new String(text));
+				i = end;
+			}
+			return new Inbound(data[offset], cursor, fields);
+		}
+
+		public byte getAid() {
+			return aid;
+		}
+
+		public int getCursorPosition() {
+			return cursorPosition;
+		}
+
+		// buffer address of the first character of each field to its text
+		public Map<Integer, String> getFields() {
+			return fields;
+		}
+
+		public boolean hasField(String text) {
+			for (String value : fields.values()) {
+				if (value.trim().equalsIgnoreCase(text)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasInput() {
+			for (String value : fields.values()) {
+				if (!value.trim().isEmpty()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	// first record on connect, then the next one for every AID, starting over after the last
+	public static Application replay(List<byte[]> records) {
+		if (records.isEmpty()) {
+			throw new IllegalArgumentException("At least one record is required.");
+		}
+		return new Application() {
+			@Override
+			public byte[] connected(Session session) {
+				session.setState(0);
+				return records.get(0);
+			}
+
+			@Override
+			public byte[] received(Session session, Inbound inbound) {
+				int next = ((Integer) session.getState() + 1) % records.size();
+				session.setState(next);
+				return records.get(next);
+			}
+		};
+	}
+
+	/*
+	 * Logon panel, ENTER with a user id goes to the ISPF menu, option 3.4 to the data set list
+	 * where PF8 / PF7 page, PF3 goes back one level. Any other key shows the current screen again.
+	 */
+	public static Application logon() {
+		return new LogonFlow();
+	}
+
+	private static final class LogonFlow implements Application {
+		private static final int LOGON = -2;
+		private static final int MENU = -1;
+
+		private final byte[] logon = RecordCorpus.named(RecordCorpus.LOGIN).getRecords().get(0);
+		private final byte[] menu = RecordCorpus.named(RecordCorpus.ISPF).getRecords().get(0);
+		// the first page erases the screen, the others only rewrite the list
+		private final List<byte[]> pages = RecordCorpus.named(RecordCorpus.DSLIST).getRecords();
+
+		@Override
+		public byte[] connected(Session session) {
+			session.setState(LOGON);
+			return logon;
+		}
+
+		@Override
+		public byte[] received(Session session, Inbound inbound) {
+			int state = (Integer) session.getState();
+			byte aid = inbound.getAid();
+
+			if (state == LOGON) {
+				if (aid == TelnetConstants.AID_ENTER && inbound.hasInput()) {
+					return show(session, MENU);
+				}
+				return logon;
+			}
+
+			if (state == MENU) {
+				if (aid == TelnetConstants.AID_PF3) {
+					return show(session, LOGON);
+				}
+				if (aid == TelnetConstants.AID_ENTER && inbound.hasField("3.4")) {
+					return show(session, 0);
+				}
+				return menu;
+			}
+
+			// data set list, state is the page
+			if (aid == TelnetConstants.AID_PF3) {
+				return show(session, MENU);
+			}
+			if (aid == TelnetConstants.AID_PF8) {
+				return show(session, Math.min(state + 1, pages.size() - 1));
+			}
+			if (aid == TelnetConstants.AID_PF7) {
+				return show(session, Math.max(state - 1, 0));
+			}
+			return pages.get(state);
+		}
+
+		private byte[] show(Session session, int state) {
+			session.setState(state);
+			return (state == LOGON ? logon : (state == MENU ? menu : pages.get(state)));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = (args.length > 0 ? Integer.parseInt(args[0]) : 0);
+
+		HostSimulator host = new HostSimulator(logon(), port);
+		if (args.length > 1) {
+			host.setLatency(Long.parseLong(args[1]), TimeUnit.MILLISECONDS);
+		}
+		if (args.length > 2) {
+			host.setBandwidth(Long.parseLong(args[2]));
+		}
+		if (args.length > 3) {
+			host.setFragmentSize(Integer.parseInt(args[3]));
+		}
+
+		System.out.println("HostSimulator listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + host.getPort());
+		host.thread.join();
+	}
+}
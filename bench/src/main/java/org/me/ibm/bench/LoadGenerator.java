@@ -0,0 +1,429 @@
+package org.me.ibm.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.me.ibm.LatencyHistogram;
+import org.me.ibm.Screen;
+import org.me.ibm.Tn3270;
+import org.me.ibm.Tn3270SessionEngine;
+import org.me.ibm.Tn3270Threads;
+
+/*
+ * Runs N scripted sessions against a host and reports latency per transaction and per AID
+ * key. An AID is timed from the moment it is sent until the Screen call returns, which is
+ * when the buffer saw the record that completes the host's answer. Sessions start spread over
+ * the ramp up, pause for the think time between steps and keep repeating their script until
+ * the duration is over. A failed transaction counts as an error and the session reconnects.
+ *
+ *   java -cp telnet_3.jar:telnet_3-bench.jar org.me.ibm.bench.LoadGenerator sessions=500 duration=60 rampUp=10 think=500 loops=4 report=load.json
+ *
+ * Without host= an in-process HostSimulator running its logon flow is started, latency=,
+ * bandwidth= and fragment= are passed on to it.
+ */
+public class LoadGenerator {
+	private static final long WAIT_MILLIS = 10000;
+
+	private String host = "localhost";
+	private int port = 23;
+	private int sessions = 10;
+	private long rampUpMillis;
+	private long durationMillis = 30000;
+	private long thinkMillis;
+	private int eventLoops;
+	private Script script = LoadGenerator::logonScript;
+
+	private final Map<String, Stats> transactions = new ConcurrentHashMap<>();
+	private final Map<String, Stats> aids = new ConcurrentHashMap<>();
+	private final LongAdder connectFailures = new LongAdder();
+
+	// one pass of what a user does, repeated until the run is over
+	public interface Script {
+		void run(Session session) throws Exception;
+	}
+
+	public interface Step {
+		void run(Session session) throws Exception;
+	}
+
+	public void setTarget(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public void setSessions(int sessions) {
+		this.sessions = sessions;
+	}
+
+	public void setRampUp(long rampUp, TimeUnit unit) {
+		this.rampUpMillis = unit.toMillis(rampUp);
+	}
+
+	public void setDuration(long duration, TimeUnit unit) {
+		this.durationMillis = unit.toMillis(duration);
+	}
+
+	// the pause between steps is drawn between half and one and a half times this
+	public void setThinkTime(long thinkTime, TimeUnit unit) {
+		this.thinkMillis = unit.toMillis(thinkTime);
+	}
+
+	// 0 gives every session its own parser thread, otherwise the sessions share a session engine
+	public void setEventLoops(int eventLoops) {
+		this.eventLoops = eventLoops;
+	}
+
+	public void setScript(Script script) {
+		this.script = script;
+	}
+
+	public Report run() throws InterruptedException {
+		Tn3270SessionEngine engine = (eventLoops > 0 ? new Tn3270SessionEngine(eventLoops) : null);
+		ThreadFactory threads = (Tn3270Threads.isVirtualThreadSupported() ? Tn3270Threads.virtualThreadFactory() : Tn3270Threads.platformThreadFactory());
+
+		long start = System.nanoTime();
+		long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		List<Thread> running = new ArrayList<>(sessions);
+		try {
+			for (int i = 0; i < sessions; i++) {
+				long startAt = start + TimeUnit.MILLISECONDS.toNanos(sessions > 1 ? rampUpMillis * i / (sessions - 1) : 0);
+				Thread thread = threads.newThread(() -> runSession(engine, startAt, end));
+				thread.start();
+				running.add(thread);
+			}
+			for (Thread thread : running) {
+				thread.join();
+			}
+		} finally {
+			if (engine != null) {
+				engine.close();
+			}
+		}
+		return new Report(this, (System.nanoTime() - start) / 1e9);
+	}
+
+	private void runSession(Tn3270SessionEngine engine, long startAt, long end) {
+		sleepUntil(startAt);
+
+		Session session = new Session(engine);
+		try {
+			while (System.nanoTime() < end) {
+				if (!session.isConnected()) {
+					try {
+						session.transaction("connect", s -> s.connect());
+					} catch (Exception e) {
+						connectFailures.increment();
+						session.think();
+						continue;
+					}
+				}
+
+				try {
+					script.run(session);
+				} catch (Exception e) {
+					// start over on a fresh connection, whatever state the screen was left in
+					session.disconnect();
+				}
+			}
+		} finally {
+			session.disconnect();
+		}
+	}
+
+	private static void sleepUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static Stats stats(Map<String, Stats> map, String name) {
+		return map.computeIfAbsent(name, key -> new Stats());
+	}
+
+	// what a script sees of its session, every AID and transaction is timed
+	public final class Session {
+		private final Tn3270SessionEngine engine;
+		private Tn3270 tn3270;
+
+		private Session(Tn3270SessionEngine engine) {
+			this.engine = engine;
+		}
+
+		public Tn3270 tn3270() {
+			return tn3270;
+		}
+
+		public Screen screen() {
+			return tn3270.screen();
+		}
+
+		boolean isConnected() {
+			return tn3270 != null && tn3270.isConnected();
+		}
+
+		void connect() throws IOException {
+			tn3270 = (engine != null ? new Tn3270(engine) : new Tn3270());
+			tn3270.setSecure(false);
+			tn3270.connect(host, port);
+		}
+
+		void disconnect() {
+			if (tn3270 != null) {
+				try {
+					tn3270.disconnect();
+				} catch (IOException e) {
+					assert true;
+				}
+				tn3270 = null;
+			}
+		}
+
+		public void transaction(String name, Step step) throws Exception {
+			Stats stats = stats(transactions, name);
+			long begin = System.nanoTime();
+			try {
+				step.run(this);
+			} catch (Exception e) {
+				stats.errors.increment();
+				throw e;
+			}
+			stats.latency.record(System.nanoTime() - begin);
+		}
+
+		public void enter() throws Exception {
+			aid("ENTER", s -> s.screen().enter());
+		}
+
+		public void clear() throws Exception {
+			aid("CLEAR", s -> s.screen().clear());
+		}
+
+		public void pf(int key) throws Exception {
+			aid("PF" + key, s -> {
+				Screen screen = s.screen();
+				switch (key) {
+					case 1: screen.pf1(); break;
+					case 2: screen.pf2(); break;
+					case 3: screen.pf3(); break;
+					case 4: screen.pf4(); break;
+					case 5: screen.pf5(); break;
+					case 6: screen.pf6(); break;
+					case 7: screen.pf7(); break;
+					case 8: screen.pf8(); break;
+					case 9: screen.pf9(); break;
+					case 10: screen.pf10(); break;
+					case 11: screen.pf11(); break;
+					case 12: screen.pf12(); break;
+					default: throw new IllegalArgumentException("No PF" + key + " key");
+				}
+			});
+		}
+
+		private void aid(String name, Step step) throws Exception {
+			Stats stats = stats(aids, name);
+			long begin = System.nanoTime();
+			try {
+				step.run(this);
+			} catch (Exception e) {
+				stats.errors.increment();
+				throw e;
+			}
+			stats.latency.record(System.nanoTime() - begin);
+		}
+
+		// types into the n-th input field of the screen, counting from 0
+		public void putField(int field, String text) throws Exception {
+			int position = -1;
+			for (int i = 0; i <= field; i++) {
+				position = tn3270.buffer().findNextUnprotectedField(position);
+			}
+			screen().putString(position + 1, text);
+		}
+
+		public void waitForText(String text) throws Exception {
+			screen().waitForText(text, WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		public void think() {
+			if (thinkMillis > 0) {
+				long pause = ThreadLocalRandom.current().nextLong(thinkMillis / 2, thinkMillis + thinkMillis / 2 + 1);
+				sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause));
+			}
+		}
+	}
+
+	static final class Stats {
+		// finer than the per-session default, there are only a few of these
+		final LatencyHistogram latency = new LatencyHistogram(7);
+		final LongAdder errors = new LongAdder();
+	}
+
+	// logon, open the data set list, page through it and log off, matching HostSimulator.logon()
+	private static void logonScript(Session session) throws Exception {
+		session.transaction("logon", s -> {
+			s.waitForText("TSO/E LOGON");
+			s.putField(0, "IBMUSER");
+			s.enter();
+			s.waitForText("ISPF Primary Option Menu");
+		});
+		session.think();
+
+		session.transaction("dslist", s -> {
+			s.putField(0, "3.4");
+			s.enter();
+			s.waitForText("DSLIST");
+		});
+		session.think();
+
+		for (int page = 0; page < 3; page++) {
+			session.transaction("page", s -> s.pf(8));
+			session.think();
+		}
+
+		session.transaction("logoff", s -> {
+			s.pf(3);
+			s.pf(3);
+			s.waitForText("TSO/E LOGON");
+		});
+		session.think();
+	}
+
+	public static final class Report {
+		private final int sessions;
+		private final double seconds;
+		private final long connectFailures;
+		private final Map<String, Stats> transactions;
+		private final Map<String, Stats> aids;
+
+		private Report(LoadGenerator generator, double seconds) {
+			this.sessions = generator.sessions;
+			this.seconds = seconds;
+			this.connectFailures = generator.connectFailures.sum();
+			this.transactions = new TreeMap<>(generator.transactions);
+			this.aids = new TreeMap<>(generator.aids);
+		}
+
+		public String toJson() {
+			StringBuilder json = new StringBuilder(1024);
+			json.append("{\n");
+			json.append("  \"sessions\": ").append(sessions).append(",\n");
+			json.append("  \"durationSeconds\": ").append(format(seconds)).append(",\n");
+			json.append("  \"connectFailures\": ").append(connectFailures).append(",\n");
+			appendGroup(json, "transactions", transactions);
+			json.append(",\n");
+			appendGroup(json, "aids", aids);
+			json.append("\n}\n");
+			return json.toString();
+		}
+
+		private void appendGroup(StringBuilder json, String group, Map<String, Stats> entries) {
+			json.append("  \"").append(group).append("\": {");
+			String separator = "\n";
+			for (Map.Entry<String, Stats> entry : entries.entrySet()) {
+				LatencyHistogram latency = entry.getValue().latency;
+				long count = latency.getCount();
+				long errors = entry.getValue().errors.sum();
+
+				json.append(separator);
+				separator = ",\n";
+				json.append("    \"").append(entry.getKey()).append("\": {");
+				json.append("\"count\": ").append(count);
+				json.append(", \"errors\": ").append(errors);
+				json.append(", \"errorRate\": ").append(format(count + errors == 0 ? 0 : (double) errors / (count + errors)));
+				json.append(", \"perSecond\": ").append(format(count / seconds));
+				json.append(", \"latencyMillis\": {");
+				json.append("\"min\": ").append(millis(latency.getMin()));
+				json.append(", \"mean\": ").append(format(latency.getMean() / 1e6));
+				json.append(", \"p50\": ").append(millis(latency.getValueAtPercentile(50)));
+				json.append(", \"p90\": ").append(millis(latency.getValueAtPercentile(90)));
+				json.append(", \"p99\": ").append(millis(latency.getValueAtPercentile(99)));
+				json.append(", \"p99.9\": ").append(millis(latency.getValueAtPercentile(99.9)));
+				json.append(", \"max\": ").append(millis(latency.getMax()));
+				json.append("}}");
+			}
+			json.append("\n  }");
+		}
+
+		public void printSummary(PrintStream out) {
+			out.printf(Locale.ROOT, "%d sessions, %.1f s, %d connect failures%n", sessions, seconds, connectFailures);
+			out.printf(Locale.ROOT, "%-12s %9s %7s %9s %9s %9s %9s %9s%n", "", "count", "errors", "per sec", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+			for (Map<String, Stats> group : List.of(transactions, aids)) {
+				for (Map.Entry<String, Stats> entry : group.entrySet()) {
+					LatencyHistogram latency = entry.getValue().latency;
+					out.printf(Locale.ROOT, "%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), latency.getCount(), entry.getValue().errors.sum(),
+						latency.getCount() / seconds, latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6,
+						latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+				}
+			}
+		}
+
+		private static String millis(long nanos) {
+			return format(nanos / 1e6);
+		}
+
+		private static String format(double value) {
+			return String.format(Locale.ROOT, "%.3f", value);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Expected name=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+
+		LoadGenerator generator = new LoadGenerator();
+		generator.setSessions(Integer.parseInt(options.getOrDefault("sessions", "10")));
+		generator.setDuration(Long.parseLong(options.getOrDefault("duration", "30")), TimeUnit.SECONDS);
+		generator.setRampUp(Long.parseLong(options.getOrDefault("rampUp", "0")), TimeUnit.SECONDS);
+		generator.setThinkTime(Long.parseLong(options.getOrDefault("think", "0")), TimeUnit.MILLISECONDS);
+		generator.setEventLoops(Integer.parseInt(options.getOrDefault("loops", "0")));
+
+		HostSimulator simulator = null;
+		if (options.containsKey("host")) {
+			generator.setTarget(options.get("host"), Integer.parseInt(options.getOrDefault("port", "23")));
+		} else {
+			simulator = new HostSimulator(HostSimulator.logon());
+			simulator.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), TimeUnit.MILLISECONDS);
+			simulator.setBandwidth(Long.parseLong(options.getOrDefault("bandwidth", "0")));
+			simulator.setFragmentSize(Integer.parseInt(options.getOrDefault("fragment", "0")));
+			generator.setTarget("127.0.0.1", simulator.getPort());
+		}
+
+		try {
+			Report report = generator.run();
+			report.printSummary(System.out);
+			if (options.containsKey("report")) {
+				Files.write(Path.of(options.get("report")), report.toJson().getBytes(StandardCharsets.UTF_8));
+			}
+		} finally {
+			if (simulator != null) {
+				simulator.close();
+			}
+		}
+	}
+}
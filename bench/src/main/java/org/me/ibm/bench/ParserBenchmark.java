@@ -0,0 +1,77 @@
+package org.me.ibm.bench;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.me.ibm.Buffer;
+import org.me.ibm.DataStreamParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Host records per second through DataStreamParser, push mode, including framing, snapshot
+ * publishing and change collection. The bytes counter turns the same run into bytes/s, add the
+ * GC profiler for allocations per record:
+ *
+ *   java -jar target/benchmarks.jar ParserBenchmark -prof gc
+ *   java -jar target/benchmarks.jar ParserBenchmark -p corpus=/path/to/host-capture.bin
+ *
+ * A corpus that isn't one of the built in names is read as a capture file, see RecordCorpus.load.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+	@Param({ RecordCorpus.LOGIN, RecordCorpus.ISPF, RecordCorpus.DSLIST, RecordCorpus.EWA })
+	public String corpus;
+
+	private DataStreamParser parser;
+	private List<byte[]> records;
+	private int next;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		RecordCorpus recordCorpus = (corpus.indexOf('/') >= 0 || corpus.indexOf('\\') >= 0
+			? RecordCorpus.load(Path.of(corpus))
+			: RecordCorpus.named(corpus));
+		records = recordCorpus.getRecords();
+
+		parser = new DataStreamParser(new Buffer(), null);
+		parser.begin(-1);
+	}
+
+	@Benchmark
+	public void receive(Counters counters) throws Exception {
+		byte[] record = records.get(next);
+		next = (next + 1 == records.size() ? 0 : next + 1);
+
+		parser.receive(record, 0, record.length);
+		counters.bytes += record.length;
+	}
+}
@@ -0,0 +1,295 @@
+package org.me.ibm.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.me.ibm.SessionTrace;
+import org.me.ibm.TelnetConstants;
+import org.me.ibm.Tn3270Conversions;
+
+/*
+ * Host records for the parser benchmarks, each one complete with its IAC EOR. The built in
+ * corpora are modelled on the screens a typical session goes through: the logon panel, a dense
+ * ISPF panel, a 3.4 data set list being scrolled and an erase/write alternate screen made of
+ * SFE fields. A raw capture of the host side of a session, or a SessionTrace, can be used
+ * instead with load().
+ */
+public final class RecordCorpus {
+	public static final String LOGIN = "login";
+	public static final String ISPF = "ispf";
+	public static final String DSLIST = "dslist";
+	public static final String EWA = "ewa";
+
+	private static final int WIDTH = TelnetConstants.SCREEN_WIDTH;
+	private static final int HEIGHT = TelnetConstants.SCREEN_HEIGHT;
+	// data sets in the 3.4 list, sent a page at a time
+	private static final int DSLIST_SIZE = 200;
+
+	private final String name;
+	private final List<byte[]> records;
+	private final long totalBytes;
+
+	private RecordCorpus(String name, List<byte[]> records) {
+		this.name = name;
+		this.records = Collections.unmodifiableList(records);
+		long total = 0;
+		for (byte[] record : records) {
+			total += record.length;
+		}
+		this.totalBytes = total;
+	}
+
+	public static RecordCorpus named(String name) {
+		switch (name) {
+			case LOGIN:
+				return new RecordCorpus(name, List.of(login()));
+			case ISPF:
+				return new RecordCorpus(name, List.of(ispfPanel()));
+			case DSLIST:
+				return new RecordCorpus(name, dataSetList());
+			case EWA:
+				return new RecordCorpus(name, List.of(extendedScreen()));
+			default:
+				throw new IllegalArgumentException("Unknown corpus " + name + ", expected one of " + List.of(LOGIN, ISPF, DSLIST, EWA));
+		}
+	}
+
+	// a capture of the bytes the host sent, split into records at every IAC EOR. A SessionTrace
+	// is read too, its inbound entries are the capture.
+	public static RecordCorpus load(Path file) throws IOException {
+		byte[] data = (SessionTrace.isTrace(file) ? inboundOf(file) : Files.readAllBytes(file));
+		List<byte[]> records = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i + 1 < data.length; i++) {
+			if (data[i] == TelnetConstants.IAC) {
+				if (data[i + 1] == TelnetConstants.EOR) {
+					byte[] record = new byte[i + 2 - start];
+					System.arraycopy(data, start, record, 0, record.length);
+					records.add(record);
+					start = i + 2;
+				}
+				i++; // skip the byte after IAC, an escaped 0xFF can't start an IAC EOR
+			}
+		}
+		if (records.isEmpty()) {
+			throw new IOException("No IAC EOR terminated records in " + file);
+		}
+		return new RecordCorpus(file.getFileName().toString(), records);
+	}
+
+	private static byte[] inboundOf(Path file) throws IOException {
+		ByteArrayOutputStream inbound = new ByteArrayOutputStream();
+		try (SessionTrace.Reader reader = SessionTrace.open(file)) {
+			while (reader.next()) {
+				if (reader.isInbound()) {
+					inbound.write(reader.getData(), 0, reader.getLength());
+				}
+			}
+		}
+		return inbound.toByteArray();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<byte[]> getRecords() {
+		return records;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	private static byte[] login() {
+		RecordBuilder r = new RecordBuilder(TelnetConstants.ERASE_WRITE, (byte) 0xC3);
+		r.sba(0).sf(0x60).text("z/OS V2R5 - TSO/E LOGON");
+		r.sba(2 * WIDTH + 1).sf(0xE8).text("Enter LOGON parameters below:");
+		r.sba(4 * WIDTH + 1).sf(0x60).text("Userid    ===>");
+		r.sf(0x40).text("IBMUSER ").sf(0x60);
+		r.sba(6 * WIDTH + 1).sf(0x60).text("Password  ===>");
+		r.sf(0x4C).ic().text("        ").sf(0x60);
+		r.sba(8 * WIDTH + 1).sf(0x60).text("Procedure ===>");
+		r.sf(0x40).text("IKJACCNT").sf(0x60);
+		r.sba(10 * WIDTH + 1).sf(0x60).text("Acct Nmbr ===>");
+		r.sf(0x40).text("ACCT#").ra(10 * WIDTH + 56, ' ').sf(0x60);
+		r.sba(12 * WIDTH + 1).sf(0x60).text("Size      ===>");
+		r.sf(0x50).text("4096   ").sf(0x60);
+		r.sba(20 * WIDTH + 1).sf(0x60).text("Enter an 'S' before each option desired below:");
+		r.sba(21 * WIDTH + 8).sf(0x40).text(" ").sf(0x60).text("-Nomail");
+		r.sf(0x40).text(" ").sf(0x60).text("-Nonotice");
+		r.sf(0x40).text(" ").sf(0x60).text("-Reconnect");
+		r.sba(23 * WIDTH + 1).sf(0x60).text("PF1/PF13 ==> Help    PF3/PF15 ==> Logoff    PA1 ==> Attention");
+		return r.end();
+	}
+
+	private static String rowCounter(int first) {
+		return String.format(Locale.ROOT, "%14s", "Row " + (first + 1) + " of " + DSLIST_SIZE);
+	}
+
+	// every row carries text, with labels, input fields and highlighted point and shoot fields
+	private static byte[] ispfPanel() {
+		RecordBuilder r = new RecordBuilder(TelnetConstants.ERASE_WRITE, (byte) 0xC3);
+		r.sba(0).sfe(0x60, 0xF1, 0x00).text("  Menu  Utilities  Compilers  Options  Status  Help");
+		r.sba(WIDTH).sfe(0x60, 0xF5, 0x00).ra(2 * WIDTH - 1, '-');
+		r.sba(2 * WIDTH + 18).sfe(0xE8, 0xF5, 0x00).text("ISPF Primary Option Menu");
+		r.sba(3 * WIDTH + 1).sfe(0x60, 0xF1, 0x00).text("Option ===>").sfe(0x40, 0xF4, 0xF4).ic();
+		r.ra(4 * WIDTH - 2, ' ').sf(0x60);
+		String[][] options = {
+			{ "0", "Settings", "Terminal and user parameters" },
+			{ "1", "View", "Display source data or listings" },
+			{ "2", "Edit", "Create or change source data" },
+			{ "3", "Utilities", "Perform utility functions" },
+			{ "4", "Foreground", "Interactive language processing" },
+			{ "5", "Batch", "Submit job for language processing" },
+			{ "6", "Command", "Enter TSO or Workstation commands" },
+			{ "7", "Dialog Test", "Perform dialog testing" },
+			{ "9", "IBM Products", "IBM program development products" },
+			{ "10", "SCLM", "SW Configuration Library Manager" },
+			{ "11", "Workplace", "ISPF Object/Action Workplace" },
+			{ "M", "More", "Additional IBM Products" },
+		};
+		for (int i = 0; i < options.length; i++) {
+			int row = 5 + i;
+			r.sba(row * WIDTH + 1).sfe(0x60, 0xF7, 0xF4).text(String.format("%-3s", options[i][0]));
+			r.sfe(0x60, 0xF4, 0x00).text(String.format("%-13s", options[i][1]));
+			r.sfe(0x60, 0xF5, 0x00).text(String.format("%-38s", options[i][2]));
+			r.sfe(0x60, 0xF6, 0x00).text(String.format("User ID . : %-8s", i == 0 ? "IBMUSER" : ""));
+		}
+		for (int row = 18; row < HEIGHT - 2; row++) {
+			r.sba(row * WIDTH + 1).sf(0x60).text(String.format(Locale.ROOT, "%-78s", "Enter X to Terminate using log/list defaults, row " + row));
+		}
+		r.sba((HEIGHT - 2) * WIDTH + 1).sfe(0x60, 0xF5, 0x00).text(" F1=Help    F2=Split   F3=Exit    F7=Backward F8=Forward  F9=Swap");
+		r.sba((HEIGHT - 1) * WIDTH + 1).sfe(0x60, 0xF5, 0x00).text("F10=Actions F12=Cancel");
+		return r.end();
+	}
+
+	// the first screen of the list and then scrolled pages written over it without erasing
+	private static List<byte[]> dataSetList() {
+		List<byte[]> records = new ArrayList<>();
+		int page = 0;
+		for (int first = 0; first < DSLIST_SIZE; first += HEIGHT - 6) {
+			RecordBuilder r = (page == 0
+				? new RecordBuilder(TelnetConstants.ERASE_WRITE, (byte) 0xC3)
+				: new RecordBuilder(TelnetConstants.WRITE, (byte) 0xC3));
+			if (page == 0) {
+				r.sba(0).sf(0x60).text("DSLIST - Data Sets Matching IBMUSER").ra(WIDTH - 14, ' ').text(rowCounter(first));
+				r.sba(WIDTH).sf(0x60).text("Command ===>").sf(0x40).ra(2 * WIDTH - 16, ' ').sf(0x60).text("Scroll ===>");
+				r.sf(0x40).text("PAGE").sf(0x60);
+				r.sba(3 * WIDTH).sf(0x60).text("Command - Enter \"/\" to select action                  Message           Volume");
+				r.sba(4 * WIDTH).sf(0x60).ra(5 * WIDTH - 1, '-');
+			} else {
+				r.sba(WIDTH - 14).text(rowCounter(first));
+			}
+			for (int i = 0; i < HEIGHT - 6; i++) {
+				int row = 5 + i;
+				String line = "";
+				if (first + i < DSLIST_SIZE) {
+					String dsn = String.format("IBMUSER.PROJ%03d.%s", first + i, (i % 3 == 0 ? "COBOL" : (i % 3 == 1 ? "JCL" : "LOAD")));
+					line = String.format(Locale.ROOT, "%-44s %-17s %-6s", dsn, "", "VOL" + (i % 9));
+				}
+				r.sba(row * WIDTH).sf(0x40).text(" ").sf(0x60);
+				r.text(String.format(Locale.ROOT, "%-75s", line));
+			}
+			r.ic();
+			records.add(r.end());
+			page++;
+		}
+		return records;
+	}
+
+	// fields every few columns, each with an SFE carrying the basic attribute, color and highlighting
+	private static byte[] extendedScreen() {
+		RecordBuilder r = new RecordBuilder(TelnetConstants.ERASE_WRITE_ALTERNATE, (byte) 0xC3);
+		int position = 0;
+		int field = 0;
+		while (position + 10 <= TelnetConstants.BUFFER_SIZE) {
+			boolean input = (field % 4 == 3);
+			r.sba(position).sfe(input ? 0x40 : 0x60, 0xF1 + (field % 7), (field % 5 == 0 ? 0xF2 : 0x00));
+			r.text(String.format("F%04d %s", field, input ? "__" : "OK"));
+			position += 10;
+			field++;
+		}
+		return r.end();
+	}
+
+	// order level writer for building records, text goes through the library's EBCDIC table
+	static final class RecordBuilder {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final byte[] address = new byte[2];
+
+		RecordBuilder(byte command, byte wcc) {
+			out.write(command);
+			out.write(wcc);
+		}
+
+		RecordBuilder sba(int position) {
+			out.write(TelnetConstants.SBA);
+			return address(position);
+		}
+
+		RecordBuilder sf(int attribute) {
+			out.write(TelnetConstants.SF);
+			out.write(attribute);
+			return this;
+		}
+
+		RecordBuilder sfe(int attribute, int color, int highlighting) {
+			int pairs = 1 + (color != 0 ? 1 : 0) + (highlighting != 0 ? 1 : 0);
+			out.write(TelnetConstants.SFE);
+			out.write(pairs);
+			out.write(TelnetConstants.XA_3270);
+			out.write(attribute);
+			if (color != 0) {
+				out.write(TelnetConstants.XA_FOREGROUND);
+				out.write(color);
+			}
+			if (highlighting != 0) {
+				out.write(TelnetConstants.XA_HIGHLIGHTING);
+				out.write(highlighting);
+			}
+			return this;
+		}
+
+		RecordBuilder ic() {
+			out.write(TelnetConstants.IC);
+			return this;
+		}
+
+		RecordBuilder ra(int position, char ch) {
+			out.write(TelnetConstants.RA);
+			address(position);
+			out.write(Tn3270Conversions.asciiToEbcdic(ch));
+			return this;
+		}
+
+		RecordBuilder text(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				byte b = Tn3270Conversions.asciiToEbcdic(text.charAt(i));
+				out.write(b);
+				if (b == TelnetConstants.IAC) {
+					out.write(b);
+				}
+			}
+			return this;
+		}
+
+		byte[] end() {
+			out.write(TelnetConstants.IAC);
+			out.write(TelnetConstants.EOR);
+			return out.toByteArray();
+		}
+
+		private RecordBuilder address(int position) {
+			Tn3270Conversions.encodeAddress(position, address, 0);
+			out.write(address, 0, 2);
+			return this;
+		}
+	}
+}
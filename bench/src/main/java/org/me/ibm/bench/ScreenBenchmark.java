@@ -0,0 +1,110 @@
+package org.me.ibm.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.me.ibm.Buffer;
+import org.me.ibm.DataStreamParser;
+import org.me.ibm.RecordBuffer;
+import org.me.ibm.Screen;
+import org.me.ibm.ScreenSnapshot;
+import org.me.ibm.TelnetConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * The client side of a screen: encoding the modified fields for an AID key, publishing a
+ * snapshot and pulling text back out of it.
+ *
+ *   java -jar target/benchmarks.jar ScreenBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScreenBenchmark {
+	private Buffer buffer;
+	private Screen screen;
+	private ScreenSnapshot snapshot;
+	private final RecordBuffer inbound = new RecordBuffer(1024);
+	private final char[] text = new char[TelnetConstants.BUFFER_SIZE];
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		buffer = new Buffer();
+		DataStreamParser parser = new DataStreamParser(buffer, null);
+		parser.begin(-1);
+		byte[] record = RecordCorpus.named(RecordCorpus.ISPF).getRecords().get(0);
+		parser.receive(record, 0, record.length);
+
+		// the output stream is never used, encodeInbound only fills the record
+		screen = new Screen(buffer, null);
+		int field = buffer.findNextUnprotectedField(0);
+		screen.putString(field + 1, "3.4");
+
+		snapshot = buffer.getSnapshot();
+	}
+
+	@Benchmark
+	public int encodeModifiedFields() throws Exception {
+		boolean gotLock = false;
+		try {
+			gotLock = buffer.acquireLock();
+			inbound.reset();
+			return screen.encodeInbound(TelnetConstants.AID_ENTER, inbound).length();
+		} finally {
+			if (gotLock) {
+				buffer.unlock();
+			}
+		}
+	}
+
+	@Benchmark
+	public ScreenSnapshot publishSnapshot() throws Exception {
+		boolean gotLock = false;
+		try {
+			gotLock = buffer.acquireLock();
+			return buffer.publishSnapshot();
+		} finally {
+			if (gotLock) {
+				buffer.unlock();
+			}
+		}
+	}
+
+	// a separator other than newline isn't cached, so this builds the whole string every time
+	@Benchmark
+	public String screenString() {
+		return snapshot.getString("\r\n");
+	}
+
+	@Benchmark
+	public int copyScreenText() {
+		return snapshot.copyText(0, TelnetConstants.BUFFER_SIZE, text, 0);
+	}
+
+	@Benchmark
+	public void fieldTextViews(Blackhole blackhole) {
+		for (int i = 0; i < snapshot.getFieldCount(); i++) {
+			blackhole.consume(snapshot.getFieldText(i).isBlank());
+		}
+	}
+
+	@Benchmark
+	public void fieldStrings(Blackhole blackhole) {
+		for (int i = 0; i < snapshot.getFieldCount(); i++) {
+			blackhole.consume(snapshot.getFieldText(i).toString());
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package org.me.ibm.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.me.ibm.Tn3270;
+import org.me.ibm.Tn3270Conversions;
+import org.me.ibm.Tn3270Threads;
+
+/*
+ * Compares session density of the platform-thread and virtual-thread parser modes.
+ * Opens N sessions against an in-process host, reports heap, live threads and connect
+ * time, then drives one Screen.enter() per session concurrently, each from its own
+ * thread of the same kind.
+ *
+ *   java -cp telnet_3.jar:telnet_3-bench.jar org.me.ibm.bench.ThreadModeBenchmark [sessions]
+ *
+ * Virtual threads need a Java 21 runtime, on older runtimes only the platform mode runs.
+ */
+public class ThreadModeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int sessions = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+
+		try (IdleHost host = new IdleHost()) {
+			run("platform", sessions, false, host.port());
+
+			if (Tn3270Threads.isVirtualThreadSupported()) {
+				run("virtual", sessions, true, host.port());
+			} else {
+				System.out.println("virtual: skipped, virtual threads require Java 21 or later");
+			}
+		}
+	}
+
+	private static void run(String mode, int sessions, boolean virtual, int port) throws Exception {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		settle();
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+		long nonHeapBefore = memory.getNonHeapMemoryUsage().getUsed();
+		int threadsBefore = threads.getThreadCount();
+
+		List<Tn3270> terminals = new ArrayList<>(sessions);
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			Tn3270 terminal = (virtual ? Tn3270.withVirtualThreads() : new Tn3270());
+			terminal.setSecure(false);
+			terminal.connect("localhost", port);
+			terminals.add(terminal);
+		}
+		long connectNanos = System.nanoTime() - start;
+
+		settle();
+		long heap = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+		long nonHeap = memory.getNonHeapMemoryUsage().getUsed() - nonHeapBefore;
+		int liveThreads = threads.getThreadCount() - threadsBefore;
+
+		// every session presses enter at the same time, blocked in sendCommandKey until its screen arrives
+		ThreadFactory callers = (virtual ? Tn3270Threads.virtualThreadFactory() : Thread::new);
+		CountDownLatch done = new CountDownLatch(sessions);
+		AtomicInteger errors = new AtomicInteger();
+		start = System.nanoTime();
+		for (Tn3270 terminal : terminals) {
+			callers.newThread(() -> {
+				try {
+					terminal.screen().enter();
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		long enterNanos = System.nanoTime() - start;
+
+		for (Tn3270 terminal : terminals) {
+			terminal.disconnect();
+		}
+
+		System.out.printf(
+			"%-8s sessions=%d connect=%dms heap=%dKB (%d B/session) nonHeap=%dKB liveThreads=%d enterAll=%dms errors=%d%n",
+			mode, sessions, connectNanos / 1_000_000, heap / 1024, heap / sessions, nonHeap / 1024,
+			liveThreads, enterNanos / 1_000_000, errors.get()
+		);
+	}
+
+	private static void settle() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(200);
+		}
+	}
+
+	// single threaded host so its own footprint doesn't grow with the session count
+	private static class IdleHost implements Runnable, AutoCloseable {
+		private final Selector selector;
+		private final ServerSocketChannel server;
+		private final Thread thread;
+		private final byte[] screen;
+		private volatile boolean running = true;
+
+		private IdleHost() throws IOException {
+			this.selector = Selector.open();
+			this.server = ServerSocketChannel.open();
+			this.server.bind(new InetSocketAddress("localhost", 0), 4096);
+			this.server.configureBlocking(false);
+			this.server.register(selector, SelectionKey.OP_ACCEPT);
+			this.screen = screen();
+			this.thread = new Thread(this, "IdleHost");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		private int port() {
+			return server.socket().getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer in = ByteBuffer.allocate(4096);
+			try {
+				while (running) {
+					selector.select();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						if (key.isAcceptable()) {
+							SocketChannel channel = server.accept();
+							if (channel != null) {
+								channel.configureBlocking(false);
+								channel.register(selector, SelectionKey.OP_READ, new int[] { -1 });
+								// the client negotiates on its own, the first record ends negotiation
+								write(channel, screen);
+							}
+						} else if (key.isReadable()) {
+							SocketChannel channel = (SocketChannel) key.channel();
+							int[] previous = (int[]) key.attachment();
+							in.clear();
+							int count;
+							try {
+								count = channel.read(in);
+							} catch (IOException e) {
+								count = -1;
+							}
+							if (count == -1) {
+								key.cancel();
+								channel.close();
+								continue;
+							}
+
+							// answer every IAC EOR with a fresh screen
+							for (int i = 0; i < count; i++) {
+								int b = in.get(i) & 0xFF;
+								if (previous[0] == 0xFF && b == 0xEF) {
+									write(channel, screen);
+									previous[0] = -1;
+								} else {
+									previous[0] = (previous[0] == 0xFF && b == 0xFF ? -1 : b);
+								}
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("IdleHost stopped: " + e.getMessage());
+			}
+		}
+
+		private static void write(SocketChannel channel, byte[] data) throws IOException {
+			ByteBuffer out = ByteBuffer.wrap(data);
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+
+		private static byte[] screen() {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.write(0xF5);	// erase/write
+			out.write(0xC3);	// wcc, keyboard restore + reset mdt
+			out.write(0x11);	// sba 0
+			out.write(0x40);
+			out.write(0x40);
+			out.write(0x1D);	// sf protected
+			out.write(0x60);
+			for (char ch : "THREAD MODE BENCHMARK".toCharArray()) {
+				out.write(Tn3270Conversions.asciiToEbcdic(ch));
+			}
+			out.write(0x1D);	// sf unprotected
+			out.write(0x40);
+			out.write(0x13);	// ic
+			out.write(0xFF);	// iac eor
+			out.write(0xEF);
+			return out.toByteArray();
+		}
+
+		@Override
+		public void close() throws IOException {
+			running = false;
+			selector.wakeup();
+			server.close();
+		}
+	}
+}
@@ -1,13 +1,15 @@
 package org.me.ibm;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
 
 
 public class Buffer {
@@ -16,26 +18,60 @@ public class Buffer {
 	
 	private Lock lock = new ReentrantLock();
 	private Condition tn3270Cond = lock.newCondition();
-	private Condition eorCond = lock.newCondition();
+	// signalled after every record, keyboard unlock waits and awaitCondition re-check on it
+	private Condition updateCond = lock.newCondition();
+	private volatile long updateCount = 0;
+	// held for writing while a record or local edit is applied, the read* accessors validate against it instead of taking the lock
+	private final StampedLock stampedLock = new StampedLock();
+	private volatile KeyboardState keyboardState = KeyboardState.AWAITING_FIRST;
+	// end of the last record, the settle time of awaitKeyboardUnlock counts from here
+	private long lastRecordNanos = 0;
+	private final SessionMetrics metrics = new SessionMetrics();
+	// when the last AID went out, 0 once the answer has been signalled
+	private long aidSentNanos = 0;
+	// set once TN3270E is negotiated, records then carry the header that says what they are
+	private volatile Tn3270eSession tn3270e;
 	
 	private final char[] ascii;
+    private CodePage codePage = CodePage.DEFAULT;
     private final byte[] ebcdic;
     private final char[] asciiWriteBuffer;
     private final byte[] ebcdicWriteBuffer;
     private final boolean[] ebcdicModified;
-    private final FieldAttribute[] attributes;
+    // field attributes packed one byte per position, the MDT and extended attributes are kept beside them
+    private final byte[] attributes;
+    private final boolean[] fieldModified;
+    private final byte[] colors;
+    private final byte[] highlights;
     private final boolean[] fieldStarts;
     private int cursorPosition;
     private final List<ScreenUpdateListener> listeners;
+    private final List<ScreenChangeListener> changeListeners;
+    private volatile ScreenChangeDispatcher dispatcher;
+    // readers take the latest published copy instead of the lock
+    private volatile ScreenSnapshot snapshot;
+    private long snapshotVersion = 0;
     
+    // change tracking, what was touched since the last notification
+    private static final long ALL_ROWS = (TelnetConstants.SCREEN_HEIGHT >= Long.SIZE ? -1L : (1L << TelnetConstants.SCREEN_HEIGHT) - 1);
+    private final boolean[] dirtyFieldMarks;
+    private final int[] dirtyFields;
+    private int dirtyFieldCount = 0;
+    private long dirtyRows = 0;
+    private boolean fullScreenDirty = false;
+    private int notifiedCursorPosition = 0;
+    private long changeSequence = 0;
+    
+    // field index, field start positions kept sorted so the owning field of a position is a binary search
+    private final int[] fieldTable;
     private int fieldCount = 0;
-    private int ebcdicCount = 0;
-    private int orderCount = 0;
+    // starts of the fields that take input, rebuilt lazily after a field start or attribute changes
+    private final int[] unprotectedTable;
+    private int unprotectedCount = 0;
+    private boolean unprotectedStale = true;
     private Byte cmd;
 	private Byte wcc;
     private Integer cmdKey = null;
-    private int ack = 0;
-    private boolean ignoreAckCount = false;
     
     public Buffer() {
     	this.ascii = new char[TelnetConstants.BUFFER_SIZE];
@@ -43,11 +79,21 @@ public class Buffer {
         this.asciiWriteBuffer = new char[TelnetConstants.BUFFER_SIZE];
         this.ebcdicWriteBuffer = new byte[TelnetConstants.BUFFER_SIZE];
         this.ebcdicModified = new boolean[TelnetConstants.BUFFER_SIZE];
-        this.attributes = new FieldAttribute[TelnetConstants.BUFFER_SIZE];
+        this.attributes = new byte[TelnetConstants.BUFFER_SIZE];
+        this.fieldModified = new boolean[TelnetConstants.BUFFER_SIZE];
+        this.colors = new byte[TelnetConstants.BUFFER_SIZE];
+        this.highlights = new byte[TelnetConstants.BUFFER_SIZE];
         this.fieldStarts = new boolean[TelnetConstants.BUFFER_SIZE];
+        this.fieldTable = new int[TelnetConstants.BUFFER_SIZE];
+        this.unprotectedTable = new int[TelnetConstants.BUFFER_SIZE];
+        this.dirtyFieldMarks = new boolean[TelnetConstants.BUFFER_SIZE];
+        this.dirtyFields = new int[TelnetConstants.BUFFER_SIZE];
         this.cursorPosition = 0;
-        this.listeners = new ArrayList<>();
+        // copy on write, listeners may add or remove themselves while being notified
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.changeListeners = new CopyOnWriteArrayList<>();
         clear();
+        publishSnapshot();
     }
     
     public void clear() {
@@ -56,20 +102,17 @@ public class Buffer {
     	Arrays.fill(asciiWriteBuffer, ' ');
     	Arrays.fill(ebcdicWriteBuffer, (byte)0x00);//(byte)0x40); // EBCDIC space
     	Arrays.fill(ebcdicModified, false);
-    	Arrays.fill(attributes, new FieldAttribute());
+    	Arrays.fill(attributes, (byte)0x00);
+    	Arrays.fill(fieldModified, false);
+    	Arrays.fill(colors, (byte)0x00);
+    	Arrays.fill(highlights, (byte)0x00);
     	Arrays.fill(fieldStarts, false);
 
         cursorPosition = 0;
         fieldCount = 0;
-        ebcdicCount = 0;
-        orderCount = 0;
-        ack = 0;
-    }
-    
-    public void clearPreCommandCounts() {
-    	orderCount = 0;
-		ebcdicCount = 0;
-		ack = 0;
+        unprotectedCount = 0;
+        unprotectedStale = true;
+        markAllDirty();
     }
     
     public void copyDataToBackground() {
@@ -78,10 +121,12 @@ public class Buffer {
     	
     	Arrays.fill(ascii, ' ');
     	Arrays.fill(ebcdic, (byte)0x00);//(byte)0x40); // EBCDIC space
+    	markAllDirty();
     }
     
     public void restoreDataFromBackground() {
 		if(hasFields()) {
+			markAllDirty();
 			for(int i=0;i<TelnetConstants.BUFFER_SIZE;i++) {
 				if(fieldStarts[i]) {
 					int endIndex = (i+1<TelnetConstants.BUFFER_SIZE?findNextField(i+1):TelnetConstants.BUFFER_SIZE-1);
@@ -145,43 +190,13 @@ public class Buffer {
 				return;
 			}
     		
-    		int currentFiledStart = -1;
-    		FieldAttribute currentAttribute = null;
-			for(int i=0;i<TelnetConstants.BUFFER_SIZE;i++) {
-				int fieldStart = findFieldStart(i);
-				
-				// -1 indicates no field start found, so we can stop processing
-				if(fieldStart<0) {
-					if(
-						currentAttribute!=null && 
-						!currentAttribute.isProtected() &&
-						currentAttribute.isModified()
-					) {
-						attributes[currentFiledStart].modified(false);
-					}
-					continue;
-				}
-				
-				if(fieldStart!=currentFiledStart) {
-					if(
-						currentAttribute!=null && 
-						!currentAttribute.isProtected() &&
-						currentAttribute.isModified()
-					) {
-						attributes[currentFiledStart].modified(false);
-					}
-					currentFiledStart = fieldStart;
-					currentAttribute = attributes[fieldStart];
-				}
-			}
-			
-			if(
-				currentAttribute!=null && 
-				!currentAttribute.isProtected() &&
-				currentAttribute.isModified()
-			) {
-				attributes[currentFiledStart].modified(false);
-			}
+    		for(int i=0;i<fieldCount;i++) {
+    			int fieldStart = fieldTable[i];
+    			
+    			if(!isProtectedAttribute(fieldStart)) {
+    				fieldModified[fieldStart] = false;
+    			}
+    		}
     	} catch (Exception e) {
     		e.printStackTrace();
     	}
@@ -193,27 +208,19 @@ public class Buffer {
 				return;
 			}
     		
-    		int currentFiledStart = -1;
-    		FieldAttribute currentAttribute = null;
-			for(int i=0;i<TelnetConstants.BUFFER_SIZE;i++) {
-				int fieldStart = findFieldStart(i);
-				
-				// -1 indicates no field start found, so we can stop processing
-				if(fieldStart<0) {
-					continue;
-				}
-				
-				if(fieldStart!=currentFiledStart) {
-					currentFiledStart = fieldStart;
-					currentAttribute = attributes[fieldStart];
-				}
-
-				if(currentAttribute.isProtected()) {
-					continue;
-				}
-				
-				setEbcdicCharacter(i, (byte)0x00);
-			}
+    		for(int i=0;i<fieldCount;i++) {
+    			int fieldStart = fieldTable[i];
+    			
+    			if(isProtectedAttribute(fieldStart)) {
+    				continue;
+    			}
+    			
+    			// every position up to the next field start, the last field wraps around to the first
+    			int fieldEnd = (i + 1 < fieldCount ? fieldTable[i + 1] : fieldTable[0] + TelnetConstants.BUFFER_SIZE);
+    			for(int j=fieldStart;j<fieldEnd;j++) {
+    				setEbcdicCharacter(j % TelnetConstants.BUFFER_SIZE, (byte)0x00);
+    			}
+    		}
     	} catch (Exception e) {
     		e.printStackTrace();
     	}
@@ -226,19 +233,43 @@ public class Buffer {
     
     public Buffer setIncomingWriteControlCharacterByte(Byte wcc){
 		this.wcc = wcc;
+		// the first screen unlocks the keyboard whatever its wcc says, after that only keyboard restore does
+		if(wcc != null && ((wcc & TelnetConstants.WCC_KEYBOARD_RESTORE) != 0 || keyboardState == KeyboardState.AWAITING_FIRST)) {
+			restoreKeyboard();
+		}
 		return this;
 	}
     
     public Buffer setAidKey(Integer cmdKey){
-    	clearPreCommandCounts();
     	this.cmdKey = cmdKey;
+    	// the keyboard stays locked until the host restores it
+    	this.keyboardState = KeyboardState.LOCKED;
     	return this;
     }
-
-    public Buffer incOrderCount(){
-		orderCount++;
-		return this;
-	}
+    
+    public Integer getAidKey() {
+    	return cmdKey;
+    }
+    
+    // call while holding the lock, the waiters wake up at the end of the record
+    public void restoreKeyboard() {
+    	keyboardState = KeyboardState.UNLOCKED;
+    }
+    
+    // call while holding the lock, a new connection waits for its first screen again
+    public void resetKeyboard() {
+    	keyboardState = KeyboardState.AWAITING_FIRST;
+    	cmdKey = null;
+    	aidSentNanos = 0;
+    }
+    
+    public KeyboardState getKeyboardState() {
+    	return keyboardState;
+    }
+    
+    public boolean isKeyboardLocked() {
+    	return keyboardState != KeyboardState.UNLOCKED;
+    }
     
     public boolean hasFields() {
     	return fieldCount>0;
@@ -248,45 +279,150 @@ public class Buffer {
     	return wcc;
     }
     
-    protected void awaitEor() throws InterruptedException{
-		eorCond.await(WAIT, UNIT);
+    public Byte cmd() {
+    	return cmd;
+    }
+    
+    // call while holding the lock, waits for the host to unlock the keyboard. Like every wait
+    // here the result is false when the time ran out, TimeoutException only means no lock
+    protected boolean awaitEor() throws InterruptedException{
+		return awaitUnlocked(System.nanoTime() + UNIT.toNanos(WAIT), 0);
+	}
+	public boolean awaitEor(long wait, TimeUnit unit) throws InterruptedException{
+		return awaitUnlocked(System.nanoTime() + unit.toNanos(wait), 0);
 	}
-	public void awaitEor(long wait, TimeUnit unit) throws InterruptedException{
-		eorCond.await(wait, unit);
+	protected boolean awaitEor(long wait, long settle, TimeUnit unit) throws InterruptedException{
+		return awaitUnlocked(System.nanoTime() + unit.toNanos(wait), unit.toNanos(settle));
 	}
+	
+	public boolean awaitKeyboardUnlock(long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return awaitKeyboardUnlock(wait, 0, unit);
+	}
+	
+	// true once the keyboard is unlocked and no record came in for the settle time, for hosts
+	// that unlock and then still send a record or two. False when the wait runs out first,
+	// TimeoutException when the buffer lock could not be had in that time, as with awaitCondition
+	public boolean awaitKeyboardUnlock(long wait, long settle, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(wait);
+		boolean gotLock = false;
+		try {
+			gotLock = acquireLock(wait, unit);
+			return awaitUnlocked(deadline, unit.toNanos(settle));
+		} finally {
+			if(gotLock) {
+				unlock();
+			}
+		}
+	}
+	
+	private boolean awaitUnlocked(long deadline, long settleNanos) throws InterruptedException {
+		while(true) {
+			long now = System.nanoTime();
+			long remaining = deadline - now;
+			if(keyboardState == KeyboardState.UNLOCKED) {
+				long quiet = now - lastRecordNanos;
+				if(quiet >= settleNanos) {
+					return true;
+				}
+				remaining = Math.min(remaining, settleNanos - quiet);
+			}
+			if(deadline - now <= 0) {
+				return false;
+			}
+			updateCond.awaitNanos(remaining);
+		}
+	}
+	
+	// call while holding the lock at the end of every record, answers the AID once the record left the keyboard unlocked
 	public void signalEor(){
-		if(
-			cmd == null ||
-			cmdKey==null ||	// this only happens on the first data stream after telnet negotiation
-			(wcc != null && (wcc & TelnetConstants.WCC_START_PRINTER) != 0) || // indicates page is rendered
-			(ack>0 || ignoreAckCount) || // if ack is greater than 0, we have already signaled once, ignore AckCount was added specifically for ?
-			(orderCount>0 && ebcdicCount>1) || // generally means there is something to display
-			(orderCount==0 && 
-				(
-					cmdKey == TelnetConstants.AID_PA1 ||
-					cmdKey == TelnetConstants.AID_PA2 ||
-					cmdKey == TelnetConstants.AID_PA3 ||
-					cmdKey == TelnetConstants.AID_CLEAR
-				)
-			)
-		) {
-//			if (cmd != null && cmd == TelnetConstants.WRITE && wcc != null && (wcc & TelnetConstants.WCC_START_PRINTER) != 0) {
-//				restoreDataFromBackground();
-//			}
-//			System.out.println("-".repeat(getWidth()) + "\n" + string("\n") + "-".repeat(getWidth()));
-//			System.out.println("signalEor: cmd=" + (cmd!=null?(cmd & 0xff):"null") + ", wcc=" + (wcc!=null?(wcc & 0xff):"null") + ", orders=" + orderCount + ", ebcdic=" + ebcdicCount + ", ack=" + ack + ", cmdKey=" + cmdKey + ", ignoreAckCount=" + ignoreAckCount + 
-//					(wcc!=null && (wcc & TelnetConstants.WCC_START_PRINTER)!=0?" START_PRINTER":"") 
-//				);
-			
-			eorCond.signalAll();
+		lastRecordNanos = System.nanoTime();
+		if(keyboardState != KeyboardState.UNLOCKED) {
+			metrics.eorSignaled(false);
 			return;
 		}
-		
-//		System.out.println("signalEor: cmd=" + (cmd!=null?(cmd & 0xff):"null") + ", wcc=" + (wcc!=null?(wcc & 0xff):"null") + ", orders=" + orderCount + ", ebcdic=" + ebcdicCount + ", ack=" + ack + ", cmdKey=" + cmdKey + ", ignoreAckCount=" + ignoreAckCount + 
-//				(wcc!=null && (wcc & TelnetConstants.WCC_START_PRINTER)!=0?" START_PRINTER":"") 
-//			);
-		
-		ack++;
+		if(aidSentNanos != 0) {
+			metrics.aidAnswered(lastRecordNanos - aidSentNanos);
+			aidSentNanos = 0;
+		}
+		metrics.eorSignaled(true);
+	}
+	
+	public Tn3270eSession getTn3270e() {
+		return tn3270e;
+	}
+	
+	public void setTn3270e(Tn3270eSession tn3270e) {
+		this.tn3270e = tn3270e;
+	}
+	
+	// call while holding the lock, right after the AID is written, the next signalEor times the answer
+	public void markAidSent() {
+		aidSentNanos = System.nanoTime();
+	}
+	
+	public SessionMetrics getMetrics() {
+		return metrics;
+	}
+	
+	// call while holding the lock, wakes everyone in awaitCondition to re-check
+	public void signalUpdate(){
+		updateCount++;
+		updateCond.signalAll();
+	}
+	
+	public long getUpdateCount(){
+		return updateCount;
+	}
+	
+	// re-checks the condition after every record until it holds or the deadline passes, the lock is held while testing
+	public boolean awaitCondition(Predicate<Buffer> condition, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(wait);
+		boolean gotLock = false;
+		try {
+			gotLock = acquireLock(wait, unit);
+			long remaining = deadline - System.nanoTime();
+			while(!condition.test(this)) {
+				if(remaining <= 0) {
+					return false;
+				}
+				remaining = updateCond.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			if(gotLock) {
+				unlock();
+			}
+		}
+	}
+	
+	public boolean awaitUpdate(long lastUpdateCount, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return awaitCondition(buffer -> buffer.updateCount != lastUpdateCount, wait, unit);
+	}
+	
+	// compares without building strings, so conditions can be tested after every record cheaply
+	public boolean matches(int position, CharSequence text) {
+		if(!isValidPosition(position) || position + text.length() > TelnetConstants.BUFFER_SIZE) {
+			return false;
+		}
+		for(int i=0;i<text.length();i++) {
+			if(ascii[position + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public int indexOf(CharSequence text) {
+		if(text.length() == 0) {
+			return 0;
+		}
+		int last = TelnetConstants.BUFFER_SIZE - text.length();
+		for(int position=0;position<=last;position++) {
+			if(ascii[position] == text.charAt(0) && matches(position, text)) {
+				return position;
+			}
+		}
+		return -1;
 	}
 	
 	public void awaitTn3270() throws InterruptedException{
@@ -300,29 +436,104 @@ public class Buffer {
 	}
     
     public void setEbcdicCharacter(int position, byte ebcdicByte) {
-    	ebcdicCount++;
         if (isValidPosition(position)) {
-            ebcdic[position] = ebcdicByte;// == 0? 0x40: ebcdicByte; // Treat null as EBCDIC space
-            ascii[position] = Tn3270Conversions.ebcdicToAscii(ebcdicByte);
             int sf = findFieldStart(position);
-            FieldAttribute attribute = getAttribute(sf);
             
-            if(attribute.isModified()) {
+            if(ebcdic[position] != ebcdicByte) {
+            	markDirty(position, sf);
+            }
+            
+            ebcdic[position] = ebcdicByte;// == 0? 0x40: ebcdicByte; // Treat null as EBCDIC space
+            ascii[position] = codePage.decode(ebcdicByte);
+            
+            if(sf >= 0 && fieldModified[sf]) {
             	ebcdicModified[position] = true;
             }
         }
     }
     
+    // a run of data bytes in one call, same effect as setEbcdicCharacter for each of them, wrapping at the end of the buffer
+    public void setEbcdicCharacters(int position, byte[] src, int offset, int length) {
+    	if (length <= 0 || !isValidPosition(position)) {
+    		return;
+    	}
+    	if (position + length > TelnetConstants.BUFFER_SIZE) {
+    		int first = TelnetConstants.BUFFER_SIZE - position;
+    		setEbcdicCharacters(position, src, offset, first);
+    		setEbcdicCharacters(0, src, offset + first, length - first);
+    		return;
+    	}
+    	
+    	// owning field of the first position and where the next one begins
+    	int fieldIndex = findFieldIndex(position);
+    	int sf = -1;
+    	int nextFieldStart = TelnetConstants.BUFFER_SIZE;
+    	if (fieldIndex >= 0) {
+    		sf = fieldTable[fieldIndex];
+    		if (sf > position) {
+    			// before the first field, the last field wraps around to here
+    			nextFieldStart = fieldTable[0];
+    			fieldIndex = -1;
+    		} else if (fieldIndex + 1 < fieldCount) {
+    			nextFieldStart = fieldTable[fieldIndex + 1];
+    		}
+    	}
+    	
+    	int end = position + length;
+    	for (int i = position; i < end; i++) {
+    		if (i == nextFieldStart) {
+    			fieldIndex++;
+    			sf = nextFieldStart;
+    			nextFieldStart = (fieldIndex + 1 < fieldCount ? fieldTable[fieldIndex + 1] : TelnetConstants.BUFFER_SIZE);
+    		}
+    		
+    		byte b = src[offset + i - position];
+    		if (ebcdic[i] != b) {
+    			markDirty(i, sf);
+    			ebcdic[i] = b;
+    		}
+    		if (sf >= 0 && fieldModified[sf]) {
+    			ebcdicModified[i] = true;
+    		}
+    	}
+    	
+    	codePage.decode(src, offset, length, ascii, position);
+    }
+    
+    public CodePage getCodePage() {
+    	return codePage;
+    }
+    
+    // call while holding the lock, what is already on the screen is decoded again with the new code page
+    public void setCodePage(CodePage codePage) {
+    	if (codePage == null) {
+    		throw new IllegalArgumentException("Code page is required.");
+    	}
+    	if (codePage == this.codePage) {
+    		return;
+    	}
+    	
+    	this.codePage = codePage;
+    	codePage.decode(ebcdic, 0, TelnetConstants.BUFFER_SIZE, ascii, 0);
+    	markAllDirty();
+    	publishSnapshot();
+    }
+    
     public void setAsciiCharacter(int position, char character) {
         if (isValidPosition(position)) {
+            // fieldStart will be -1 if not fields defined
+            int fieldStart = findFieldStart(position);
+            
+            if(ascii[position] != character) {
+            	markDirty(position, fieldStart);
+            }
+            
             ascii[position] = character;
-            ebcdic[position] = Tn3270Conversions.asciiToEbcdic(character);
+            ebcdic[position] = codePage.encode(character);
             ebcdicModified[position] = true;
             
-            // fieldStart will be -1 if not fields defined
-            int fieldStart = findFieldStart(position);
             if(fieldStart>=0) {
-            	attributes[fieldStart].modified(true);
+            	fieldModified[fieldStart] = true;
             }
         }
     }
@@ -337,12 +548,79 @@ public class Buffer {
     
     public void setAttribute(int position, byte attribute) {
         if (isValidPosition(position)) {
-            attributes[position] = new FieldAttribute(attribute);
+        	byte value = (byte) (attribute & ~TelnetConstants.ATTR_MDT);
+        	if(attributes[position] != value) {
+        		markDirty(position, position);
+        	}
+        	
+            attributes[position] = value;
+            fieldModified[position] = (attribute & TelnetConstants.ATTR_MDT) != 0;
+            unprotectedStale = true;
         }
     }
     
+    public void setExtendedAttribute(int position, byte type, byte value) {
+        if (isValidPosition(position)) {
+        	switch (type) {
+        		case TelnetConstants.XA_3270:
+        			setAttribute(position, value);
+        			break;
+        		case TelnetConstants.XA_HIGHLIGHTING:
+        			if(highlights[position] != value) {
+        				markDirty(position, position);
+        			}
+        			highlights[position] = value;
+        			break;
+        		case TelnetConstants.XA_FOREGROUND:
+        			if(colors[position] != value) {
+        				markDirty(position, position);
+        			}
+        			colors[position] = value;
+        			break;
+        		case TelnetConstants.XA_ALL:
+        			// reset all extended attributes to their defaults
+        			if(highlights[position] != 0x00 || colors[position] != 0x00) {
+        				markDirty(position, position);
+        			}
+        			highlights[position] = 0x00;
+        			colors[position] = 0x00;
+        			break;
+        	}
+        }
+    }
+    
+    // attribute byte as the host sees it, including the MDT bit
+    public byte getAttributeByte(int position) {
+    	if (!isValidPosition(position)) {
+    		return 0x00;
+    	}
+    	return (byte) (fieldModified[position] ? attributes[position] | TelnetConstants.ATTR_MDT : attributes[position]);
+    }
+    
     public FieldAttribute getAttribute(int position) {
-        return isValidPosition(position) ? attributes[position] : new FieldAttribute();
+        return FieldAttribute.of(getAttributeByte(position));
+    }
+    
+    public boolean isFieldModified(int position) {
+    	return isValidPosition(position) && fieldModified[position];
+    }
+    
+    public void setFieldModified(int position, boolean modified) {
+    	if (isValidPosition(position)) {
+    		fieldModified[position] = modified;
+    	}
+    }
+    
+    public FieldColor getFieldColor(int position) {
+    	return isValidPosition(position) ? FieldColor.of(colors[position]) : FieldColor.DEFAULT;
+    }
+    
+    public FieldHighlighting getFieldHighlighting(int position) {
+    	return isValidPosition(position) ? FieldHighlighting.of(highlights[position]) : FieldHighlighting.NORMAL;
+    }
+    
+    private boolean isProtectedAttribute(int fieldStart) {
+    	return (attributes[fieldStart] & TelnetConstants.ATTR_PROTECTED) != 0;
     }
     
     public FieldAttribute getAttributeAt(int position) {
@@ -350,12 +628,23 @@ public class Buffer {
 	}
     
     public void setFieldStart(int position, boolean isFieldStart) {
-        if (isValidPosition(position)) {
+        if (isValidPosition(position) && fieldStarts[position] != isFieldStart) {
+        	int index = Arrays.binarySearch(fieldTable, 0, fieldCount, position);
+        	
         	if(isFieldStart) {
+        		// hosts mostly write fields in ascending order, so this is usually an append
+        		index = -(index + 1);
+        		System.arraycopy(fieldTable, index, fieldTable, index + 1, fieldCount - index);
+        		fieldTable[index] = position;
 				fieldCount++;
+			} else {
+				System.arraycopy(fieldTable, index + 1, fieldTable, index, fieldCount - index - 1);
+				fieldCount--;
 			}
 
             fieldStarts[position] = isFieldStart;
+            unprotectedStale = true;
+            markDirty(position, isFieldStart ? position : -1);
         }
     }
     
@@ -368,12 +657,19 @@ public class Buffer {
 			return true;
 		}
         
-        // Find the field attribute that applies to this position
-        int fieldPos = findFieldStart(position);
-        if (fieldPos >= 0) {
-            return (attributes[findFieldStart(fieldPos)].isProtected());
-        }
-        return false;
+        return protectedAt(position, fieldCount);
+    }
+    
+    // the field table is only searched up to count, which readProtected takes from a possibly
+    // running update, the values in it are always valid positions so nothing can index outside
+    private boolean protectedAt(int position, int count) {
+    	if (count == 0) {
+    		return false;
+    	}
+    	
+    	// Find the field attribute that applies to this position, before the first field the last one wraps around
+    	int index = floorFieldIndex(fieldTable, count, position);
+    	return isProtectedAttribute(fieldTable[index >= 0 ? index : count - 1]);
     }
     
     public boolean isEbcdicModified(int position) {
@@ -381,57 +677,60 @@ public class Buffer {
 	}
     
     public int findFieldStart(int position) {
-        for (int i = position; i >= 0; i--) {
-            if (fieldStarts[i]) {
-                return i;
-            }
-        }
-        
-        // If no field start found, check from end of buffer
-        for (int i = TelnetConstants.BUFFER_SIZE - 1; i > position; i--) {
-            if (fieldStarts[i]) {
-                return i;
-            }
-        }
-        return -1;
+    	if (fieldCount == 0) {
+    		return -1;
+    	}
+    	
+    	int index = floorFieldIndex(fieldTable, fieldCount, position);
+    	
+    	// If no field start found at or before the position, the last field wraps around
+        return (index >= 0 ? fieldTable[index] : fieldTable[fieldCount - 1]);
+    }
+    
+    public int getFieldCount() {
+    	return fieldCount;
+    }
+    
+    // start position of the n-th field, fields are numbered in buffer order
+    public int getFieldStart(int fieldIndex) {
+    	return (fieldIndex >= 0 && fieldIndex < fieldCount ? fieldTable[fieldIndex] : -1);
+    }
+    
+    // index of the field owning the position, -1 if there are no fields
+    public int findFieldIndex(int position) {
+    	if (fieldCount == 0) {
+    		return -1;
+    	}
+    	
+    	int index = floorFieldIndex(fieldTable, fieldCount, position);
+    	return (index >= 0 ? index : fieldCount - 1);
     }
     
     public int findNextField(int startPosition) {
     	if(hasFields()==false) {
     		return -1;
     	}
-    	 
-        for (int i = startPosition + 1; i < TelnetConstants.BUFFER_SIZE; i++) {
-            if (fieldStarts[i]) {
-                return i;
-            }
-        }
-        // Wrap around
-        for (int i = 0; i <= startPosition; i++) {
-            if (fieldStarts[i]) {
-                return i;
-            }
-        }
-        return startPosition;
+    	
+    	int index = floorFieldIndex(fieldTable, fieldCount, startPosition) + 1;
+    	
+    	// Wrap around
+        return (index < fieldCount ? fieldTable[index] : fieldTable[0]);
     }
     
     public int findNextUnprotectedField(int startPosition) {
     	if(hasFields()==false) {
     		return -1;
     	}
-    	 
-        for (int i = startPosition + 1; i < TelnetConstants.BUFFER_SIZE; i++) {
-            if (fieldStarts[i] && !isProtected(i + 1)) {
-                return i;
-            }
-        }
-        // Wrap around
-        for (int i = 0; i <= startPosition; i++) {
-            if (fieldStarts[i] && !isProtected(i + 1)) {
-                return i;
-            }
-        }
-        return startPosition;
+    	
+    	refreshUnprotectedFields();
+    	if(unprotectedCount == 0) {
+    		return startPosition;
+    	}
+    	
+    	int index = floorFieldIndex(unprotectedTable, unprotectedCount, startPosition) + 1;
+    	
+    	// Wrap around
+    	return (index < unprotectedCount ? unprotectedTable[index] : unprotectedTable[0]);
     }
     
     public int findPreviousUnprotectedField(int startPosition) {
@@ -444,21 +743,42 @@ public class Buffer {
     		return startPosition;
     	}
     	
-        for (int i = currentFieldStart - 1; i >= 0; i--) {
-            if (fieldStarts[i] && !isProtected(i + 1)) {
-                return i;
-            }
-        }
-        
-        // Wrap around
-        for (int i = TelnetConstants.BUFFER_SIZE -1; i > currentFieldStart; i--) {
-            if (fieldStarts[i] && !isProtected(i + 1)) {
-                return i;
-            }
-        }
+    	refreshUnprotectedFields();
+    	
+    	// last unprotected field before the current one
+    	int index = floorFieldIndex(unprotectedTable, unprotectedCount, currentFieldStart - 1);
+    	if(index >= 0) {
+    		return unprotectedTable[index];
+    	}
+    	
+    	// Wrap around
+    	if(unprotectedCount > 0 && unprotectedTable[unprotectedCount - 1] > currentFieldStart) {
+    		return unprotectedTable[unprotectedCount - 1];
+    	}
         return startPosition;
     }
     
+    // index of the last entry <= position in a sorted table, -1 if there is none
+    static int floorFieldIndex(int[] table, int count, int position) {
+    	int index = Arrays.binarySearch(table, 0, count, position);
+    	return (index >= 0 ? index : -(index + 1) - 1);
+    }
+    
+    private void refreshUnprotectedFields() {
+    	if(!unprotectedStale) {
+    		return;
+    	}
+    	
+    	unprotectedCount = 0;
+    	for(int i=0;i<fieldCount;i++) {
+    		// a field takes input when the position after its attribute is unprotected
+    		if(!isProtected(fieldTable[i] + 1)) {
+    			unprotectedTable[unprotectedCount++] = fieldTable[i];
+    		}
+    	}
+    	unprotectedStale = false;
+    }
+    
     public int getCursorPosition() {
         return cursorPosition;
     }
@@ -492,18 +812,150 @@ public class Buffer {
         return TelnetConstants.BUFFER_SIZE;
     }
     
-    public void addScreenUpdateListener(ScreenUpdateListener listener) {
+    // adding, removing and changing the dispatcher are synchronized so the dispatcher always knows the listeners,
+    // notifying reads the lists and the dispatcher without it
+    public synchronized void addScreenUpdateListener(ScreenUpdateListener listener) {
+        if (dispatcher != null) {
+        	dispatcher.add(listener);
+        }
         listeners.add(listener);
     }
     
-    public void removeScreenUpdateListener(ScreenUpdateListener listener) {
-        listeners.remove(listener);
+    public synchronized void removeScreenUpdateListener(ScreenUpdateListener listener) {
+        if (listeners.remove(listener) && dispatcher != null) {
+        	dispatcher.remove(listener);
+        }
+    }
+    
+    public synchronized void addScreenChangeListener(ScreenChangeListener listener) {
+        if (dispatcher != null) {
+        	dispatcher.add(listener);
+        }
+        changeListeners.add(listener);
+    }
+    
+    public synchronized void removeScreenChangeListener(ScreenChangeListener listener) {
+        if (changeListeners.remove(listener) && dispatcher != null) {
+        	dispatcher.remove(listener);
+        }
+    }
+    
+    public ScreenChangeDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    
+    // null runs listeners on the notifying thread, which is the parser thread at EOR
+    public synchronized void setDispatcher(ScreenChangeDispatcher dispatcher) {
+        ScreenChangeDispatcher previous = this.dispatcher;
+        if (previous == dispatcher) {
+        	return;
+        }
+        if (dispatcher != null) {
+        	listeners.forEach(dispatcher::add);
+        	changeListeners.forEach(dispatcher::add);
+        }
+        this.dispatcher = dispatcher;
+        if (previous != null) {
+        	listeners.forEach(previous::remove);
+        	changeListeners.forEach(previous::remove);
+        }
     }
     
     public void notifyScreenUpdate() {
-        for (ScreenUpdateListener listener : listeners) {
-            listener.onScreenUpdate();
+        notifyScreenUpdate(collectChanges());
+    }
+    
+    public void notifyScreenUpdate(ScreenChange change) {
+        if (listeners.isEmpty() && changeListeners.isEmpty()) {
+        	return;
         }
+        
+        Tn3270Events.ListenerDispatch event = new Tn3270Events.ListenerDispatch();
+        event.begin();
+        long begin = System.nanoTime();
+        ScreenChangeDispatcher current = dispatcher;
+        try {
+        	if (current != null) {
+        		for (ScreenUpdateListener listener : listeners) {
+        			current.submit(listener, change);
+        		}
+        		for (ScreenChangeListener listener : changeListeners) {
+        			current.submit(listener, change);
+        		}
+        		return;
+        	}
+        	
+        	for (ScreenUpdateListener listener : listeners) {
+        		listener.onScreenUpdate();
+        	}
+        	for (ScreenChangeListener listener : changeListeners) {
+        		listener.onScreenChange(change);
+        	}
+        } finally {
+        	metrics.listenersNotified(System.nanoTime() - begin);
+        	if (event.shouldCommit()) {
+        		event.listeners = listeners.size() + changeListeners.size();
+        		event.dispatched = (current != null);
+        		event.commit();
+        	}
+        }
+    }
+    
+    // call while holding the lock, the copy is taken once here so readers never wait for the parser
+    public ScreenSnapshot publishSnapshot() {
+    	ScreenSnapshot published = new ScreenSnapshot(
+    		++snapshotVersion,
+    		ascii.clone(),
+    		attributes.clone(),
+    		fieldModified.clone(),
+    		colors.clone(),
+    		highlights.clone(),
+    		Arrays.copyOf(fieldTable, fieldCount),
+    		cursorPosition
+    	);
+    	snapshot = published;
+    	return published;
+    }
+    
+    public ScreenSnapshot getSnapshot() {
+    	return snapshot;
+    }
+    
+    // hands out everything that changed since the last call and starts tracking afresh, call while holding the lock
+    public ScreenChange collectChanges() {
+    	int[] fields;
+    	if(fullScreenDirty) {
+    		fields = Arrays.copyOf(fieldTable, fieldCount);
+    	} else {
+    		fields = Arrays.copyOf(dirtyFields, dirtyFieldCount);
+    		Arrays.sort(fields);
+    	}
+    	
+    	ScreenChange change = new ScreenChange(++changeSequence, dirtyRows, fields, notifiedCursorPosition, cursorPosition, fullScreenDirty);
+    	
+    	for(int i=0;i<dirtyFieldCount;i++) {
+    		dirtyFieldMarks[dirtyFields[i]] = false;
+    	}
+    	dirtyFieldCount = 0;
+    	dirtyRows = 0;
+    	fullScreenDirty = false;
+    	notifiedCursorPosition = cursorPosition;
+    	
+    	return change;
+    }
+    
+    private void markDirty(int position, int fieldStart) {
+    	dirtyRows |= 1L << (position / TelnetConstants.SCREEN_WIDTH);
+    	
+    	if(fieldStart >= 0 && !dirtyFieldMarks[fieldStart]) {
+    		dirtyFieldMarks[fieldStart] = true;
+    		dirtyFields[dirtyFieldCount++] = fieldStart;
+    	}
+    }
+    
+    private void markAllDirty() {
+    	dirtyRows = ALL_ROWS;
+    	fullScreenDirty = true;
     }
     
     private boolean isValidPosition(int position) {
@@ -516,23 +968,15 @@ public class Buffer {
 		return string(null);
 	}
 	public String string(String separator) {
-		StringBuffer sb = new StringBuffer("");
+		if(separator==null){
+			return new String(ascii, 0, TelnetConstants.BUFFER_SIZE);
+		}
 		
-		if(separator!=null){
-			for(int row=0;row<TelnetConstants.SCREEN_HEIGHT;row++){
-				sb.append( string( row ) );
-				sb.append(separator);
-			}
-		}else{
-			try{
-				sb.append( new String(ascii, 0, TelnetConstants.BUFFER_SIZE) );
-			}catch(Exception e){
-				for(int row=0;row<TelnetConstants.SCREEN_HEIGHT;row++) {
-					sb.append( string( row ) );
-				}
-			}
+		StringBuilder sb = new StringBuilder(TelnetConstants.BUFFER_SIZE + (TelnetConstants.SCREEN_HEIGHT * separator.length()));
+		for(int row=0;row<TelnetConstants.SCREEN_HEIGHT;row++){
+			sb.append(ascii, row*TelnetConstants.SCREEN_WIDTH, TelnetConstants.SCREEN_WIDTH);
+			sb.append(separator);
 		}
-
 		return sb.toString();
 	}
 	public String string(int row) {
@@ -541,59 +985,224 @@ public class Buffer {
 	public String string(int x, int y,int length) {
 		return string((y*TelnetConstants.SCREEN_WIDTH)+x, length);
 	}
+	// positions outside the buffer read as blanks
 	public String string(int start, int length) {
-		try{
-    		return new String(ascii, start, length);
-    	}catch(Exception e){
-    		StringBuffer sb = new StringBuffer();
-    		
-    		for(int i=start;i<start+length;i++){
-				try{
-					sb.append(new String(ascii, i, 1));
-				}catch(Exception ee){
-					sb.append(" ");
-				}
+		if(length<=0){
+			return "";
+		}
+		if(start>=0 && start+length<=TelnetConstants.BUFFER_SIZE){
+			return new String(ascii, start, length);
+		}
+		
+		char[] text = new char[length];
+		copyText(start, length, text, 0);
+		return new String(text);
+	}
+	
+	// fills dst instead of building a string, returns the number of characters written
+	public int copyText(int start, int length, char[] dst, int dstOffset) {
+		int count = Math.max(0, Math.min(length, dst.length - dstOffset));
+		int from = Math.max(start, 0);
+		int to = Math.min(start + count, TelnetConstants.BUFFER_SIZE);
+		
+		if(from >= to) {
+			Arrays.fill(dst, dstOffset, dstOffset + count, ' ');
+			return count;
+		}
+		Arrays.fill(dst, dstOffset, dstOffset + (from - start), ' ');
+		System.arraycopy(ascii, from, dst, dstOffset + (from - start), to - from);
+		Arrays.fill(dst, dstOffset + (to - start), dstOffset + count, ' ');
+		return count;
+	}
+	
+	// number of characters after the field's attribute position up to the next field, -1 for an unknown field
+	public int getFieldLength(int fieldIndex) {
+		if(fieldIndex < 0 || fieldIndex >= fieldCount) {
+			return -1;
+		}
+		int end = (fieldIndex + 1 < fieldCount ? fieldTable[fieldIndex + 1] : fieldTable[0] + TelnetConstants.BUFFER_SIZE);
+		return end - fieldTable[fieldIndex] - 1;
+	}
+	
+	// copies as much of the field's data as fits into dst, wrapping past the end of the screen like the field does
+	public int copyFieldText(int fieldIndex, char[] dst) {
+		int length = getFieldLength(fieldIndex);
+		if(length < 0) {
+			return -1;
+		}
+		
+		int count = Math.min(length, dst.length);
+		int start = (fieldTable[fieldIndex] + 1) % TelnetConstants.BUFFER_SIZE;
+		int first = Math.min(count, TelnetConstants.BUFFER_SIZE - start);
+		System.arraycopy(ascii, start, dst, 0, first);
+		System.arraycopy(ascii, 0, dst, first, count - first);
+		return count;
+	}
+	
+	// call while holding the lock, read* accessors on other threads fall back to waiting until endUpdate
+	public long beginUpdate() {
+		return stampedLock.writeLock();
+	}
+	
+	public void endUpdate(long stamp) {
+		stampedLock.unlockWrite(stamp);
+	}
+	
+	// the read* accessors never block while no update is running, they must not be called between beginUpdate and endUpdate
+	public char readAsciiCharacter(int position) {
+		long stamp = stampedLock.tryOptimisticRead();
+		if(stamp != 0) {
+			char value = getAsciiCharacter(position);
+			if(stampedLock.validate(stamp)) {
+				return value;
 			}
-    		return sb.toString();
-    	}
+		}
+		
+		stamp = stampedLock.readLock();
+		try {
+			return getAsciiCharacter(position);
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
+	}
+	
+	public byte readEbcdicByte(int position) {
+		long stamp = stampedLock.tryOptimisticRead();
+		if(stamp != 0) {
+			byte value = getEbcdicByte(position);
+			if(stampedLock.validate(stamp)) {
+				return value;
+			}
+		}
+		
+		stamp = stampedLock.readLock();
+		try {
+			return getEbcdicByte(position);
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
+	}
+	
+	public int readCursorPosition() {
+		long stamp = stampedLock.tryOptimisticRead();
+		if(stamp != 0) {
+			int value = cursorPosition;
+			if(stampedLock.validate(stamp)) {
+				return value;
+			}
+		}
+		
+		stamp = stampedLock.readLock();
+		try {
+			return cursorPosition;
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
+	}
+	
+	public boolean readProtected(int position) {
+		if(!isValidPosition(position)) {
+			return true;
+		}
+		long stamp = stampedLock.tryOptimisticRead();
+		if(stamp != 0) {
+			// the count is read once and kept inside the table, an update can make the answer wrong but not throw
+			int count = Math.max(0, Math.min(fieldCount, fieldTable.length));
+			boolean value = protectedAt(position, count);
+			if(stampedLock.validate(stamp)) {
+				return value;
+			}
+		}
+		
+		stamp = stampedLock.readLock();
+		try {
+			return isProtected(position);
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
+	}
+	
+	public String readString(int start, int length) {
+		long stamp = stampedLock.tryOptimisticRead();
+		if(stamp != 0) {
+			String value = string(start, length);
+			if(stampedLock.validate(stamp)) {
+				return value;
+			}
+		}
+		
+		stamp = stampedLock.readLock();
+		try {
+			return string(start, length);
+		} finally {
+			stampedLock.unlockRead(stamp);
+		}
 	}
-    
 	
 	public boolean acquireLock() throws InterruptedException, TimeoutException {
 		return acquireLock(WAIT, UNIT);
 	}
 	public boolean acquireLock(long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
-		if(wait<=0 || unit==null){
-			boolean gotLock = false;
-			while(true){
-				gotLock = lock.tryLock();
-				if(gotLock){
-					return true;
-				}
+		Tn3270Events.LockWait event = new Tn3270Events.LockWait();
+		event.begin();
+		long begin = System.nanoTime();
+		try {
+			if(wait<=0 || unit==null){
+				// park instead of spinning on tryLock, a spinning virtual thread would hold on to its carrier
+				lock.lockInterruptibly();
+				metrics.lockAcquired(System.nanoTime() - begin);
+				event.acquired = true;
+				return true;
+			}else{
+				try { // ++
+					if(!lock.tryLock(wait, unit)){
+						throw new TimeoutException("Timed out waiting for buffer access.");
+					}else{
+						metrics.lockAcquired(System.nanoTime() - begin);
+						event.acquired = true;
+						return true;
+					}
+				} catch (InterruptedException ie) { // ++
+					throw new TimeoutException("Timed out waiting for buffer access."); // ++
+				} // ++
 			}
-		}else{
-			try { // ++
-				if(!lock.tryLock(wait, unit)){
-					throw new TimeoutException("Timed out waiting for buffer access.");
-				}else{
-					return true;
-				}
-			} catch (InterruptedException ie) { // ++
-				throw new TimeoutException("Timed out waiting for buffer access."); // ++
-			} // ++
+		} finally {
+			// timeouts are committed too, with acquired false
+			event.commit();
 		}
 	}
 	
+	// never waits, for callers that can come back later
+	public boolean tryAcquireLock() {
+		boolean acquired = lock.tryLock();
+		metrics.lockTried(acquired);
+		return acquired;
+	}
+
 	public void unlock(){
 		lock.unlock();
 	}
     
     public void copyFrom(Buffer other) {
-        System.arraycopy(other.ebcdic, 0, this.ebcdic, 0, TelnetConstants.BUFFER_SIZE);
-        System.arraycopy(other.ascii, 0, this.ascii, 0, TelnetConstants.BUFFER_SIZE);
-        System.arraycopy(other.attributes, 0, this.attributes, 0, TelnetConstants.BUFFER_SIZE);
-        System.arraycopy(other.fieldStarts, 0, this.fieldStarts, 0, TelnetConstants.BUFFER_SIZE);
-        this.cursorPosition = other.cursorPosition;
+        long stamp = beginUpdate();
+        try {
+            System.arraycopy(other.ebcdic, 0, this.ebcdic, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.ascii, 0, this.ascii, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.attributes, 0, this.attributes, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.fieldModified, 0, this.fieldModified, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.colors, 0, this.colors, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.highlights, 0, this.highlights, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.fieldStarts, 0, this.fieldStarts, 0, TelnetConstants.BUFFER_SIZE);
+            System.arraycopy(other.fieldTable, 0, this.fieldTable, 0, other.fieldCount);
+            this.fieldCount = other.fieldCount;
+            this.unprotectedStale = true;
+            this.cursorPosition = other.cursorPosition;
+            this.codePage = other.codePage;
+            markAllDirty();
+        } finally {
+            endUpdate(stamp);
+        }
+        publishSnapshot();
         notifyScreenUpdate();
     }
     
@@ -0,0 +1,179 @@
+package org.me.ibm;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * EBCDIC code page with precomputed tables in both directions. The tables are built from the
+ * JDK's IBMxxx charsets the first time a code page is asked for and kept from then on, so the
+ * hot paths are plain array lookups. EBCDIC control codes decode to a blank, characters the
+ * code page can't represent encode to 0x40. DEFAULT needs no charset at all, a JDK without
+ * the extended charsets only fails for the code pages it can't provide.
+ */
+public final class CodePage {
+	private static final byte EBCDIC_SPACE = 0x40;
+
+	// US default used before code pages could be chosen, it only covers letters, digits and common punctuation
+	public static final CodePage DEFAULT = fromDecodeTable(0, "default", Tn3270Conversions.ebcdicToAsciiTable());
+
+	// CCSID to JDK charset name, nothing is built until a code page is looked up
+	private static final Map<Integer, String> CHARSETS;
+
+	static {
+		Map<Integer, String> charsets = new LinkedHashMap<>();
+		charsets.put(37, "IBM037");
+		charsets.put(1047, "IBM1047");
+		charsets.put(500, "IBM500");
+		charsets.put(273, "IBM273");
+		charsets.put(277, "IBM277");
+		charsets.put(278, "IBM278");
+		charsets.put(280, "IBM280");
+		charsets.put(284, "IBM284");
+		charsets.put(285, "IBM285");
+		charsets.put(297, "IBM297");
+		charsets.put(871, "IBM871");
+		CHARSETS = Collections.unmodifiableMap(charsets);
+	}
+
+	private static final Map<Integer, CodePage> BUILT = new ConcurrentHashMap<>();
+
+	private final int ccsid;
+	private final String name;
+	private final char[] decodeTable;
+	// indexed by the high byte of the char first, pages without any mapped character stay null
+	private final byte[][] encodePages;
+
+	private CodePage(int ccsid, String name, char[] decodeTable, byte[][] encodePages) {
+		this.ccsid = ccsid;
+		this.name = name;
+		this.decodeTable = decodeTable;
+		this.encodePages = encodePages;
+	}
+
+	// IllegalArgumentException for a CCSID that isn't in supported() or whose charset the JDK lacks
+	public static CodePage forCcsid(int ccsid) {
+		String charsetName = CHARSETS.get(ccsid);
+		if (charsetName == null) {
+			throw new IllegalArgumentException("Unsupported CCSID " + ccsid + ", supported are " + CHARSETS.keySet());
+		}
+		return BUILT.computeIfAbsent(ccsid, key -> fromCharset(key, charsetName));
+	}
+
+	// the charset name or one of its aliases, e.g. IBM037, cp037 or IBM-37
+	public static CodePage forName(String charsetName) {
+		for (Map.Entry<Integer, String> entry : CHARSETS.entrySet()) {
+			if (entry.getValue().equalsIgnoreCase(charsetName)) {
+				return forCcsid(entry.getKey());
+			}
+		}
+		Charset charset;
+		try {
+			charset = Charset.forName(charsetName);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported code page " + charsetName + ", supported are " + CHARSETS.values(), e);
+		}
+		for (Map.Entry<Integer, String> entry : CHARSETS.entrySet()) {
+			if (entry.getValue().equalsIgnoreCase(charset.name())) {
+				return forCcsid(entry.getKey());
+			}
+		}
+		throw new IllegalArgumentException("Unsupported code page " + charsetName + ", supported are " + CHARSETS.values());
+	}
+
+	// CCSID to charset name of the code pages forCcsid() knows about
+	public static Map<Integer, String> supported() {
+		return CHARSETS;
+	}
+
+	public int getCcsid() {
+		return ccsid;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public char decode(byte ebcdic) {
+		return decodeTable[ebcdic & 0xFF];
+	}
+
+	public byte encode(char ch) {
+		byte[] page = encodePages[ch >>> 8];
+		return (page == null ? EBCDIC_SPACE : page[ch & 0xFF]);
+	}
+
+	public void decode(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+		char[] table = decodeTable;
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = table[src[srcOffset + i] & 0xFF];
+		}
+	}
+
+	public void encode(char[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = encode(src[srcOffset + i]);
+		}
+	}
+
+	public void encode(CharSequence src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = encode(src.charAt(srcOffset + i));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (ccsid == 0 ? name : name + " (CCSID " + ccsid + ")");
+	}
+
+	private static CodePage fromCharset(int ccsid, String charsetName) {
+		Charset charset;
+		try {
+			charset = Charset.forName(charsetName);
+		} catch (IllegalArgumentException e) {
+			// the IBM charsets live in jdk.charsets, which a trimmed runtime may leave out
+			throw new IllegalArgumentException("Code page " + charsetName + " is not available in this JVM.", e);
+		}
+
+		byte[] all = new byte[256];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = (byte) i;
+		}
+		String decoded = new String(all, charset);
+
+		char[] decodeTable = new char[256];
+		for (int i = 0; i < decodeTable.length; i++) {
+			char ch = decoded.charAt(i);
+			decodeTable[i] = (Character.isISOControl(ch) ? ' ' : ch);
+		}
+		return fromDecodeTable(ccsid, charsetName, decodeTable);
+	}
+
+	private static CodePage fromDecodeTable(int ccsid, String name, char[] decodeTable) {
+		byte[][] encodePages = new byte[256][];
+
+		// walk down so that where two codes decode to the same character the lower code wins
+		for (int code = 255; code >= 0; code--) {
+			char ch = decodeTable[code];
+			if (ch == ' ' && code != (EBCDIC_SPACE & 0xFF)) {
+				continue;
+			}
+			byte[] page = encodePages[ch >>> 8];
+			if (page == null) {
+				page = new byte[256];
+				Arrays.fill(page, EBCDIC_SPACE);
+				encodePages[ch >>> 8] = page;
+			}
+			page[ch & 0xFF] = (byte) code;
+		}
+
+		// the null character round trips, unformatted input fields are padded with it
+		encodePages[0][0] = 0x00;
+
+		return new CodePage(ccsid, name, decodeTable, encodePages);
+	}
+}
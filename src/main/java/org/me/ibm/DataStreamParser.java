@@ -2,16 +2,29 @@ package org.me.ibm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
 
+/*
+ * Telnet framing in front of DataStreamProcessor. Bytes are either pulled off the input stream
+ * by parse() or pushed in through receive(), both collect them into records the same way.
+ * A non-blocking parser never waits for the buffer lock: a record that finds it taken is kept
+ * and applied by processDeferred() once the lock is free, later records queue up behind it.
+ */
 public class DataStreamParser implements IDataStreamParser{
     private final Buffer buffer;
     private final InputStream inputStream;
+    private final DataStreamProcessor processor;
     private boolean running;
+    private boolean nonBlocking;
+    private final Queue<byte[]> deferred = new ArrayDeque<>();
 //    private boolean debug = false;
    
     public DataStreamParser(Buffer buffer, InputStream inputStream) {
         this.buffer = buffer;
         this.inputStream = inputStream;
+        this.processor = new DataStreamProcessor(buffer);
         this.running = false;
     }
     
@@ -21,48 +34,19 @@ public class DataStreamParser implements IDataStreamParser{
     
     @Override
 	public void parse(int firstByte) throws IOException {
-        running = true;
-        boolean iacMode = false;
-
-        // Process the first byte if provided
-        if (firstByte != -1) {
-            bufferByte((byte) firstByte);
-        }
+        begin(firstByte);
         
-        // Use single byte reads to handle telnet protocol properly
+        // Read whole chunks off the socket and frame them in bulk, telnet state is kept
+        // between reads so records (and IAC sequences) split across reads are reassembled
         while (running) {
             try {
-                int b = inputStream.read();
+                int count = inputStream.read(readBuffer, 0, readBuffer.length);
 
-                if (b == -1) {
+                if (count == -1) {
                     break; // End of stream
                 }
                 
-                if(!iacMode) {
-                	if(((byte)b) == TelnetConstants.IAC) {
-    					iacMode = true;
-    					continue; // Read next byte for command
-    				}
-                } else if(((byte)b) == TelnetConstants.EOR) {
-					iacMode = false;
-					
-					boolean gotLock = false;
-					try {
-						gotLock = buffer.acquireLock();
-						processDataStream(dataBuffer, dataBufferPos); 
-					} catch (Exception e) {
-						throw new IOException("Error processing data stream at EOR", e);
-					} finally {
-						dataBufferPos = 0; // Reset data buffer position after processing
-						if(gotLock){
-							buffer.signalEor();
-							buffer.unlock();
-						}
-					}
-					continue; // Read next byte for command
-				}
-                
-                bufferByte((byte) b);
+                receive(readBuffer, 0, count);
                 
             } catch (IOException e) {
                 if (running) {
@@ -73,522 +57,268 @@ public class DataStreamParser implements IDataStreamParser{
         }
     }
     
-    private byte[] dataBuffer = new byte[8192];
-    private int dataBufferPos = 0;
-    
-    private void bufferByte(byte b) throws IOException {
-    	// This is a normal 3270 data byte
-        if (dataBufferPos < dataBuffer.length) {
-            dataBuffer[dataBufferPos++] = b;
-        } else {
-            // Buffer is full, process it
-            processDataStream(dataBuffer, dataBufferPos);
-            dataBufferPos = 0;
-            dataBuffer[dataBufferPos++] = b;
+    // push mode entry point, the caller feeds the socket data through receive()
+    public void begin(int firstByte) {
+        running = true;
+
+        // Process the first byte if provided
+        if (firstByte != -1) {
+            bufferByte((byte) firstByte);
         }
     }
     
-    
-    @Override
-	public void stop() {
-        running = false;
+    // for the session engine, whose selector thread must not park on a lock held by a user thread
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    // records waiting for the buffer lock
+    public int getDeferredCount() {
+        return deferred.size();
     }
-    
-    
-    private void processDataStream(byte[] data, int length) throws IOException {
-        int i = 0;
 
-        while (i < length) {
-            // Process 3270 command (no more IAC processing here since it's handled at byte level)
-            i = processCommand(data, i, length);
+    // applies the waiting records in order until the lock turns out to be taken, true when none are left
+    public boolean processDeferred() throws IOException {
+        byte[] data;
+        while ((data = deferred.peek()) != null) {
+            if (!buffer.tryAcquireLock()) {
+                return false;
+            }
+            deferred.poll();
+            applyRecord(data, data.length);
         }
+        return true;
     }
+
+    private static final int READ_BUFFER_SIZE = 4096;
     
+    // telnet framing states
+    private static final int STATE_DATA = 0;
+    private static final int STATE_IAC = 1;		// IAC seen, waiting for the command byte
+    private static final int STATE_OPTION = 2;	// IAC DO/DONT/WILL/WONT seen, waiting for the option byte
+    private static final int STATE_SB = 3;		// inside a subnegotiation, waiting for IAC SE
+    private static final int STATE_SB_IAC = 4;	// IAC seen inside a subnegotiation
     
-    public int processCommand(byte[] data, int index, int length) throws IOException {
-        if (index >= length) {
-			return index;
-		}
-        
-        byte command = data[index];
-       
-        if((command & 0xFF) < 240) {
-        	command = (byte)((command & 0xFF) + 240);
-        	data[index] = command;
-        }
-        
-        buffer.setIncomingCommandByte(command);
-        
-        switch (command) {
-            case TelnetConstants.WRITE:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_WRITE");
-//				}
-                int indx = processWrite(data, index + 1, length);
-                // only call restore if start printer was set, meaning the screen data stream is complete
-                if (buffer.wcc() != null && (buffer.wcc() & TelnetConstants.WCC_START_PRINTER) != 0) {
-                	buffer.restoreDataFromBackground();
-                }
-                return indx;
-            case TelnetConstants.ERASE_WRITE:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_ERASE_WRITE");
-//				}
-                return processWrite(data, index + 1, length);
-            case TelnetConstants.ERASE_WRITE_ALTERNATE:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_ERASE_WRITE_ALTERNATE");
-//				}
-                return processWrite(data, index + 1, length);
-            case TelnetConstants.READ_BUFFER:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_READ_BUFFER");
-//				}
-            	return index + 1;
-            case TelnetConstants.READ_MODIFIED:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_READ_MODIFIED");
-//				}
-            	return index + 1;
-            case TelnetConstants.READ_MODIFIED_ALL:
-//            	if(debug) {
-//					System.out.println((command & 0xFF) + " CMD_READ_MODIFIED_ALL");
-//				}
-                return index + 1;
-            default:
-                // Treat as data character
-                return processCharacter(data, index, length);
-        }
-    }
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int telnetState = STATE_DATA;
     
-    private int processWrite(byte[] data, int index, int length) throws IOException {
-        if (index >= length) {
-			return index;
-		}
-        
-        // Process Write Control Character
-        index = processWriteControlCharacter(data, index, length);
-        
-        // Process orders and data
-        while (index < length) {
-            byte b = data[index];
-            
-            // Check for IAC
-            if (b == TelnetConstants.IAC) {
-                break;
+    public void receive(byte[] data, int offset, int length) throws IOException {
+        buffer.getMetrics().bytesReceived(length);
+        int end = offset + length;
+        int i = offset;
+        
+        while (i < end) {
+            if (telnetState == STATE_DATA) {
+                // copy the run of plain data bytes up to the next IAC in one go
+                int start = i;
+                while (i < end && data[i] != TelnetConstants.IAC) {
+                    i++;
+                }
+                
+                if (i > start) {
+                    bufferBytes(data, start, i - start);
+                }
+                
+                if (i < end) {
+                    telnetState = STATE_IAC;
+                    i++;
+                }
+                continue;
             }
             
-            // Check for orders
-            switch (b) {
-                case TelnetConstants.SF:
-                	buffer.incOrderCount();
-                    index = processStartField(data, index, length);
-                    break;
-                    
-                case TelnetConstants.SFE:
-                	buffer.incOrderCount();
-                    index = processStartFieldExtended(data, index, length);
-                    break;
-                    
-                case TelnetConstants.SBA:
-                	buffer.incOrderCount();
-                    index = processSetBufferAddress(data, index, length);
-                    break;
-                    
-                case TelnetConstants.SA:
-                	buffer.incOrderCount();
-                    index = processSetAttribute(data, index, length);
-                    break;
-                    
-                case TelnetConstants.MF:
-                	buffer.incOrderCount();
-                    index = processModifyField(data, index, length);
-                    break;
-                    
-                case TelnetConstants.IC:
-                	buffer.incOrderCount();
-                    index = processInsertCursor(data, index, length);
-                    break;
-                    
-                case TelnetConstants.PT:
-                	buffer.incOrderCount();
-                    index = processProgramTab(data, index, length);
-                    break;
-                    
-                case TelnetConstants.RA:
-                	buffer.incOrderCount();
-                    index = processRepeatToAddress(data, index, length);
+            byte b = data[i++];
+            
+            switch (telnetState) {
+                case STATE_IAC:
+                    if (b == TelnetConstants.EOR) {
+                        telnetState = STATE_DATA;
+                        endOfRecord();
+                    } else if (b == TelnetConstants.IAC) {
+                        // IAC IAC - escaped 0xFF data byte
+                        telnetState = STATE_DATA;
+                        bufferByte(TelnetConstants.IAC);
+                    } else if (
+                        b == TelnetConstants.DO ||
+                        b == TelnetConstants.DONT ||
+                        b == TelnetConstants.WILL ||
+                        b == TelnetConstants.WONT
+                    ) {
+                        telnetState = STATE_OPTION;
+                    } else if (b == TelnetConstants.SB) {
+                        telnetState = STATE_SB;
+                    } else {
+                        // any other two byte telnet command is not part of the 3270 data
+                        telnetState = STATE_DATA;
+                    }
                     break;
-                case TelnetConstants.EUA:
-                	buffer.incOrderCount();
-                    index = processEraseUntilAddress(data, index, length);
+                case STATE_OPTION:
+                    telnetState = STATE_DATA;
                     break;
-                case TelnetConstants.GE:
-                	buffer.incOrderCount();
-                    index = processGraphicsEscape(data, index, length);
+                case STATE_SB:
+                    if (b == TelnetConstants.IAC) {
+                        telnetState = STATE_SB_IAC;
+                    }
                     break;
-                default:
-                    index = processCharacter(data, index, length);
+                case STATE_SB_IAC:
+                    telnetState = (b == TelnetConstants.SE ? STATE_DATA : STATE_SB);
                     break;
             }
         }
-        
-        return index;
-    }
-    
-    public int processWriteControlCharacter(byte[] data, int index, int length) {
-        if (index >= length) {
-			return index;
-		}
-        
-        byte wcc = data[index];
-       
-//        List<String> wccFlags = new ArrayList<>();
-//
-//        if ((wcc & TelnetConstants.WCC_ERASE_ALL_UNPROTECTED) != 0) {
-//			wccFlags.add("RESET_MDT");
-//			wccFlags.add("ERASE_ALL_UNPROTECTED");
-//        }
-//        
-//        if ((wcc & TelnetConstants.WCC_PRINT) != 0) {
-//        	wccFlags.add("PRINT");
-//        }
-//        
-//        if ((wcc & TelnetConstants.WCC_START_PRINTER) != 0) {
-//        	wccFlags.add("START_PRINTER");
-//        }
-//        
-//        if ((wcc & TelnetConstants.WCC_SOUND_ALARM) != 0) {
-//        	wccFlags.add("SOUND_ALARM");
-//        }
-//        
-//        if ((wcc & TelnetConstants.WCC_KEYBOARD_RESTORE) != 0) {
-//        	wccFlags.add("KEYBOARD_RESTORE");
-//        }
-        
-        buffer.setIncomingCommandByte(data[index -1]);
-        buffer.setIncomingWriteControlCharacterByte(wcc);
-        
-        switch(data[index -1]) {
-    	case TelnetConstants.ERASE_WRITE:
-		case TelnetConstants.ERASE_WRITE_ALTERNATE:
-			// no need to check or call reset mdt or erase all unprotected here, its implied by .clear()
-			buffer.clear();
-			break;
-		case TelnetConstants.WRITE:
-			if ((wcc & TelnetConstants.WCC_ERASE_ALL_UNPROTECTED) != 0) {
-				buffer.resetMdtFlags();
-				buffer.eraseAllUnprotected();
-			}
-			
-			// only call copy to background if start printer is set, meaning the screen data stream is complete
-			if ((wcc & TelnetConstants.WCC_START_PRINTER) != 0) {
-				buffer.copyDataToBackground();
-			}
-    	}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " WCC [" + String.join(", ", wccFlags) + "]");
-//		}
-
-        return index + 1;
     }
     
-    public int processStartField(byte[] data, int index, int length) {
-        if (index + 1 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_SF");
-//		}
-         
-        byte attribute = data[index + 1];
-        
-//        if(debug) {
-//			System.out.println((attribute & 0xFF) + " attr");
-//		}
-        
-        int currentPos = buffer.getCursorPosition();
-        
-        buffer.setFieldStart(currentPos, true);
-        buffer.setAttribute(currentPos, attribute);
-        buffer.setEbcdicCharacter(currentPos, (byte)0x40); // Field attribute position is typically blank
-        
-        currentPos++;
-        buffer.setCursorPosition(Math.min((currentPos<buffer.getBufferSize()?currentPos:0), buffer.getBufferSize() - 1));
-        
-        return index + 2;
-    }
-    
-    public int processStartFieldExtended(byte[] data, int index, int length) {
-        if (index + 1 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_SFE");
-//		}
-        
-        int pos = index + 1;
-        byte paramCount = data[pos++];
-        
-//        if(debug) {
-//			System.out.println((paramCount & 0xFF) + " paramCount");
-//		}
-        
-        int currentPos = buffer.getCursorPosition();
-        buffer.setFieldStart(currentPos, true);
-        
-        // Process extended attributes
-        for (int i = 0; i < paramCount && pos + 1 < length; i++) {
-            byte attrType = data[pos++];
-            byte attrValue = data[pos++];
-            
-//            if(debug) {
-//    			System.out.println((attrType & 0xFF) + " attrType");
-//    			System.out.println((attrValue & 0xFF) + " attrValue");
-//    		}
-            
-            if (attrType == (byte) 0xC0) { // Basic attribute
-                buffer.setAttribute(currentPos, attrValue);
+    private void endOfRecord() throws IOException {
+        if (nonBlocking) {
+            if (!deferred.isEmpty() || !buffer.tryAcquireLock()) {
+                deferred.add(Arrays.copyOf(record.array(), record.length()));
+                record.reset();
+                return;
+            }
+        } else {
+            try {
+                buffer.acquireLock();
+            } catch (Exception e) {
+                record.reset();
+                throw new IOException("Error processing data stream at EOR", e);
             }
-            // Handle other extended attributes as needed
-        }
-        
-        buffer.setEbcdicCharacter(currentPos, (byte)0x40);
-        
-        currentPos++;
-        buffer.setCursorPosition(Math.min((currentPos<buffer.getBufferSize()?currentPos:0), buffer.getBufferSize() - 1));
-
-        return pos;
-    }
-    
-    public int processSetBufferAddress(byte[] data, int index, int length) {
-        if (index + 2 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//        	System.out.println((data[index] & 0xFF) + " ORDER_SBA");
-//        }
-        
-        int address = decodeAddress(data[index + 1], data[index + 2]);
-        
-        if (address >= 0 && address < buffer.getBufferSize()) {
-            buffer.setCursorPosition(address);
         }
-        
-        return index + 3;
-    }
-    
-    public int processSetAttribute(byte[] data, int index, int length) {
-        if (index + 2 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//        	System.out.println((data[index] & 0xFF) + " ORDER_SA");
-//        	System.out.println((data[index + 1] & 0xFF) + " attrType");
-//        	System.out.println((data[index + 2] & 0xFF) + " attrValue");
-//        }
-        
-        byte attrType = data[index + 1];
-        byte attrValue = data[index + 2];
-        
-        // Set attribute at current cursor position
-        int currentPos = buffer.getCursorPosition();
-        if (attrType == (byte) 0xC0) { // Basic attribute
-            buffer.setAttribute(currentPos, attrValue);
+        try {
+            applyRecord(record.array(), record.length());
+        } finally {
+            record.reset(); // Reset record after processing, the memory is kept for the next one
         }
-        
-        return index + 3;
     }
-    
-    public int processModifyField(byte[] data, int index, int length) {
-        if (index + 2 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//        	System.out.println((data[index] & 0xFF) + " ORDER_MF");
-//        	System.out.println((data[index + 1] & 0xFF) + " paramCount");
-//        }
-        
-        byte paramCount = data[index + 1];
-        int pos = index + 2;
-        
-        // Process modify field parameters
-        for (int i = 0; i < paramCount && pos + 1 < length; i++) {
-            byte attrType = data[pos++];
-            byte attrValue = data[pos++];
-            
-//            if(debug) {
-//    			System.out.println((attrType & 0xFF) + " attrType");
-//    			System.out.println((attrValue & 0xFF) + " attrValue");
-//    		}
-            
-            // Modify field attributes at current position
-            if (attrType == (byte) 0xC0) {
-                int currentPos = buffer.getCursorPosition();
-                buffer.setAttribute(currentPos, attrValue);
+
+    // the caller holds the buffer lock, it is released here
+    private void applyRecord(byte[] data, int length) throws IOException {
+        ScreenChange change = null;
+        Tn3270Events.Record event = new Tn3270Events.Record();
+        Tn3270eSession tn3270e = buffer.getTn3270e();
+        try {
+            event.begin();
+            long begin = System.nanoTime();
+            long stamp = buffer.beginUpdate();
+            try {
+            	// only complete records reach the command processor
+            	if (tn3270e == null) {
+            		processor.process(data, 0, length);
+            	} else {
+            		processTn3270eRecord(tn3270e, data, length);
+            	}
+            } finally {
+            	buffer.endUpdate(stamp);
+            }
+            // answered once the update is over, readers don't wait on the socket write
+            if (responseSequence >= 0) {
+            	tn3270e.sendResponse(responseSequence, responsePositive, responseCode);
             }
+            change = buffer.collectChanges();
+            buffer.publishSnapshot();
+            buffer.getMetrics().recordParsed(System.nanoTime() - begin);
+            event.end();
+            if (event.shouldCommit()) {
+            	event.command = (buffer.cmd() != null ? buffer.cmd() & 0xFF : 0);
+            	event.wcc = (buffer.wcc() != null ? buffer.wcc() & 0xFF : 0);
+            	event.bytes = length;
+            	event.commit();
+            }
+        } catch (Exception e) {
+            throw new IOException("Error processing data stream at EOR", e);
+        } finally {
+            responseSequence = -1;
+            buffer.signalEor();
+            buffer.signalUpdate();
+            buffer.unlock();
         }
         
-        return pos;
+        // listeners run after the lock is released so they can read the screen without holding up the buffer
+        buffer.notifyScreenUpdate(change);
     }
     
-    public int processInsertCursor(byte[] data, int index, int length) {
-//    	if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_IC");
-//		}
-    	
-        // Insert Cursor order - just move to next position for now
-        return index + 1;
-    }
-    
-    public int processProgramTab(byte[] data, int index, int length) {
-//    	if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_PT");
-//		}
-    	
-        // Program Tab - move to next unprotected field
-        int currentPos = buffer.getCursorPosition();
-        int nextField = buffer.findNextUnprotectedField(currentPos) + 1;
-        buffer.setCursorPosition(nextField);
-        
-        return index + 1;
-    }
-    
-    public int processRepeatToAddress(byte[] data, int index, int length) {
-        if (index + 3 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_RA");
-//		}
-        
-        int address = decodeAddress(data[index + 1], data[index + 2]);
-        byte character = data[index + 3];
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " '" + Tn3270Conversions.ebcdicToAscii(character) + "' to " + address);
-//		}
-        
-        int currentPos = buffer.getCursorPosition();
-        
-        // Repeat character from current position to specified address
-        while (currentPos != address && currentPos < buffer.getBufferSize()) {
-            buffer.setEbcdicCharacter(currentPos, character);
-            currentPos = (currentPos + 1) % buffer.getBufferSize();
+    private final RecordBuffer record = new RecordBuffer();
+    // the response a TN3270E record asked for, sent after the update, -1 when there is none
+    private int responseSequence = -1;
+    private boolean responsePositive;
+    private byte responseCode;
+
+    // strips the TN3270E header, only 3270 and SSCP-LU data reach the processor. Besides the WCC
+    // a request for a definite response and SSCP data unlock the keyboard
+    private void processTn3270eRecord(Tn3270eSession tn3270e, byte[] data, int length) throws IOException {
+        if (length < TelnetConstants.E_HEADER_SIZE) {
+            return;
         }
-        
-        buffer.setCursorPosition(currentPos);
-        
-        return index + 4;
-    }
-    
-    public int processEraseUntilAddress(byte[] data, int index, int length) {
-        if (index + 2 >= length) {
-			return index + 1;
-		}
-        
-        /*
-         * insert null in every field starting at the current address up to a ending position,
-         * only if the position is not protected, do not move the cursor
-         */
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_EUA");
-//		}
-        
-        int address = decodeAddress(data[index + 1], data[index + 2]);
-        int currentPos = buffer.getCursorPosition();
-        
-        while (currentPos != address && currentPos < buffer.getBufferSize()) {
-        	// Only erase if position is not protected
-			if (!buffer.isProtected(currentPos)) {
-				buffer.setEbcdicCharacter(currentPos, (byte) 0x00); // EBCDIC null
-			}
-			currentPos++;
+
+        byte responseFlag = data[2];
+        int sequence = ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        int offset = TelnetConstants.E_HEADER_SIZE;
+
+        switch (data[0]) {
+            case TelnetConstants.E_DT_3270_DATA:
+                tn3270e.setSscpMode(false);
+                boolean responses = tn3270e.hasFunction(TelnetConstants.E_FUNC_RESPONSES);
+                try {
+                	processor.process(data, offset, length - offset);
+                } catch (RuntimeException e) {
+                	// a host that wants to hear about errors gets a reject and the session goes on
+                	if (!responses || responseFlag == TelnetConstants.E_RSF_NO_RESPONSE) {
+                		throw e;
+                	}
+                	respond(sequence, false, TelnetConstants.E_NEG_COMMAND_REJECT);
+                	buffer.restoreKeyboard();
+                	return;
+                }
+                if (responses && responseFlag == TelnetConstants.E_RSF_ALWAYS_RESPONSE) {
+                	respond(sequence, true, TelnetConstants.E_POS_DEVICE_END);
+                	buffer.restoreKeyboard();
+                }
+                return;
+            case TelnetConstants.E_DT_SSCP_LU_DATA:
+                if (!tn3270e.isSscpMode()) {
+                	// the SSCP starts out on an unformatted screen, the application's fields would protect it
+                	buffer.clear();
+                	tn3270e.setSscpMode(true);
+                }
+                processor.processSscpLuData(data, offset, length - offset);
+                buffer.restoreKeyboard();
+                return;
+            case TelnetConstants.E_DT_BIND_IMAGE:
+                tn3270e.bind(Arrays.copyOfRange(data, offset, length));
+                return;
+            case TelnetConstants.E_DT_UNBIND:
+                tn3270e.unbind();
+                buffer.clear();
+                return;
+            default:
+                // SCS, NVT, requests and responses from the host aren't meant for a display
+                return;
         }
-        
-        return index + 3;
     }
-    
-    public int processGraphicsEscape(byte[] data, int index, int length) {
-        if (index + 1 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//        	System.out.println((data[index] & 0xFF) + " ORDER_GE");
-//        	System.out.println((data[index + 1] & 0xFF) + " char");
-//        }
-        
-        // Graphics Escape - treat next byte as character
-        byte character = data[index + 1];
-        int currentPos = buffer.getCursorPosition();
-        
-        buffer.setEbcdicCharacter(currentPos, character);
 
-        currentPos++;
-        buffer.setCursorPosition(Math.min((currentPos<buffer.getBufferSize()?currentPos:0), buffer.getBufferSize() - 1));
-        
-        return index + 2;
+    private void respond(int sequence, boolean positive, byte code) {
+        responseSequence = sequence;
+        responsePositive = positive;
+        responseCode = code;
     }
     
-    public int processStructuredField(byte[] data, int index, int length) {
-        if (index + 2 >= length) {
-			return index + 1;
-		}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " ORDER_STRUCT_FIELD");
-//		}
-        
-        // Skip structured field for now
-        int fieldLength = ((data[index] & 0xFF) << 8) | (data[index + 1] & 0xFF);
-        return index + fieldLength;
+    private void bufferByte(byte b) {
+    	// This is a normal 3270 data byte
+        record.append(b);
     }
     
-    public int processCharacter(byte[] data, int index, int length) {
-        if (index >= length) {
-			return index;
-		}
-        
-//        if(debug) {
-//			System.out.println((data[index] & 0xFF) + " '" + Tn3270Conversions.ebcdicToAscii(data[index]) + "'");
-//		}
-        
-        byte b = data[index];
-        
-        int currentPos = buffer.getCursorPosition();
-        
-        buffer.setEbcdicCharacter(currentPos, b);
-        
-        currentPos++;
-        buffer.setCursorPosition(Math.min((currentPos<buffer.getBufferSize()?currentPos:0), buffer.getBufferSize() - 1));
-        
-        return index + 1;
+    private void bufferBytes(byte[] data, int offset, int length) {
+        record.append(data, offset, length);
     }
     
-    private int decodeAddress(byte byte1, byte byte2) {
-        // 3270 address decoding
-    	
-        int addr1 = (byte1 & 0x3F);
-        int addr2 = (byte2 & 0x3F);
-        
-//        if(debug) {
-//    		System.out.println((byte1 & 0xFF) + " high");
-//    		System.out.println((byte2 & 0xFF) + " low");
-//    		System.out.println(((addr1 << 6) | addr2) + " final pos");
-//    	}
-        
-        return (addr1 << 6) | addr2;
+    
+    @Override
+	public void stop() {
+        running = false;
     }
     
+    
     public boolean isRunning() {
         return running;
     }
@@ -0,0 +1,436 @@
+package org.me.ibm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Applies complete 3270 records to a Buffer. Framing (telnet, EOR) is left to the front ends,
+ * this only ever sees the bytes of one record. The caller holds the buffer lock.
+ */
+public class DataStreamProcessor {
+    private final Buffer buffer;
+    // records that can't be read in place (direct or read only buffers) are copied here first
+    private byte[] scratch = new byte[0];
+    // orders seen in the current record by order byte, handed to the session metrics once per record
+    private final int[] orderCounts = new int[ORDER_TABLE_SIZE];
+
+    // all orders are below 0x40, everything from 0x40 up is data
+    private static final int ORDER_TABLE_SIZE = 64;
+    // EBCDIC new line, only meaningful in SSCP-LU data
+    private static final byte NL = 0x15;
+
+    // the background copy/restore has always keyed on WCC 0x04, which the constants used to call
+    // start printer. In IBM's numbering it is sound alarm, the trigger stays on that byte all the same
+    private static final byte BACKGROUND_COPY_WCC = TelnetConstants.WCC_SOUND_ALARM;
+
+    private static final byte OP_DATA = 0;
+    private static final byte OP_SF = 1;
+    private static final byte OP_SFE = 2;
+    private static final byte OP_SBA = 3;
+    private static final byte OP_SA = 4;
+    private static final byte OP_MF = 5;
+    private static final byte OP_IC = 6;
+    private static final byte OP_PT = 7;
+    private static final byte OP_RA = 8;
+    private static final byte OP_EUA = 9;
+    private static final byte OP_GE = 10;
+
+    // order byte to handler, the switch on it compiles to a jump table so the loop has a single dispatch site
+    private static final byte[] ORDERS = new byte[ORDER_TABLE_SIZE];
+    static {
+    	ORDERS[TelnetConstants.SF] = OP_SF;
+    	ORDERS[TelnetConstants.SFE] = OP_SFE;
+    	ORDERS[TelnetConstants.SBA] = OP_SBA;
+    	ORDERS[TelnetConstants.SA] = OP_SA;
+    	ORDERS[TelnetConstants.MF] = OP_MF;
+    	ORDERS[TelnetConstants.IC] = OP_IC;
+    	ORDERS[TelnetConstants.PT] = OP_PT;
+    	ORDERS[TelnetConstants.RA] = OP_RA;
+    	ORDERS[TelnetConstants.EUA] = OP_EUA;
+    	ORDERS[TelnetConstants.GE] = OP_GE;
+    }
+
+    public DataStreamProcessor(Buffer buffer) {
+        this.buffer = buffer;
+    }
+
+    private static int order(byte b) {
+    	return ((b & 0xFF) < ORDER_TABLE_SIZE ? ORDERS[b] : OP_DATA);
+    }
+
+    // processes the remaining bytes of the record, the position ends up at the limit
+    public void process(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+
+        if (record.hasArray()) {
+        	process(record.array(), record.arrayOffset() + record.position(), length);
+        } else {
+        	if (scratch.length < length) {
+        		scratch = new byte[length];
+        	}
+        	record.duplicate().get(scratch, 0, length);
+        	process(scratch, 0, length);
+        }
+
+        record.position(record.limit());
+    }
+
+    public void process(byte[] data, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            i = processCommand(data, i, end);
+        }
+
+        buffer.getMetrics().ordersProcessed(orderCounts);
+        Arrays.fill(orderCounts, 0);
+    }
+
+    // SSCP-LU data has no command or orders, it is text written at the cursor with NL starting the next line
+    public void processSscpLuData(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int width = buffer.getWidth();
+
+        for (int i = offset; i < end; i++) {
+            int currentPos = buffer.getCursorPosition();
+            if (data[i] == NL) {
+            	int next = (currentPos / width + 1) * width;
+            	buffer.setCursorPosition(next < buffer.getBufferSize() ? next : 0);
+            } else {
+            	processCharacter(data[i], i);
+            }
+        }
+    }
+
+    private int processCommand(byte[] data, int index, int end) throws IOException {
+        byte command = normalizeCommand(data[index]);
+
+        buffer.setIncomingCommandByte(command);
+
+        switch (command) {
+            case TelnetConstants.WRITE:
+                int indx = processWrite(command, data, index + 1, end);
+                // only call restore if the copy was made, meaning the screen data stream is complete
+                if (buffer.wcc() != null && (buffer.wcc() & BACKGROUND_COPY_WCC) != 0) {
+                	buffer.restoreDataFromBackground();
+                }
+                return indx;
+            case TelnetConstants.ERASE_WRITE:
+            case TelnetConstants.ERASE_WRITE_ALTERNATE:
+                return processWrite(command, data, index + 1, end);
+            case TelnetConstants.READ_BUFFER:
+            case TelnetConstants.READ_MODIFIED:
+            case TelnetConstants.READ_MODIFIED_ALL:
+                return index + 1;
+            case TelnetConstants.ERASE_ALL_UNPROTECTED:
+                processEraseAllUnprotected();
+                return index + 1;
+            default:
+                // Treat as data character, the byte goes in as normalized above
+                return processCharacter(command, index);
+        }
+    }
+
+    // hosts that send the local (channel attached) form of a command mean the same command,
+    // EWA, RMA and EAU are the SNA codes that don't live in the 0xF0 range
+    private static byte normalizeCommand(byte command) {
+        switch (command) {
+            case TelnetConstants.LOCAL_ERASE_WRITE_ALTERNATE:
+            	return TelnetConstants.ERASE_WRITE_ALTERNATE;
+            case TelnetConstants.LOCAL_READ_MODIFIED_ALL:
+            	return TelnetConstants.READ_MODIFIED_ALL;
+            case TelnetConstants.LOCAL_ERASE_ALL_UNPROTECTED:
+            	return TelnetConstants.ERASE_ALL_UNPROTECTED;
+            case TelnetConstants.ERASE_WRITE_ALTERNATE:
+            case TelnetConstants.READ_MODIFIED_ALL:
+            case TelnetConstants.ERASE_ALL_UNPROTECTED:
+            	return command;
+            default:
+            	return ((command & 0xFF) < 240 ? (byte)((command & 0xFF) + 240) : command);
+        }
+    }
+
+    private int processWrite(byte command, byte[] data, int index, int end) {
+        if (index >= end) {
+			return index;
+		}
+
+        index = processWriteControlCharacter(command, data[index], index);
+
+        while (index < end) {
+            // telnet escapes are already gone, an 0xFF here is a plain data byte
+            int op = order(data[index]);
+            if (op != OP_DATA) {
+            	orderCounts[data[index]]++;
+            }
+
+            switch (op) {
+                case OP_SF:
+                    index = processStartField(data, index, end);
+                    break;
+                case OP_SFE:
+                    index = processStartFieldExtended(data, index, end);
+                    break;
+                case OP_SBA:
+                    index = processSetBufferAddress(data, index, end);
+                    break;
+                case OP_SA:
+                    index = processSetAttribute(data, index, end);
+                    break;
+                case OP_MF:
+                    index = processModifyField(data, index, end);
+                    break;
+                case OP_IC:
+                    // Insert Cursor order - just move to next position for now
+                    index = index + 1;
+                    break;
+                case OP_PT:
+                    index = processProgramTab(index);
+                    break;
+                case OP_RA:
+                    index = processRepeatToAddress(data, index, end);
+                    break;
+                case OP_EUA:
+                    index = processEraseUntilAddress(data, index, end);
+                    break;
+                case OP_GE:
+                    index = processGraphicsEscape(data, index, end);
+                    break;
+                default:
+                    index = processDataRun(data, index, end);
+                    break;
+            }
+        }
+
+        return index;
+    }
+
+    // everything up to the next order goes into the buffer with one call, the cursor moves once at the end
+    private int processDataRun(byte[] data, int index, int end) {
+        int runEnd = index + 1;
+        while (runEnd < end && order(data[runEnd]) == OP_DATA) {
+        	runEnd++;
+        }
+
+        int runLength = runEnd - index;
+        int currentPos = buffer.getCursorPosition();
+
+        buffer.setEbcdicCharacters(currentPos, data, index, runLength);
+        buffer.setCursorPosition((currentPos + runLength) % buffer.getBufferSize());
+
+        return runEnd;
+    }
+
+    private int processWriteControlCharacter(byte command, byte wcc, int index) {
+        buffer.setIncomingCommandByte(command);
+        buffer.setIncomingWriteControlCharacterByte(wcc);
+
+        switch(command) {
+    	case TelnetConstants.ERASE_WRITE:
+		case TelnetConstants.ERASE_WRITE_ALTERNATE:
+			// no need to check or call reset mdt or erase all unprotected here, its implied by .clear()
+			buffer.clear();
+			break;
+		case TelnetConstants.WRITE:
+			if ((wcc & TelnetConstants.WCC_RESET_MDT) != 0) {
+				buffer.resetMdtFlags();
+			}
+
+			// only call copy to background if the screen data stream is complete
+			if ((wcc & BACKGROUND_COPY_WCC) != 0) {
+				buffer.copyDataToBackground();
+			}
+    	}
+
+        return index + 1;
+    }
+
+    // EAU has no WCC, it always resets the MDTs, restores the keyboard and puts the cursor in the first unprotected field
+    private void processEraseAllUnprotected() {
+        buffer.eraseAllUnprotected();
+        buffer.resetMdtFlags();
+
+        int first = buffer.findNextUnprotectedField(buffer.getBufferSize() - 1) + 1;
+        buffer.setCursorPosition(first < buffer.getBufferSize() ? first : 0);
+        buffer.restoreKeyboard();
+    }
+
+    private int processStartField(byte[] data, int index, int end) {
+        if (index + 1 >= end) {
+			return index + 1;
+		}
+
+        byte attribute = data[index + 1];
+        int currentPos = buffer.getCursorPosition();
+
+        buffer.setFieldStart(currentPos, true);
+        buffer.setAttribute(currentPos, attribute);
+        buffer.setEbcdicCharacter(currentPos, (byte)0x40); // Field attribute position is typically blank
+
+        advanceCursor(currentPos);
+
+        return index + 2;
+    }
+
+    private int processStartFieldExtended(byte[] data, int index, int end) {
+        if (index + 1 >= end) {
+			return index + 1;
+		}
+
+        int pos = index + 1;
+        byte paramCount = data[pos++];
+
+        int currentPos = buffer.getCursorPosition();
+        buffer.setFieldStart(currentPos, true);
+        // an SFE without a basic 3270 attribute pair defines a default (unprotected, normal) field
+        buffer.setAttribute(currentPos, (byte)0x00);
+        buffer.setExtendedAttribute(currentPos, TelnetConstants.XA_ALL, (byte)0x00);
+
+        // basic 3270 attribute, highlighting and color
+        for (int i = 0; i < paramCount && pos + 1 < end; i++) {
+            byte attrType = data[pos++];
+            byte attrValue = data[pos++];
+            buffer.setExtendedAttribute(currentPos, attrType, attrValue);
+        }
+
+        buffer.setEbcdicCharacter(currentPos, (byte)0x40);
+
+        advanceCursor(currentPos);
+
+        return pos;
+    }
+
+    private int processSetBufferAddress(byte[] data, int index, int end) {
+        if (index + 2 >= end) {
+			return index + 1;
+		}
+
+        int address = Tn3270Conversions.decodeAddress(data[index + 1], data[index + 2]);
+
+        if (address >= 0 && address < buffer.getBufferSize()) {
+            buffer.setCursorPosition(address);
+        }
+
+        return index + 3;
+    }
+
+    private int processSetAttribute(byte[] data, int index, int end) {
+        if (index + 2 >= end) {
+			return index + 1;
+		}
+
+        byte attrType = data[index + 1];
+        byte attrValue = data[index + 2];
+
+        // Set attribute at current cursor position
+        int currentPos = buffer.getCursorPosition();
+        if (attrType == (byte) 0xC0) { // Basic attribute
+            buffer.setAttribute(currentPos, attrValue);
+        }
+
+        return index + 3;
+    }
+
+    private int processModifyField(byte[] data, int index, int end) {
+        if (index + 2 >= end) {
+			return index + 1;
+		}
+
+        byte paramCount = data[index + 1];
+        int pos = index + 2;
+
+        // Modify field attributes at current position
+        for (int i = 0; i < paramCount && pos + 1 < end; i++) {
+            byte attrType = data[pos++];
+            byte attrValue = data[pos++];
+            buffer.setExtendedAttribute(buffer.getCursorPosition(), attrType, attrValue);
+        }
+
+        return pos;
+    }
+
+    private int processProgramTab(int index) {
+        // Program Tab - move to next unprotected field
+        int currentPos = buffer.getCursorPosition();
+        int nextField = buffer.findNextUnprotectedField(currentPos) + 1;
+        buffer.setCursorPosition(nextField);
+
+        return index + 1;
+    }
+
+    private int processRepeatToAddress(byte[] data, int index, int end) {
+        if (index + 3 >= end) {
+			return index + 1;
+		}
+
+        int address = Tn3270Conversions.decodeAddress(data[index + 1], data[index + 2]);
+        byte character = data[index + 3];
+
+        // an address off the screen would never be reached, ignore the order like SBA does
+        if (address < 0 || address >= buffer.getBufferSize()) {
+        	return index + 4;
+        }
+
+        int currentPos = buffer.getCursorPosition();
+
+        // Repeat character from current position to specified address
+        while (currentPos != address && currentPos < buffer.getBufferSize()) {
+            buffer.setEbcdicCharacter(currentPos, character);
+            currentPos = (currentPos + 1) % buffer.getBufferSize();
+        }
+
+        buffer.setCursorPosition(currentPos);
+
+        return index + 4;
+    }
+
+    private int processEraseUntilAddress(byte[] data, int index, int end) {
+        if (index + 2 >= end) {
+			return index + 1;
+		}
+
+        /*
+         * insert null in every field starting at the current address up to a ending position,
+         * only if the position is not protected, do not move the cursor
+         */
+        int address = Tn3270Conversions.decodeAddress(data[index + 1], data[index + 2]);
+        int currentPos = buffer.getCursorPosition();
+
+        while (currentPos != address && currentPos < buffer.getBufferSize()) {
+			if (!buffer.isProtected(currentPos)) {
+				buffer.setEbcdicCharacter(currentPos, (byte) 0x00); // EBCDIC null
+			}
+			currentPos++;
+        }
+
+        return index + 3;
+    }
+
+    private int processGraphicsEscape(byte[] data, int index, int end) {
+        if (index + 1 >= end) {
+			return index + 1;
+		}
+
+        // Graphics Escape - treat next byte as character
+        int currentPos = buffer.getCursorPosition();
+        buffer.setEbcdicCharacter(currentPos, data[index + 1]);
+        advanceCursor(currentPos);
+
+        return index + 2;
+    }
+
+    private int processCharacter(byte character, int index) {
+        int currentPos = buffer.getCursorPosition();
+        buffer.setEbcdicCharacter(currentPos, character);
+        advanceCursor(currentPos);
+
+        return index + 1;
+    }
+
+    private void advanceCursor(int currentPos) {
+        currentPos++;
+        buffer.setCursorPosition(Math.min((currentPos<buffer.getBufferSize()?currentPos:0), buffer.getBufferSize() - 1));
+    }
+}
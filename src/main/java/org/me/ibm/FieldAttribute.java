@@ -17,36 +17,34 @@ public class FieldAttribute {
     private static final byte SKIP_PROTECTED_MASK = 0x30;// protected + numeric
     private static final byte DISPLAY_MASK = 0x0C;
     
-    private FieldType type;
-    private FieldIntensity intensity;
-    private FieldColor color;
-    private FieldHighlighting highlighting;
-    private boolean modified;
-    private boolean numeric;
-    private boolean skipProtected;
-    private boolean rightJustify;
-    private boolean visible;
+    // decoded views of all 256 attribute bytes, instances are immutable so they can be shared by every buffer
+    private static final FieldAttribute[] CACHE = new FieldAttribute[256];
+    
+    static {
+    	for (int i = 0; i < CACHE.length; i++) {
+    		CACHE[i] = new FieldAttribute((byte) i);
+    	}
+    }
+    
+    public static final FieldAttribute DEFAULT = CACHE[0];
+    
+    private final FieldType type;
+    private final FieldIntensity intensity;
+    private final FieldColor color;
+    private final FieldHighlighting highlighting;
+    private final boolean modified;
+    private final boolean numeric;
+    private final boolean skipProtected;
+    private final boolean rightJustify;
+    private final boolean visible;
 
-    private byte attribute;
+    private final byte attribute;
     
-    
-    public FieldAttribute(byte attribute) {
-        parseAttribute(attribute);
-    }
-    
-    public FieldAttribute() {
-        this.type = FieldType.UNPROTECTED;
-        this.intensity = FieldIntensity.NORMAL;
-        this.color = FieldColor.DEFAULT;
-        this.highlighting = FieldHighlighting.NORMAL;
-        this.modified = false;
-        this.numeric = false;
-        this.skipProtected = false;
-        this.rightJustify = false;
-        this.visible = true;
+    public static FieldAttribute of(byte attribute) {
+    	return CACHE[attribute & 0xFF];
     }
     
-    private void parseAttribute(byte attribute) {
+    public FieldAttribute(byte attribute) {
     	this.attribute = attribute;
         boolean isProtected = (attribute & PROTECTED_MASK) != 0;
         this.numeric = (attribute & NUMERIC_MASK) != 0;
@@ -62,22 +60,19 @@ public class FieldAttribute {
         
         int displayBits = (attribute & DISPLAY_MASK) >> 2;
         switch (displayBits) {
-            case 0:
-                this.intensity = FieldIntensity.NORMAL;
-                this.visible = true;
-                break;
             case 1:
                 this.intensity = FieldIntensity.HIGH;
                 this.visible = true;
                 break;
             case 2:
-                this.intensity = FieldIntensity.ZERO;
-                this.visible = false;
-                break;
             case 3:
                 this.intensity = FieldIntensity.ZERO;
                 this.visible = false;
                 break;
+            default:
+                this.intensity = FieldIntensity.NORMAL;
+                this.visible = true;
+                break;
         }
         
         this.modified = (attribute & MODIFIED_MASK) != 0;
@@ -86,13 +81,31 @@ public class FieldAttribute {
         this.rightJustify = false;
     }
     
+    public FieldAttribute() {
+        this((byte) 0x00);
+    }
+    
+    private FieldAttribute(FieldAttribute other, FieldType type, FieldIntensity intensity, FieldColor color, FieldHighlighting highlighting,
+    		boolean modified, boolean numeric, boolean skipProtected, boolean rightJustify, boolean visible) {
+    	this.attribute = other.attribute;
+    	this.type = type;
+    	this.intensity = intensity;
+    	this.color = color;
+    	this.highlighting = highlighting;
+    	this.modified = modified;
+    	this.numeric = numeric;
+    	this.skipProtected = skipProtected;
+    	this.rightJustify = rightJustify;
+    	this.visible = visible;
+    }
+    
     public FieldType type() {
         return type;
     }
     
+    // instances are immutable, the setters return a changed copy
     public FieldAttribute type(FieldType type) {
-        this.type = type;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, rightJustify, visible);
     }
     
     public FieldIntensity intensity() {
@@ -100,8 +113,7 @@ public class FieldAttribute {
     }
     
     public FieldAttribute intensity(FieldIntensity intensity) {
-        this.intensity = intensity;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, rightJustify, visible);
     }
     
     public FieldColor color() {
@@ -109,8 +121,7 @@ public class FieldAttribute {
     }
     
     public FieldAttribute color(FieldColor color) {
-        this.color = color;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, rightJustify, visible);
     }
     
     public FieldHighlighting highlighting() {
@@ -118,8 +129,7 @@ public class FieldAttribute {
     }
     
     public FieldAttribute highlighting(FieldHighlighting highlighting) {
-        this.highlighting = highlighting;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, rightJustify, visible);
     }
     
     public boolean canInput() {
@@ -151,28 +161,23 @@ public class FieldAttribute {
     }
     
     public FieldAttribute modified(boolean b) {
-        this.modified = b;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, b, numeric, skipProtected, rightJustify, visible);
     }
     
     public FieldAttribute numeric(boolean b) {
-        this.numeric = b;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, b, skipProtected, rightJustify, visible);
     }
     
     public FieldAttribute autoSkip(boolean b) {
-        this.skipProtected = b;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, b, rightJustify, visible);
     }
     
     public FieldAttribute rightJustify(boolean b) {
-        this.rightJustify = b;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, b, visible);
     }
     
     public FieldAttribute visible(boolean b) {
-        this.visible = b;
-        return this;
+        return new FieldAttribute(this, type, intensity, color, highlighting, modified, numeric, skipProtected, rightJustify, b);
     }
     
     public byte toAttributeByte() {
@@ -9,5 +9,20 @@ public enum FieldColor {
     GREEN,
     TURQUOISE,
     YELLOW,
-    WHITE
+    WHITE;
+    
+    // value of the foreground color extended attribute (type 0x42)
+    public static FieldColor of(byte value) {
+    	switch (value & 0xFF) {
+    		case 0xF1: return BLUE;
+    		case 0xF2: return RED;
+    		case 0xF3: return PINK;
+    		case 0xF4: return GREEN;
+    		case 0xF5: return TURQUOISE;
+    		case 0xF6: return YELLOW;
+    		case 0xF7: return WHITE;
+    		case 0xF8: return BLACK;
+    		default: return DEFAULT;
+    	}
+    }
 }
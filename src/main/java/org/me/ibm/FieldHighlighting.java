@@ -4,5 +4,15 @@ public enum FieldHighlighting {
     NORMAL,
     BLINK,
     REVERSE,
-    UNDERSCORE
+    UNDERSCORE;
+    
+    // value of the highlighting extended attribute (type 0x41)
+    public static FieldHighlighting of(byte value) {
+    	switch (value & 0xFF) {
+    		case 0xF1: return BLINK;
+    		case 0xF2: return REVERSE;
+    		case 0xF4: return UNDERSCORE;
+    		default: return NORMAL;
+    	}
+    }
 }
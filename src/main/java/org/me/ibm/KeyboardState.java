@@ -0,0 +1,12 @@
+package org.me.ibm;
+
+/*
+ * The terminal's keyboard as the host sees it. A session starts out AWAITING_FIRST and is
+ * unlocked by the first screen. An AID locks it, and it stays LOCKED until the host restores it
+ * with the WCC, answers the SYSREQ from the SSCP, or (TN3270E) asks for a definite response.
+ */
+public enum KeyboardState {
+	AWAITING_FIRST,
+	LOCKED,
+	UNLOCKED
+}
@@ -0,0 +1,159 @@
+package org.me.ibm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Log-linear histogram of latencies in nanoseconds, safe to record into from any number of
+ * threads without locking. Every power of two is split into 2^subBucketBits linear buckets,
+ * values below that count are kept exactly. The default of 2 bits is 248 buckets (2 KB) with a
+ * reported value at most 25% above the recorded one, which is plenty for per session metrics.
+ * Reports that need more precision ask for more bits, 7 bits keep it within 1% at 58 KB.
+ * Reading while others record gives a consistent enough picture for reporting, each bucket is
+ * exact but the buckets are not read at one instant.
+ */
+public final class LatencyHistogram {
+	public static final int DEFAULT_SUB_BUCKET_BITS = 2;
+
+	private final int subBucketBits;
+	private final int bucketCount;
+	private final AtomicLongArray counts;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram() {
+		this(DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	public LatencyHistogram(int subBucketBits) {
+		if (subBucketBits < 1 || subBucketBits > 10) {
+			throw new IllegalArgumentException("Sub bucket bits must be between 1 and 10, not " + subBucketBits + ".");
+		}
+		this.subBucketBits = subBucketBits;
+		this.bucketCount = (64 - subBucketBits) << subBucketBits;
+		this.counts = new AtomicLongArray(bucketCount);
+	}
+
+	public int getSubBucketBits() {
+		return subBucketBits;
+	}
+
+	// negative values (a clock that went backwards) are recorded as 0
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts.incrementAndGet(indexOf(value, subBucketBits));
+		count.increment();
+		total.add(value);
+
+		long current;
+		while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+			// lost the race, try again against the new minimum
+		}
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// lost the race, try again against the new maximum
+		}
+	}
+
+	public void record(long duration, TimeUnit unit) {
+		record(unit.toNanos(duration));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMin() {
+		return (getCount() == 0 ? 0 : min.get());
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = getCount();
+		return (n == 0 ? 0 : (double) total.sum() / n);
+	}
+
+	// percentile between 0 and 100, the highest value that falls in the same bucket as the percentile.
+	// Walks the buckets in place, anything recorded between the two passes only moves the answer a bucket
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i, subBucketBits), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	// adds the other histogram's values, used to roll session histograms up into a total. A finer
+	// histogram's values land in the bucket of their highest value
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < other.bucketCount; i++) {
+			long bucket = other.counts.get(i);
+			if (bucket != 0) {
+				int index = (other.subBucketBits == subBucketBits ? i : indexOf(highestValueOf(i, other.subBucketBits), subBucketBits));
+				counts.addAndGet(index, bucket);
+			}
+		}
+		count.add(other.count.sum());
+		total.add(other.total.sum());
+
+		long current;
+		long otherMin = other.min.get();
+		while (otherMin < (current = min.get()) && !min.compareAndSet(current, otherMin)) {
+			// lost the race, try again against the new minimum
+		}
+		long otherMax = other.max.get();
+		while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+			// lost the race, try again against the new maximum
+		}
+	}
+
+	// not atomic against concurrent recording, call between measurement intervals
+	public void reset() {
+		for (int i = 0; i < bucketCount; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		min.set(Long.MAX_VALUE);
+		max.set(0);
+	}
+
+	static int indexOf(long value, int subBucketBits) {
+		int subBucketCount = 1 << subBucketBits;
+		if (value < subBucketCount) {
+			return (int) value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - subBucketBits;
+		int subBucket = (int) (value >>> shift) - subBucketCount;
+		return subBucketCount + (shift << subBucketBits) + subBucket;
+	}
+
+	static long highestValueOf(int index, int subBucketBits) {
+		int subBucketCount = 1 << subBucketBits;
+		if (index < subBucketCount) {
+			return index;
+		}
+		int shift = (index - subBucketCount) >>> subBucketBits;
+		long subBucket = (index - subBucketCount) & (subBucketCount - 1);
+		long lowest = (subBucketCount + subBucket) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
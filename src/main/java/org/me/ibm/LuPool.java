@@ -0,0 +1,60 @@
+package org.me.ibm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * LU names TN3270E sessions connect to, shared between sessions so two of them never ask the
+ * host for the same LU. A session takes the first free name, and gives it back when the host
+ * rejects it or the session disconnects.
+ */
+public class LuPool {
+	private final List<String> names;
+	private final Set<String> inUse = new HashSet<>();
+
+	public LuPool(Collection<String> names) {
+		if (names.isEmpty()) {
+			throw new IllegalArgumentException("An LU pool needs at least one name.");
+		}
+		this.names = new ArrayList<>(names);
+	}
+
+	public static LuPool of(String... names) {
+		return new LuPool(List.of(names));
+	}
+
+	// e.g. range("TCP", 1, 50, 5) for TCP00001 to TCP00050
+	public static LuPool range(String prefix, int first, int last, int digits) {
+		List<String> names = new ArrayList<>();
+		for (int i = first; i <= last; i++) {
+			names.add(prefix + String.format("%0" + digits + "d", i));
+		}
+		return new LuPool(names);
+	}
+
+	// null when every name is taken or excluded, the excluded ones are those the host already turned down
+	public synchronized String acquire(Set<String> exclude) {
+		for (String name : names) {
+			if (!inUse.contains(name) && !exclude.contains(name)) {
+				inUse.add(name);
+				return name;
+			}
+		}
+		return null;
+	}
+
+	public synchronized void release(String name) {
+		inUse.remove(name);
+	}
+
+	public synchronized int getAvailableCount() {
+		return names.size() - inUse.size();
+	}
+
+	public int size() {
+		return names.size();
+	}
+}
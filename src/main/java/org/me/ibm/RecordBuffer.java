@@ -0,0 +1,85 @@
+package org.me.ibm;
+
+import java.util.Arrays;
+
+public class RecordBuffer {
+	private static final int DEFAULT_CAPACITY = 8192;
+	
+	private byte[] data;
+	private int length;
+	
+	public RecordBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public RecordBuffer(int capacity) {
+		this.data = new byte[Math.max(capacity, 16)];
+		this.length = 0;
+	}
+	
+	public RecordBuffer append(byte b) {
+		if (length == data.length) {
+			ensureCapacity(length + 1);
+		}
+		data[length++] = b;
+		return this;
+	}
+	
+	public RecordBuffer append(byte[] src, int offset, int count) {
+		ensureCapacity(length + count);
+		System.arraycopy(src, offset, data, length, count);
+		length += count;
+		return this;
+	}
+	
+	// telnet data byte, 0xFF has to go out doubled as IAC IAC
+	public RecordBuffer appendEscaped(byte b) {
+		append(b);
+		if (b == TelnetConstants.IAC) {
+			append(b);
+		}
+		return this;
+	}
+	
+	public RecordBuffer appendEscaped(byte[] src, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			appendEscaped(src[i]);
+		}
+		return this;
+	}
+	
+	// the backing array is reused between records, only the first length() bytes are valid
+	public byte[] array() {
+		return data;
+	}
+	
+	public int length() {
+		return length;
+	}
+	
+	public boolean isEmpty() {
+		return length == 0;
+	}
+	
+	public RecordBuffer reset() {
+		length = 0;
+		return this;
+	}
+	
+	public int capacity() {
+		return data.length;
+	}
+	
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= data.length) {
+			return;
+		}
+		
+		// grow by doubling, the buffer keeps the largest size seen so later records don't allocate
+		int newCapacity = data.length << 1;
+		if (newCapacity < minCapacity) {
+			newCapacity = minCapacity;
+		}
+		data = Arrays.copyOf(data, newCapacity);
+	}
+}
@@ -5,6 +5,7 @@ import java.io.OutputStream;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class Screen {
 	private TimeUnit UNIT = TimeUnit.MILLISECONDS;
@@ -13,11 +14,19 @@ public class Screen {
 	
     private final Buffer buffer;
     private final OutputStream outputStream;
+    private final RecordBuffer outbound;
+    // scratch space for encoding buffer addresses into the outbound record
+    private final byte[] address = new byte[2];
     private boolean insertMode;
+    // how long the host has to stay quiet after unlocking the keyboard before an AID returns
+    private long settleNanos = 0;
+    // AID keys throw when the host still has the keyboard locked after the wait, off they return as they always did
+    private boolean strictKeyboardWait = false;
     
     public Screen(Buffer buffer, OutputStream outputStream) {
         this.buffer = buffer;
         this.outputStream = outputStream;
+        this.outbound = new RecordBuffer(1024);
         this.insertMode = false;
     }
     
@@ -34,49 +43,43 @@ public class Screen {
     	}
     }
     
+    // reads come from the snapshot published after the last record, they never wait for the parser
     public String getString(String separator) throws Exception {
-        StringBuilder sb = new StringBuilder();
-        for (int row = 0; row < buffer.getHeight(); row++) {
-            if (row > 0) {
-                sb.append(separator);
-            }
-            sb.append(getString(row));
-        }
-        return sb.toString();
+        return buffer.getSnapshot().getString(separator);
     }
     
     public String getString(int row) throws Exception{
-        if (row < 0 || row >= buffer.getHeight()) {
-            return "";
-        }
-        
-        boolean gotLock = false;
-		
-		try{
-			gotLock = buffer.acquireLock(WAIT, UNIT);
-			return buffer.string(row);
-		}finally{
-			if(gotLock){
-				buffer.unlock();
-			}
-		}
+        return buffer.getSnapshot().getString(row);
     }
     
     public String getString(int position, int length) throws Exception {
-        if (position < 0 || position >= buffer.getBufferSize() || length <= 0) {
-            return "";
-        }
-        
-        boolean gotLock = false;
-		
-		try{
-			gotLock = buffer.acquireLock(WAIT, UNIT);
-			return buffer.string(position, length);
-		}finally{
-			if(gotLock){
-				buffer.unlock();
-			}
-		}
+        return buffer.getSnapshot().getString(position, length);
+    }
+    
+    public ScreenSnapshot snapshot() {
+    	return buffer.getSnapshot();
+    }
+    
+    // allocation free variants for scrapers, all read the latest snapshot
+    public ScreenText getRowText(int row) {
+    	return buffer.getSnapshot().getRowText(row);
+    }
+    
+    public ScreenText getFieldText(int fieldIndex) {
+    	return buffer.getSnapshot().getFieldText(fieldIndex);
+    }
+    
+    public int copyFieldText(int fieldIndex, char[] dst) {
+    	return buffer.getSnapshot().copyFieldText(fieldIndex, dst);
+    }
+    
+    public int copyText(int position, int length, char[] dst, int dstOffset) {
+    	return buffer.getSnapshot().copyText(position, length, dst, dstOffset);
+    }
+    
+    public Screen appendTo(Appendable out, String separator) throws IOException {
+    	buffer.getSnapshot().appendTo(out, separator);
+    	return this;
     }
     
     public String getString(int row, int col, int length) throws Exception {
@@ -105,8 +108,10 @@ public class Screen {
         }
         
         boolean gotLock = false;
+        long stamp = 0;
 		try{
 			gotLock = buffer.acquireLock(WAIT, UNIT);
+			stamp = buffer.beginUpdate();
 			
 			int currentPos = position;
 			buffer.setCursorPosition(currentPos);
@@ -131,11 +136,17 @@ public class Screen {
 	        
 	        // Update cursor position
 	        buffer.setCursorPosition(Math.min(currentPos, buffer.getBufferSize() - 1));
+	        buffer.endUpdate(stamp);
+	        stamp = 0;
+	        buffer.publishSnapshot();
 			
 //			tn3270.notifyDisplay();
 			
 			return this;
 		}finally{
+			if(stamp != 0){
+				buffer.endUpdate(stamp);
+			}
 			if(gotLock){
 				buffer.unlock();
 			}
@@ -249,6 +260,31 @@ public class Screen {
         return this;
     }
     
+    // on a TN3270E session with the SYSREQ function this is telnet AO, the host answers from the SSCP
+    public Screen sysreq() throws IOException, InterruptedException, TimeoutException {
+        Tn3270eSession tn3270e = buffer.getTn3270e();
+        if (tn3270e == null || !tn3270e.hasFunction(TelnetConstants.E_FUNC_SYSREQ)) {
+        	sendCommandKey(TelnetConstants.AID_SYSREQ);
+        	return this;
+        }
+
+        boolean gotLock = false;
+        try {
+        	gotLock = buffer.acquireLock();
+        	buffer.setAidKey(TelnetConstants.AID_SYSREQ & 0xFF);
+        	tn3270e.sendSysReq();
+        	buffer.markAidSent();
+        	if (!buffer.awaitEor(UNIT.toNanos(WAIT), settleNanos, TimeUnit.NANOSECONDS) && strictKeyboardWait) {
+        		throw keyboardTimeout(UNIT.toMillis(WAIT));
+        	}
+        } finally {
+        	if (gotLock) {
+        		buffer.unlock();
+        	}
+        }
+        return this;
+    }
+    
     public Screen insert() {
         insertMode = !insertMode;
         
@@ -299,6 +335,87 @@ public class Screen {
         return this;
     }
     
+    // waits for the host instead of sleeping a fixed time, each call throws TimeoutException once its own deadline passes
+    public Screen waitUntil(Predicate<Buffer> condition) throws InterruptedException, TimeoutException {
+    	return waitUntil(condition, WAIT, UNIT);
+    }
+    
+    public Screen waitUntil(Predicate<Buffer> condition, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	if(!buffer.awaitCondition(condition, wait, unit)) {
+    		throw new TimeoutException("Timed out after " + unit.toMillis(wait) + "ms waiting for the screen.");
+    	}
+    	return this;
+    }
+    
+    public Screen waitForText(String text, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	return waitUntil(b -> b.indexOf(text) >= 0, wait, unit);
+    }
+    
+    public Screen waitForText(int row, int col, String text, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	int position = (row * TelnetConstants.SCREEN_WIDTH) + col;
+    	return waitUntil(b -> b.matches(position, text), wait, unit);
+    }
+    
+    // panels usually carry their id at a fixed place, e.g. ISPF shows it in the top left corner
+    public Screen waitForScreenId(int row, int col, String screenId, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	return waitForText(row, col, screenId, wait, unit);
+    }
+    
+    public Screen waitForKeyboardUnlock(long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	return waitForKeyboardUnlock(wait, 0, unit);
+    }
+    
+    public Screen waitForKeyboardUnlock(long wait, long settle, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	if(!buffer.awaitKeyboardUnlock(wait, settle, unit)) {
+    		throw keyboardTimeout(unit.toMillis(wait));
+    	}
+    	return this;
+    }
+    
+    // the buffer reports a wait that ran out as false, the screen turns it into an exception
+    private static TimeoutException keyboardTimeout(long millis) {
+    	return new TimeoutException("Timed out after " + millis + "ms waiting for the keyboard.");
+    }
+    
+    public long getSettleTime(TimeUnit unit) {
+    	return unit.convert(settleNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // AID keys return once the keyboard is unlocked and the host sent nothing more for this long, 0 returns right away
+    public Screen setSettleTime(long settle, TimeUnit unit) {
+    	this.settleNanos = unit.toNanos(settle);
+    	return this;
+    }
+    
+    public boolean isStrictKeyboardWait() {
+    	return strictKeyboardWait;
+    }
+    
+    // off by default, an AID key then returns after the wait even if the keyboard is still locked,
+    // isKeyboardLocked() or waitForKeyboardUnlock() tell the caller. On, the AID key throws TimeoutException
+    public Screen setStrictKeyboardWait(boolean strict) {
+    	this.strictKeyboardWait = strict;
+    	return this;
+    }
+    
+    public boolean isKeyboardLocked() {
+    	return buffer.isKeyboardLocked();
+    }
+    
+    // true once the cursor sits in the field that contains row/col
+    public Screen waitForCursorIn(int row, int col, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	int position = (row * TelnetConstants.SCREEN_WIDTH) + col;
+    	return waitUntil(b -> {
+    		int fieldStart = b.findFieldStart(position);
+    		return fieldStart >= 0 && b.findFieldStart(b.getCursorPosition()) == fieldStart;
+    	}, wait, unit);
+    }
+    
+    public Screen waitForCursorAt(int row, int col, long wait, TimeUnit unit) throws InterruptedException, TimeoutException {
+    	int position = (row * TelnetConstants.SCREEN_WIDTH) + col;
+    	return waitUntil(b -> b.getCursorPosition() == position, wait, unit);
+    }
+    
     public Screen sleep(long millis) {
 		try {
 			Thread.sleep(millis);
@@ -314,6 +431,7 @@ public class Screen {
         }
         
         boolean gotLock = false;
+        Tn3270Events.Aid event = new Tn3270Events.Aid();
         try {
       	  	gotLock = buffer.acquireLock();
         
@@ -324,41 +442,28 @@ public class Screen {
       	  	
       	  	buffer.setAidKey(aid & 0xFF);
 
-			outputStream.write(aid);
-
-	        // Send cursor position (2 bytes)
-	        int cursorPos = buffer.getCursorPosition();
-
-			outputStream.write(Tn3270Conversions.getPositionAddress(cursorPos));
-	        
-	        if(debug) {
-	        	System.out.println("--> " + (Tn3270Conversions.getPositionAddress(cursorPos)[0] & 0xFF) + " high");
-	        	System.out.println("--> " + (Tn3270Conversions.getPositionAddress(cursorPos)[1] & 0xFF) + " low");
-	        }
-	        
-	        // Send modified fields
-	        if(buffer.hasFields()) {
-	        	sendModifiedFields();
-	        } else {
-	        	sendModifiedValues();
-	        }
-	        
-	        // Send IAC EOR to end transmission
-	        if(debug) {
-				System.out.println("--> " + (TelnetConstants.IAC & 0xFF) + " IAC");
-			}
-
-			outputStream.write(TelnetConstants.IAC);
+      	  	// the whole inbound record is encoded first and goes out in a single write
+      	  	outbound.reset();
+      	  	encodeInbound(aid, outbound);
 	        
-	        if(debug) {
-				System.out.println("--> " + (TelnetConstants.EOR & 0xFF) + " EOR");
-			}
-
-			outputStream.write(TelnetConstants.EOR);
+			event.begin();
+			outputStream.write(outbound.array(), 0, outbound.length());
 			outputStream.flush();
+			buffer.markAidSent();
+			buffer.getMetrics().recordSent(outbound.length());
 	        
 
-			buffer.awaitEor();
+			boolean unlocked = buffer.awaitEor(UNIT.toNanos(WAIT), settleNanos, TimeUnit.NANOSECONDS);
+			
+			event.end();
+			if(event.shouldCommit()) {
+				event.aid = aid & 0xFF;
+				event.bytes = outbound.length();
+				event.commit();
+			}
+			if(!unlocked && strictKeyboardWait) {
+				throw keyboardTimeout(UNIT.toMillis(WAIT));
+			}
         } finally{
         	if(gotLock){
         		buffer.unlock();
@@ -366,10 +471,63 @@ public class Screen {
         }
     }
     
-    private void sendModifiedValues() throws IOException {
+    // appends the inbound record for the AID key (cursor address, modified data, IAC EOR), call while holding the buffer lock
+    public RecordBuffer encodeInbound(byte aid, RecordBuffer out) {
+        Tn3270eSession tn3270e = buffer.getTn3270e();
+        if (tn3270e != null && tn3270e.isSscpMode()) {
+        	// the SSCP only reads the typed text, no AID, cursor or addresses
+        	tn3270e.appendHeader(TelnetConstants.E_DT_SSCP_LU_DATA, out);
+        	for (int pos = 0; pos < buffer.getBufferSize(); pos++) {
+        		if (buffer.isEbcdicModified(pos)) {
+        			out.appendEscaped(buffer.getEbcdicByte(pos));
+        		}
+        	}
+        	out.append(TelnetConstants.IAC);
+        	out.append(TelnetConstants.EOR);
+        	return out;
+        }
+        if (tn3270e != null) {
+        	tn3270e.appendHeader(TelnetConstants.E_DT_3270_DATA, out);
+        }
+
+        out.appendEscaped(aid);
+
+        // Send cursor position (2 bytes)
+        int cursorPos = buffer.getCursorPosition();
+        Tn3270Conversions.encodeAddress(cursorPos, address, 0);
+
+        out.appendEscaped(address, 0, 2);
+        
+        if(debug) {
+        	System.out.println("--> " + (address[0] & 0xFF) + " high");
+        	System.out.println("--> " + (address[1] & 0xFF) + " low");
+        }
+        
+        // Send modified fields
+        if(buffer.hasFields()) {
+        	sendModifiedFields(out);
+        } else {
+        	sendModifiedValues(out);
+        }
+        
+        // Send IAC EOR to end transmission
+        if(debug) {
+			System.out.println("--> " + (TelnetConstants.IAC & 0xFF) + " IAC");
+		}
+
+        out.append(TelnetConstants.IAC);
+        
+        if(debug) {
+			System.out.println("--> " + (TelnetConstants.EOR & 0xFF) + " EOR");
+		}
+
+        out.append(TelnetConstants.EOR);
+        
+        return out;
+    }
+    
+    private void sendModifiedValues(RecordBuffer out) {
     	boolean ord_sba = false;
-    	
-    	byte[] sba = new byte[3];
 
     	for(int pos=0;pos<buffer.getBufferSize();pos++){
     		if(buffer.isEbcdicModified(pos)) {
@@ -378,26 +536,25 @@ public class Screen {
 						System.out.println("--> " + (buffer.getEbcdicByte(pos) & 0xFF) + " '" + Tn3270Conversions.ebcdicToAscii(buffer.getEbcdicByte(pos)) + "'");
 					}
 
-    				outputStream.write(buffer.getEbcdicByte(pos));
+    				out.appendEscaped(buffer.getEbcdicByte(pos));
 				} else {
-					sba[0] = TelnetConstants.SBA;
-			    	sba[1] = Tn3270Conversions.getPositionAddress(pos)[0];
-			    	sba[2] = Tn3270Conversions.getPositionAddress(pos)[1];
+					Tn3270Conversions.encodeAddress(pos, address, 0);
 			    	ord_sba = true;
 			    	
 			    	if(debug) {
-			    		System.out.println("--> " + (sba[0] & 0xFF) + " SBA");
-			        	System.out.println("--> " + (sba[1] & 0xFF) + " high");
-			        	System.out.println("--> " + (sba[2] & 0xFF) + " low");
+			    		System.out.println("--> " + (TelnetConstants.SBA & 0xFF) + " SBA");
+			        	System.out.println("--> " + (address[0] & 0xFF) + " high");
+			        	System.out.println("--> " + (address[1] & 0xFF) + " low");
 			        }
 			    	
-					outputStream.write(sba);
+			    	out.append(TelnetConstants.SBA);
+			    	out.appendEscaped(address, 0, 2);
 					
 			    	if(debug) {
 						System.out.println("--> " + (buffer.getEbcdicByte(pos) & 0xFF) + " '" + Tn3270Conversions.ebcdicToAscii(buffer.getEbcdicByte(pos)) + "'");
 					}
 			    	
-    				outputStream.write(buffer.getEbcdicByte(pos));
+			    	out.appendEscaped(buffer.getEbcdicByte(pos));
 				}
     		} else {
     			ord_sba = false;
@@ -405,27 +562,21 @@ public class Screen {
     	}
     }
     
-    private void sendModifiedFields() throws IOException {
+    private void sendModifiedFields(RecordBuffer out) {
         // Find and send all modified fields
         for (int i = 0; i < buffer.getBufferSize(); i++) {
             if (buffer.isFieldStart(i)) {
                 if (buffer.getAttribute(i).isModified()) {
                     // This field is modified, send it
-                    sendField(i);
+                    sendField(i, out);
                 }
             }
         }
     }
     
-    private void sendField(int fieldStart) throws IOException {
+    private void sendField(int fieldStart, RecordBuffer out) {
         // Send field address
     	boolean sbaSent = false;
-    	byte[] sba = new byte[3];
-    	
-    	
-    	sba[0] = TelnetConstants.SBA;
-    	sba[1] = Tn3270Conversions.getPositionAddress(fieldStart + 1)[0];
-    	sba[2] = Tn3270Conversions.getPositionAddress(fieldStart + 1)[1];
         
         // Send field data until next field or end of buffer
         int pos = fieldStart + 1; // Skip field attribute
@@ -441,12 +592,14 @@ public class Screen {
         	// Send SBA only once per field but only if characters are being sent
         	if(!sbaSent) {
         		sbaSent = true;
-				outputStream.write(sba);
+        		Tn3270Conversions.encodeAddress(fieldStart + 1, address, 0);
+        		out.append(TelnetConstants.SBA);
+        		out.appendEscaped(address, 0, 2);
 				
         		if(debug) {
-	        		System.out.println("--> " + (sba[0] & 0xFF) + " SBA");
-	                System.out.println("--> " + (sba[1] & 0xFF) + " high");
-	                System.out.println("--> " + (sba[2] & 0xFF) + " low");
+	        		System.out.println("--> " + (TelnetConstants.SBA & 0xFF) + " SBA");
+	                System.out.println("--> " + (address[0] & 0xFF) + " high");
+	                System.out.println("--> " + (address[1] & 0xFF) + " low");
         		}
         	}
         	
@@ -457,7 +610,7 @@ public class Screen {
 					System.out.println("--> " + (buffer.getEbcdicByte(pos) & 0xFF) + " '" + Tn3270Conversions.ebcdicToAscii(buffer.getEbcdicByte(pos)) + "'");
 				}
 
-				outputStream.write(buffer.getEbcdicByte(pos));
+    			out.appendEscaped(buffer.getEbcdicByte(pos));
     		}
             pos++;
         }
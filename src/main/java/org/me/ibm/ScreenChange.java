@@ -0,0 +1,124 @@
+package org.me.ibm;
+
+import java.util.Arrays;
+
+// what changed on the screen since the previous notification, immutable so it can be handed to any thread
+public final class ScreenChange {
+	private static final int[] NO_FIELDS = new int[0];
+	
+	private final long sequence;
+	private final long dirtyRows;
+	private final int[] changedFields;
+	private final int previousCursorPosition;
+	private final int cursorPosition;
+	private final boolean fullScreen;
+	
+	ScreenChange(long sequence, long dirtyRows, int[] changedFields, int previousCursorPosition, int cursorPosition, boolean fullScreen) {
+		this.sequence = sequence;
+		this.dirtyRows = dirtyRows;
+		this.changedFields = (changedFields == null ? NO_FIELDS : changedFields);
+		this.previousCursorPosition = previousCursorPosition;
+		this.cursorPosition = cursorPosition;
+		this.fullScreen = fullScreen;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	// bit n set means row n changed
+	public long getDirtyRows() {
+		return dirtyRows;
+	}
+	
+	public boolean isRowDirty(int row) {
+		return row >= 0 && row < Long.SIZE && (dirtyRows & (1L << row)) != 0;
+	}
+	
+	public int getDirtyRowCount() {
+		return Long.bitCount(dirtyRows);
+	}
+	
+	// start positions of the fields whose content or attributes changed, in buffer order
+	public int[] getChangedFields() {
+		return changedFields.clone();
+	}
+	
+	public int getChangedFieldCount() {
+		return changedFields.length;
+	}
+	
+	public int getChangedField(int index) {
+		return changedFields[index];
+	}
+	
+	public boolean isFieldChanged(int fieldStart) {
+		return Arrays.binarySearch(changedFields, fieldStart) >= 0;
+	}
+	
+	public int getCursorPosition() {
+		return cursorPosition;
+	}
+	
+	public int getPreviousCursorPosition() {
+		return previousCursorPosition;
+	}
+	
+	public boolean isCursorMoved() {
+		return cursorPosition != previousCursorPosition;
+	}
+	
+	// the whole buffer was replaced (erase/write, clear, copy), every row and field counts as changed
+	public boolean isFullScreen() {
+		return fullScreen;
+	}
+	
+	public boolean isEmpty() {
+		return dirtyRows == 0 && changedFields.length == 0 && !isCursorMoved() && !fullScreen;
+	}
+	
+	// combines this change with a later one into a single change covering both
+	public ScreenChange merge(ScreenChange later) {
+		if (later == null) {
+			return this;
+		}
+		
+		int[] fields;
+		if (changedFields.length == 0) {
+			fields = later.changedFields;
+		} else if (later.changedFields.length == 0) {
+			fields = changedFields;
+		} else {
+			fields = new int[changedFields.length + later.changedFields.length];
+			int i = 0, j = 0, count = 0;
+			while (i < changedFields.length || j < later.changedFields.length) {
+				int next;
+				if (j >= later.changedFields.length || (i < changedFields.length && changedFields[i] <= later.changedFields[j])) {
+					next = changedFields[i++];
+				} else {
+					next = later.changedFields[j++];
+				}
+				if (count == 0 || fields[count - 1] != next) {
+					fields[count++] = next;
+				}
+			}
+			fields = Arrays.copyOf(fields, count);
+		}
+		
+		return new ScreenChange(
+			later.sequence,
+			dirtyRows | later.dirtyRows,
+			fields,
+			previousCursorPosition,
+			later.cursorPosition,
+			fullScreen || later.fullScreen
+		);
+	}
+	
+	@Override
+	public String toString() {
+		return "ScreenChange [sequence=" + sequence + ", dirtyRows=" + Long.toBinaryString(dirtyRows) + ", changedFields="
+				+ Arrays.toString(changedFields) + ", cursor=" + previousCursorPosition + "->" + cursorPosition
+				+ ", fullScreen=" + fullScreen + "]";
+	}
+}
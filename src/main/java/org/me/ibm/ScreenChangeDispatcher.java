@@ -0,0 +1,305 @@
+package org.me.ibm;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+ * Runs screen listeners on an executor instead of the thread that processed the record.
+ * Every listener gets its own bounded queue and is called by at most one task at a time,
+ * so events arrive in order and a slow listener only delays itself. When a queue is full
+ * the new event is either dropped or merged into the newest queued one.
+ */
+public class ScreenChangeDispatcher implements AutoCloseable {
+	public enum OverflowPolicy {
+		DROP,
+		MERGE
+	}
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	private final Executor executor;
+	private final ExecutorService ownedExecutor;
+	private final int queueCapacity;
+	private final OverflowPolicy policy;
+	// keyed by listener and kind, an object that is both kinds of listener gets a queue for each
+	private final Map<ScreenUpdateListener, ListenerQueue> updateQueues = new ConcurrentHashMap<>();
+	private final Map<ScreenChangeListener, ListenerQueue> changeQueues = new ConcurrentHashMap<>();
+
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder merged = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder totalLagNanos = new LongAdder();
+	private final AtomicLong maxLagNanos = new AtomicLong();
+
+	public ScreenChangeDispatcher(Executor executor) {
+		this(executor, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.MERGE);
+	}
+
+	public ScreenChangeDispatcher(Executor executor, int queueCapacity, OverflowPolicy policy) {
+		this(executor, null, queueCapacity, policy);
+	}
+
+	// threads from the factory are created on demand and shut down with the dispatcher
+	public ScreenChangeDispatcher(ThreadFactory threadFactory, int queueCapacity, OverflowPolicy policy) {
+		this(null, Executors.newCachedThreadPool(threadFactory), queueCapacity, policy);
+	}
+
+	private ScreenChangeDispatcher(Executor executor, ExecutorService ownedExecutor, int queueCapacity, OverflowPolicy policy) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be positive.");
+		}
+		if (policy == null) {
+			throw new IllegalArgumentException("Overflow policy is required.");
+		}
+		this.ownedExecutor = ownedExecutor;
+		this.executor = (ownedExecutor != null ? ownedExecutor : executor);
+		this.queueCapacity = queueCapacity;
+		this.policy = policy;
+	}
+
+	// one virtual thread per busy listener where the runtime has them, a daemon platform thread otherwise
+	public static ScreenChangeDispatcher withVirtualThreads() {
+		ThreadFactory threadFactory;
+		if (Tn3270Threads.isVirtualThreadSupported()) {
+			threadFactory = Tn3270Threads.virtualThreadFactory();
+		} else {
+			threadFactory = runnable -> {
+				Thread thread = new Thread(runnable, "TN3270-Listener");
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+		return new ScreenChangeDispatcher(threadFactory, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.MERGE);
+	}
+
+	// Buffer adds its listeners here, a listener added twice (or by two buffers) needs removing twice
+	public void add(ScreenChangeListener listener) {
+		add(changeQueues, listener, listener::onScreenChange);
+	}
+
+	public void add(ScreenUpdateListener listener) {
+		add(updateQueues, listener, ignored -> listener.onScreenUpdate());
+	}
+
+	// events for a listener that isn't added, or was removed while the event was on its way, are dropped
+	public void submit(ScreenChangeListener listener, ScreenChange change) {
+		ListenerQueue queue = changeQueues.get(listener);
+		if (queue != null) {
+			queue.offer(change);
+		}
+	}
+
+	public void submit(ScreenUpdateListener listener, ScreenChange change) {
+		ListenerQueue queue = updateQueues.get(listener);
+		if (queue != null) {
+			queue.offer(change);
+		}
+	}
+
+	// pending events of a removed listener are discarded
+	public void remove(ScreenChangeListener listener) {
+		remove(changeQueues, listener);
+	}
+
+	public void remove(ScreenUpdateListener listener) {
+		remove(updateQueues, listener);
+	}
+
+	private <L> void add(Map<L, ListenerQueue> queues, L listener, Consumer<ScreenChange> target) {
+		queues.compute(listener, (key, queue) -> {
+			ListenerQueue current = (queue != null ? queue : new ListenerQueue(target));
+			current.registrations++;
+			return current;
+		});
+	}
+
+	private <L> void remove(Map<L, ListenerQueue> queues, L listener) {
+		queues.computeIfPresent(listener, (key, queue) -> {
+			if (--queue.registrations > 0) {
+				return queue;
+			}
+			queue.discard();
+			return null;
+		});
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public long getMergedCount() {
+		return merged.sum();
+	}
+
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	// time from submit until the listener was called, merged events count from their newest part
+	public long getMaxLagNanos() {
+		return maxLagNanos.get();
+	}
+
+	public long getAverageLagNanos() {
+		long count = delivered.sum() + failed.sum();
+		return (count == 0 ? 0 : totalLagNanos.sum() / count);
+	}
+
+	public int getPendingCount() {
+		int pending = 0;
+		for (ListenerQueue queue : updateQueues.values()) {
+			pending += queue.size();
+		}
+		for (ListenerQueue queue : changeQueues.values()) {
+			pending += queue.size();
+		}
+		return pending;
+	}
+
+	@Override
+	public void close() {
+		for (ListenerQueue queue : updateQueues.values()) {
+			queue.discard();
+		}
+		for (ListenerQueue queue : changeQueues.values()) {
+			queue.discard();
+		}
+		updateQueues.clear();
+		changeQueues.clear();
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+	private class ListenerQueue implements Runnable {
+		private final Consumer<ScreenChange> target;
+		private final ArrayDeque<ScreenChange> changes = new ArrayDeque<>();
+		private final ArrayDeque<Long> submitTimes = new ArrayDeque<>();
+		private boolean scheduled = false;
+		private boolean removed = false;
+		// only changed inside the map's compute, which runs one at a time per listener
+		private int registrations;
+
+		private ListenerQueue(Consumer<ScreenChange> target) {
+			this.target = target;
+		}
+
+		private void offer(ScreenChange change) {
+			long now = System.nanoTime();
+
+			synchronized (this) {
+				// the listener was removed after the submitter looked its queue up
+				if (removed) {
+					return;
+				}
+				submitted.increment();
+
+				if (changes.size() >= queueCapacity) {
+					if (policy == OverflowPolicy.DROP) {
+						dropped.increment();
+						return;
+					}
+					// fold into the newest queued event, the listener still sees everything that changed
+					changes.addLast(changes.pollLast().merge(change));
+					submitTimes.pollLast();
+					submitTimes.addLast(now);
+					merged.increment();
+				} else {
+					changes.addLast(change);
+					submitTimes.addLast(now);
+				}
+
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+
+			execute();
+		}
+
+		// call with scheduled set
+		private void execute() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				synchronized (this) {
+					dropped.add(changes.size());
+					changes.clear();
+					submitTimes.clear();
+					scheduled = false;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				ScreenChange change;
+				long submittedAt;
+				synchronized (this) {
+					change = changes.pollFirst();
+					if (change == null) {
+						scheduled = false;
+						return;
+					}
+					submittedAt = submitTimes.pollFirst();
+				}
+
+				long lag = System.nanoTime() - submittedAt;
+				totalLagNanos.add(lag);
+				maxLagNanos.accumulateAndGet(lag, Math::max);
+
+				try {
+					target.accept(change);
+					delivered.increment();
+				} catch (RuntimeException e) {
+					// one failing listener must not stop delivery to itself or anyone else
+					failed.increment();
+				} catch (Error e) {
+					// the error goes on to the executor, a new task takes over whatever is still queued
+					failed.increment();
+					execute();
+					throw e;
+				}
+			}
+		}
+
+		private synchronized int size() {
+			return changes.size();
+		}
+
+		private synchronized void discard() {
+			removed = true;
+			changes.clear();
+			submitTimes.clear();
+		}
+	}
+}
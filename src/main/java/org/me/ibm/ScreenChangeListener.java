@@ -0,0 +1,5 @@
+package org.me.ibm;
+
+public interface ScreenChangeListener {
+    void onScreenChange(ScreenChange change);
+}
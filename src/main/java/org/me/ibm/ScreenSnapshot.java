@@ -0,0 +1,240 @@
+package org.me.ibm;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+// copy of the screen as it was after a record, never changes so any thread can read it without the buffer lock
+public final class ScreenSnapshot {
+	private final long version;
+	private final char[] ascii;
+	private final byte[] attributes;
+	private final boolean[] fieldModified;
+	private final byte[] colors;
+	private final byte[] highlights;
+	private final int[] fieldTable;
+	private final int cursorPosition;
+	// racy but benign cache, at worst two threads build the same string
+	private String lines;
+
+	ScreenSnapshot(long version, char[] ascii, byte[] attributes, boolean[] fieldModified, byte[] colors, byte[] highlights, int[] fieldTable, int cursorPosition) {
+		this.version = version;
+		this.ascii = ascii;
+		this.attributes = attributes;
+		this.fieldModified = fieldModified;
+		this.colors = colors;
+		this.highlights = highlights;
+		this.fieldTable = fieldTable;
+		this.cursorPosition = cursorPosition;
+	}
+
+	// increases with every published snapshot of the same buffer
+	public long getVersion() {
+		return version;
+	}
+
+	public int getWidth() {
+		return TelnetConstants.SCREEN_WIDTH;
+	}
+
+	public int getHeight() {
+		return TelnetConstants.SCREEN_HEIGHT;
+	}
+
+	public int getCursorPosition() {
+		return cursorPosition;
+	}
+
+	public char getCharacter(int position) {
+		return (isValidPosition(position) ? ascii[position] : ' ');
+	}
+
+	public String getString() {
+		return new String(ascii);
+	}
+
+	// built once per snapshot, repeated calls with the usual newline separator return the same string
+	public String getString(String separator) {
+		if ("\n".equals(separator)) {
+			String text = lines;
+			if (text == null) {
+				text = buildString(separator);
+				lines = text;
+			}
+			return text;
+		}
+		return buildString(separator);
+	}
+
+	private String buildString(String separator) {
+		StringBuilder sb = new StringBuilder(TelnetConstants.BUFFER_SIZE + (TelnetConstants.SCREEN_HEIGHT * separator.length()));
+		for (int row = 0; row < TelnetConstants.SCREEN_HEIGHT; row++) {
+			if (row > 0) {
+				sb.append(separator);
+			}
+			sb.append(ascii, row * TelnetConstants.SCREEN_WIDTH, TelnetConstants.SCREEN_WIDTH);
+		}
+		return sb.toString();
+	}
+
+	public String getString(int row) {
+		if (row < 0 || row >= TelnetConstants.SCREEN_HEIGHT) {
+			return "";
+		}
+		return new String(ascii, row * TelnetConstants.SCREEN_WIDTH, TelnetConstants.SCREEN_WIDTH);
+	}
+
+	// positions past the end of the buffer read as blanks
+	public String getString(int position, int length) {
+		if (!isValidPosition(position) || length <= 0) {
+			return "";
+		}
+
+		int available = Math.min(length, TelnetConstants.BUFFER_SIZE - position);
+		if (available == length) {
+			return new String(ascii, position, length);
+		}
+
+		char[] text = new char[length];
+		System.arraycopy(ascii, position, text, 0, available);
+		Arrays.fill(text, available, length, ' ');
+		return new String(text);
+	}
+
+	// views share the snapshot's characters, nothing is copied
+	public ScreenText getText(int position, int length) {
+		if (!isValidPosition(position) || length <= 0) {
+			return ScreenText.EMPTY;
+		}
+		return new ScreenText(ascii, position, Math.min(length, TelnetConstants.BUFFER_SIZE - position));
+	}
+
+	public ScreenText getRowText(int row) {
+		if (row < 0 || row >= TelnetConstants.SCREEN_HEIGHT) {
+			return ScreenText.EMPTY;
+		}
+		return new ScreenText(ascii, row * TelnetConstants.SCREEN_WIDTH, TelnetConstants.SCREEN_WIDTH);
+	}
+
+	// the characters after the field's attribute position up to the next field, wrapping past the end of the screen
+	public ScreenText getFieldText(int fieldIndex) {
+		int length = getFieldLength(fieldIndex);
+		if (length <= 0) {
+			return ScreenText.EMPTY;
+		}
+		return new ScreenText(ascii, (fieldTable[fieldIndex] + 1) % TelnetConstants.BUFFER_SIZE, length);
+	}
+
+	public int getFieldLength(int fieldIndex) {
+		if (fieldIndex < 0 || fieldIndex >= fieldTable.length) {
+			return -1;
+		}
+		int end = (fieldIndex + 1 < fieldTable.length ? fieldTable[fieldIndex + 1] : fieldTable[0] + TelnetConstants.BUFFER_SIZE);
+		return end - fieldTable[fieldIndex] - 1;
+	}
+
+	// copies as much of the field as fits, returns the number of characters copied or -1 for an unknown field
+	public int copyFieldText(int fieldIndex, char[] dst) {
+		if (getFieldLength(fieldIndex) < 0) {
+			return -1;
+		}
+		return getFieldText(fieldIndex).copyTo(dst, 0);
+	}
+
+	// positions past the end of the buffer are filled with blanks, like getString(position, length)
+	public int copyText(int position, int length, char[] dst, int dstOffset) {
+		if (!isValidPosition(position) || length <= 0) {
+			return 0;
+		}
+		int count = Math.min(length, dst.length - dstOffset);
+		int available = Math.min(count, TelnetConstants.BUFFER_SIZE - position);
+		System.arraycopy(ascii, position, dst, dstOffset, available);
+		Arrays.fill(dst, dstOffset + available, dstOffset + count, ' ');
+		return count;
+	}
+
+	public int copyText(int position, int length, CharBuffer dst) {
+		if (!isValidPosition(position) || length <= 0) {
+			return 0;
+		}
+		int count = Math.min(length, dst.remaining());
+		int available = Math.min(count, TelnetConstants.BUFFER_SIZE - position);
+		dst.put(ascii, position, available);
+		for (int i = available; i < count; i++) {
+			dst.put(' ');
+		}
+		return count;
+	}
+
+	public void appendTo(Appendable out, String separator) throws IOException {
+		for (int row = 0; row < TelnetConstants.SCREEN_HEIGHT; row++) {
+			if (row > 0) {
+				out.append(separator);
+			}
+			out.append(getRowText(row));
+		}
+	}
+
+	public boolean matches(int position, CharSequence text) {
+		if (!isValidPosition(position) || position + text.length() > TelnetConstants.BUFFER_SIZE) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (ascii[position + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getFieldCount() {
+		return fieldTable.length;
+	}
+
+	public int getFieldStart(int fieldIndex) {
+		return (fieldIndex >= 0 && fieldIndex < fieldTable.length ? fieldTable[fieldIndex] : -1);
+	}
+
+	public int findFieldStart(int position) {
+		if (fieldTable.length == 0) {
+			return -1;
+		}
+
+		int index = Buffer.floorFieldIndex(fieldTable, fieldTable.length, position);
+
+		// the last field wraps around to the top of the screen
+		return (index >= 0 ? fieldTable[index] : fieldTable[fieldTable.length - 1]);
+	}
+
+	public boolean isFieldStart(int position) {
+		return Arrays.binarySearch(fieldTable, position) >= 0;
+	}
+
+	public FieldAttribute getAttribute(int position) {
+		if (!isValidPosition(position)) {
+			return FieldAttribute.of((byte) 0x00);
+		}
+		return FieldAttribute.of((byte) (fieldModified[position] ? attributes[position] | TelnetConstants.ATTR_MDT : attributes[position]));
+	}
+
+	public FieldAttribute getAttributeAt(int position) {
+		return getAttribute(findFieldStart(position));
+	}
+
+	public boolean isProtected(int position) {
+		int fieldStart = findFieldStart(position);
+		return fieldStart >= 0 && (attributes[fieldStart] & TelnetConstants.ATTR_PROTECTED) != 0;
+	}
+
+	public FieldColor getFieldColor(int position) {
+		return (isValidPosition(position) ? FieldColor.of(colors[position]) : FieldColor.DEFAULT);
+	}
+
+	public FieldHighlighting getFieldHighlighting(int position) {
+		return (isValidPosition(position) ? FieldHighlighting.of(highlights[position]) : FieldHighlighting.NORMAL);
+	}
+
+	private static boolean isValidPosition(int position) {
+		return position >= 0 && position < TelnetConstants.BUFFER_SIZE;
+	}
+}
@@ -0,0 +1,99 @@
+package org.me.ibm;
+
+// read-only view over characters of a snapshot, nothing is copied until toString() is called
+public final class ScreenText implements CharSequence {
+	static final ScreenText EMPTY = new ScreenText(new char[0], 0, 0);
+
+	private final char[] data;
+	private final int offset;
+	private final int length;
+
+	// offsets past the end of data wrap around to the start, fields can span the end of the screen
+	ScreenText(char[] data, int offset, int length) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		int position = offset + index;
+		return data[position < data.length ? position : position - data.length];
+	}
+
+	@Override
+	public ScreenText subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+		int position = offset + start;
+		return new ScreenText(data, position < data.length ? position : position - data.length, end - start);
+	}
+
+	public int copyTo(char[] dst, int dstOffset) {
+		int count = Math.min(length, dst.length - dstOffset);
+		int first = Math.min(count, data.length - offset);
+		System.arraycopy(data, offset, dst, dstOffset, first);
+		if (first < count) {
+			System.arraycopy(data, 0, dst, dstOffset + first, count - first);
+		}
+		return count;
+	}
+
+	public void appendTo(StringBuilder sb) {
+		int first = Math.min(length, data.length - offset);
+		sb.append(data, offset, first);
+		if (first < length) {
+			sb.append(data, 0, length - first);
+		}
+	}
+
+	public boolean isBlank() {
+		for (int i = 0; i < length; i++) {
+			char ch = charAt(i);
+			if (ch != ' ' && ch != '\0') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean contentEquals(CharSequence text) {
+		if (text.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (charAt(i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// trailing blanks are left out, handy for input fields padded to their full width
+	public ScreenText trimEnd() {
+		int end = length;
+		while (end > 0 && (charAt(end - 1) == ' ' || charAt(end - 1) == '\0')) {
+			end--;
+		}
+		return (end == length ? this : subSequence(0, end));
+	}
+
+	@Override
+	public String toString() {
+		if (offset + length <= data.length) {
+			return new String(data, offset, length);
+		}
+		char[] text = new char[length];
+		copyTo(text, 0);
+		return new String(text);
+	}
+}
@@ -0,0 +1,286 @@
+package org.me.ibm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and latency histograms for one session, filled in by the parser, the buffer and the
+ * screen as they work. Everything is a LongAdder or a LatencyHistogram so recording never takes
+ * a lock. The counters are always there, the histograms only once enableHistograms() was called
+ * (Tn3270Metrics does on register), until then their getters return null and timings are dropped.
+ * Registry totals are summed from the sessions when read, recording only touches this session.
+ */
+public final class SessionMetrics implements SessionMetricsMXBean {
+	// orders are all below 0x40, counted by their order byte
+	private static final int ORDER_TABLE_SIZE = 64;
+	private static final String[] ORDER_NAMES = new String[ORDER_TABLE_SIZE];
+	static {
+		ORDER_NAMES[TelnetConstants.SF] = "SF";
+		ORDER_NAMES[TelnetConstants.SFE] = "SFE";
+		ORDER_NAMES[TelnetConstants.SBA] = "SBA";
+		ORDER_NAMES[TelnetConstants.SA] = "SA";
+		ORDER_NAMES[TelnetConstants.MF] = "MF";
+		ORDER_NAMES[TelnetConstants.IC] = "IC";
+		ORDER_NAMES[TelnetConstants.PT] = "PT";
+		ORDER_NAMES[TelnetConstants.RA] = "RA";
+		ORDER_NAMES[TelnetConstants.EUA] = "EUA";
+		ORDER_NAMES[TelnetConstants.GE] = "GE";
+	}
+
+	private final LongAdder recordsReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder recordsSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder eorSignaled = new LongAdder();
+	private final LongAdder eorSuppressed = new LongAdder();
+	private final LongAdder lockTryAcquired = new LongAdder();
+	private final LongAdder lockTryMissed = new LongAdder();
+	private final LongAdder[] orders = new LongAdder[ORDER_TABLE_SIZE];
+
+	private volatile LatencyHistogram parseNanos;
+	private volatile LatencyHistogram lockWaitNanos;
+	private volatile LatencyHistogram aidLatencyNanos;
+	private volatile LatencyHistogram dispatchNanos;
+
+	public SessionMetrics() {
+		for (int i = 0; i < ORDER_TABLE_SIZE; i++) {
+			if (ORDER_NAMES[i] != null) {
+				orders[i] = new LongAdder();
+			}
+		}
+	}
+
+	public synchronized void enableHistograms() {
+		if (parseNanos != null) {
+			return;
+		}
+		lockWaitNanos = new LatencyHistogram();
+		aidLatencyNanos = new LatencyHistogram();
+		dispatchNanos = new LatencyHistogram();
+		// written last, it is what isHistogramsEnabled() looks at
+		parseNanos = new LatencyHistogram();
+	}
+
+	public boolean isHistogramsEnabled() {
+		return parseNanos != null;
+	}
+
+	// bytes off the wire before telnet framing is removed
+	public void bytesReceived(int count) {
+		bytesReceived.add(count);
+	}
+
+	// one complete host record, the time covers applying it, collecting changes and publishing the snapshot
+	public void recordParsed(long nanos) {
+		recordsReceived.increment();
+		record(parseNanos, nanos);
+	}
+
+	// counts indexed by order byte, as collected by the processor over one record
+	public void ordersProcessed(int[] counts) {
+		for (int i = 0; i < ORDER_TABLE_SIZE; i++) {
+			int count = counts[i];
+			if (count != 0 && orders[i] != null) {
+				orders[i].add(count);
+			}
+		}
+	}
+
+	// a measured wait for the buffer lock
+	public void lockAcquired(long waitNanos) {
+		record(lockWaitNanos, waitNanos);
+	}
+
+	// a tryLock that never waits, counted apart so the wait histogram only holds real waits
+	public void lockTried(boolean acquired) {
+		(acquired ? lockTryAcquired : lockTryMissed).increment();
+	}
+
+	public void eorSignaled(boolean signaled) {
+		(signaled ? eorSignaled : eorSuppressed).increment();
+	}
+
+	// from writing the AID until the host's answer woke the waiting sender
+	public void aidAnswered(long nanos) {
+		record(aidLatencyNanos, nanos);
+	}
+
+	// calling (or handing to the dispatcher) every listener for one record
+	public void listenersNotified(long nanos) {
+		record(dispatchNanos, nanos);
+	}
+
+	public void recordSent(int bytes) {
+		recordsSent.increment();
+		bytesSent.add(bytes);
+	}
+
+	private static void record(LatencyHistogram histogram, long nanos) {
+		if (histogram != null) {
+			histogram.record(nanos);
+		}
+	}
+
+	// adds the other session's values, histograms only when both have them
+	void add(SessionMetrics other) {
+		recordsReceived.add(other.recordsReceived.sum());
+		bytesReceived.add(other.bytesReceived.sum());
+		recordsSent.add(other.recordsSent.sum());
+		bytesSent.add(other.bytesSent.sum());
+		eorSignaled.add(other.eorSignaled.sum());
+		eorSuppressed.add(other.eorSuppressed.sum());
+		lockTryAcquired.add(other.lockTryAcquired.sum());
+		lockTryMissed.add(other.lockTryMissed.sum());
+		for (int i = 0; i < ORDER_TABLE_SIZE; i++) {
+			if (orders[i] != null) {
+				orders[i].add(other.orders[i].sum());
+			}
+		}
+		add(parseNanos, other.parseNanos);
+		add(lockWaitNanos, other.lockWaitNanos);
+		add(aidLatencyNanos, other.aidLatencyNanos);
+		add(dispatchNanos, other.dispatchNanos);
+	}
+
+	private static void add(LatencyHistogram to, LatencyHistogram from) {
+		if (to != null && from != null) {
+			to.add(from);
+		}
+	}
+
+	@Override
+	public long getRecordsReceived() {
+		return recordsReceived.sum();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	@Override
+	public long getRecordsSent() {
+		return recordsSent.sum();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	@Override
+	public long getEorSignaledCount() {
+		return eorSignaled.sum();
+	}
+
+	@Override
+	public long getEorSuppressedCount() {
+		return eorSuppressed.sum();
+	}
+
+	@Override
+	public long getLockTryAcquiredCount() {
+		return lockTryAcquired.sum();
+	}
+
+	@Override
+	public long getLockTryMissedCount() {
+		return lockTryMissed.sum();
+	}
+
+	public long getOrderCount(byte order) {
+		int index = order & 0xFF;
+		return (index < ORDER_TABLE_SIZE && orders[index] != null ? orders[index].sum() : 0);
+	}
+
+	@Override
+	public Map<String, Long> getOrderCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < ORDER_TABLE_SIZE; i++) {
+			if (orders[i] != null) {
+				counts.put(ORDER_NAMES[i], orders[i].sum());
+			}
+		}
+		return counts;
+	}
+
+	// the histogram getters return null until enableHistograms()
+	public LatencyHistogram getParseTime() {
+		return parseNanos;
+	}
+
+	public LatencyHistogram getLockWaitTime() {
+		return lockWaitNanos;
+	}
+
+	public LatencyHistogram getAidLatency() {
+		return aidLatencyNanos;
+	}
+
+	public LatencyHistogram getListenerDispatchTime() {
+		return dispatchNanos;
+	}
+
+	// JMX gets the histograms flattened to the usual percentiles, in microseconds
+
+	@Override
+	public Map<String, Double> getParseTimeMicros() {
+		return summary(parseNanos);
+	}
+
+	@Override
+	public Map<String, Double> getLockWaitTimeMicros() {
+		return summary(lockWaitNanos);
+	}
+
+	@Override
+	public Map<String, Double> getAidLatencyMicros() {
+		return summary(aidLatencyNanos);
+	}
+
+	@Override
+	public Map<String, Double> getListenerDispatchTimeMicros() {
+		return summary(dispatchNanos);
+	}
+
+	private static Map<String, Double> summary(LatencyHistogram histogram) {
+		Map<String, Double> summary = new LinkedHashMap<>();
+		if (histogram == null) {
+			return summary;
+		}
+		summary.put("count", (double) histogram.getCount());
+		summary.put("min", histogram.getMin() / 1e3);
+		summary.put("mean", histogram.getMean() / 1e3);
+		summary.put("p50", histogram.getValueAtPercentile(50) / 1e3);
+		summary.put("p90", histogram.getValueAtPercentile(90) / 1e3);
+		summary.put("p99", histogram.getValueAtPercentile(99) / 1e3);
+		summary.put("p99.9", histogram.getValueAtPercentile(99.9) / 1e3);
+		summary.put("max", histogram.getMax() / 1e3);
+		return summary;
+	}
+
+	// not atomic against concurrent recording
+	@Override
+	public void reset() {
+		recordsReceived.reset();
+		bytesReceived.reset();
+		recordsSent.reset();
+		bytesSent.reset();
+		eorSignaled.reset();
+		eorSuppressed.reset();
+		lockTryAcquired.reset();
+		lockTryMissed.reset();
+		for (LongAdder order : orders) {
+			if (order != null) {
+				order.reset();
+			}
+		}
+		if (isHistogramsEnabled()) {
+			parseNanos.reset();
+			lockWaitNanos.reset();
+			aidLatencyNanos.reset();
+			dispatchNanos.reset();
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.me.ibm;
+
+import java.util.Map;
+
+// what jconsole and friends see of a session, or of the registry total
+public interface SessionMetricsMXBean {
+	long getRecordsReceived();
+	long getBytesReceived();
+	long getRecordsSent();
+	long getBytesSent();
+	long getEorSignaledCount();
+	long getEorSuppressedCount();
+	long getLockTryAcquiredCount();
+	long getLockTryMissedCount();
+	Map<String, Long> getOrderCounts();
+	Map<String, Double> getParseTimeMicros();
+	Map<String, Double> getLockWaitTimeMicros();
+	Map<String, Double> getAidLatencyMicros();
+	Map<String, Double> getListenerDispatchTimeMicros();
+	void reset();
+}
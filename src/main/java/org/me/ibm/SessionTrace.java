@@ -0,0 +1,288 @@
+package org.me.ibm;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Append only trace of what went over a session's socket, written by tapping its streams.
+ * Every entry is a direction, the nanoseconds since the trace was opened and the raw bytes:
+ *
+ *   header  "TN3270TR" int version, long start (epoch millis)
+ *   entry   byte direction (0 in, 1 out), long nanos, int length, bytes
+ *
+ * Inbound entries are whatever one read returned, outbound ones whatever was written between
+ * two flushes, so an AID record is one entry. Entries are collected in a buffer and go to the
+ * file channel when it fills up and on flush/close. TraceReplay plays a trace back.
+ */
+public final class SessionTrace implements AutoCloseable {
+	public static final byte INBOUND = 0;
+	public static final byte OUTBOUND = 1;
+
+	private static final byte[] MAGIC = "TN3270TR".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = MAGIC.length + 4 + 8;
+	private static final int ENTRY_HEADER_SIZE = 1 + 8 + 4;
+	// a few full screens, traces are opened per session so this stays small and on the heap
+	private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+	private final FileChannel channel;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+	private final long start;
+	private boolean closed;
+
+	private SessionTrace(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.start = System.nanoTime();
+
+		writeBuffer.put(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+	}
+
+	// replaces whatever is in the file
+	public static SessionTrace create(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		return new SessionTrace(channel);
+	}
+
+	public void inbound(byte[] data, int offset, int length) throws IOException {
+		append(INBOUND, data, offset, length);
+	}
+
+	public void outbound(byte[] data, int offset, int length) throws IOException {
+		append(OUTBOUND, data, offset, length);
+	}
+
+	private synchronized void append(byte direction, byte[] data, int offset, int length) throws IOException {
+		if (closed || length <= 0) {
+			return;
+		}
+
+		long nanos = System.nanoTime() - start;
+		if (writeBuffer.remaining() < ENTRY_HEADER_SIZE + length) {
+			drain();
+		}
+		writeBuffer.put(direction).putLong(nanos).putInt(length);
+
+		if (writeBuffer.remaining() >= length) {
+			writeBuffer.put(data, offset, length);
+		} else {
+			// bigger than the buffer, goes straight to the channel
+			drain();
+			ByteBuffer large = ByteBuffer.wrap(data, offset, length);
+			while (large.hasRemaining()) {
+				channel.write(large);
+			}
+		}
+	}
+
+	private void drain() throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			drain();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			drain();
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	// bytes read from the stream are traced as they are handed out
+	public InputStream tap(InputStream in) {
+		return new FilterInputStream(in) {
+			private final byte[] one = new byte[1];
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					one[0] = (byte) b;
+					inbound(one, 0, 1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int count = super.read(b, off, len);
+				if (count > 0) {
+					inbound(b, off, count);
+				}
+				return count;
+			}
+		};
+	}
+
+	// writes pass straight through, what was written since the last flush becomes one entry
+	public OutputStream tap(OutputStream os) {
+		return new FilterOutputStream(os) {
+			private final RecordBuffer pending = new RecordBuffer(512);
+
+			@Override
+			public synchronized void write(int b) throws IOException {
+				out.write(b);
+				pending.append((byte) b);
+			}
+
+			@Override
+			public synchronized void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				pending.append(b, off, len);
+			}
+
+			@Override
+			public synchronized void flush() throws IOException {
+				out.flush();
+				outbound(pending.array(), 0, pending.length());
+				pending.reset();
+			}
+		};
+	}
+
+	public static boolean isTrace(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			while (magic.hasRemaining() && channel.read(magic) != -1) {
+				// keep reading until the magic is in or the file ends
+			}
+			return !magic.hasRemaining() && magic.flip().equals(ByteBuffer.wrap(MAGIC));
+		}
+	}
+
+	public static Reader open(Path file) throws IOException {
+		return new Reader(FileChannel.open(file, StandardOpenOption.READ));
+	}
+
+	// walks the entries in file order, getData() is only valid until the next call to next()
+	public static final class Reader implements AutoCloseable {
+		private final FileChannel channel;
+		private ByteBuffer in = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+		private final long startMillis;
+		private byte direction;
+		private long nanos;
+		private byte[] data = new byte[1024];
+		private int length;
+
+		private Reader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			in.limit(0);
+
+			try {
+				if (!fill(HEADER_SIZE)) {
+					throw new EOFException("Trace header is incomplete.");
+				}
+				byte[] magic = new byte[MAGIC.length];
+				in.get(magic);
+				if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC))) {
+					throw new IOException("Not a session trace.");
+				}
+				int version = in.getInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported trace version " + version + ".");
+				}
+				startMillis = in.getLong();
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		// false at the end of the trace, a half written last entry counts as the end
+		public boolean next() throws IOException {
+			if (!fill(ENTRY_HEADER_SIZE)) {
+				return false;
+			}
+			byte entryDirection = in.get();
+			long entryNanos = in.getLong();
+			int entryLength = in.getInt();
+			if (entryLength < 0) {
+				throw new IOException("Corrupt trace entry length " + entryLength + ".");
+			}
+			if (!fill(entryLength)) {
+				return false;
+			}
+
+			if (data.length < entryLength) {
+				data = new byte[Math.max(entryLength, data.length * 2)];
+			}
+			in.get(data, 0, entryLength);
+			direction = entryDirection;
+			nanos = entryNanos;
+			length = entryLength;
+			return true;
+		}
+
+		private boolean fill(int needed) throws IOException {
+			if (in.remaining() >= needed) {
+				return true;
+			}
+			if (in.capacity() < needed) {
+				ByteBuffer larger = ByteBuffer.allocate(needed);
+				larger.put(in);
+				in = larger;
+			} else {
+				in.compact();
+			}
+			while (in.position() < needed) {
+				if (channel.read(in) == -1) {
+					in.flip();
+					return false;
+				}
+			}
+			in.flip();
+			return true;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public byte getDirection() {
+			return direction;
+		}
+
+		public boolean isInbound() {
+			return direction == INBOUND;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
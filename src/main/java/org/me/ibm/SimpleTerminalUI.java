@@ -24,7 +24,7 @@ import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
-public class SimpleTerminalUI extends JFrame implements ScreenUpdateListener {
+public class SimpleTerminalUI extends JFrame implements ScreenChangeListener {
 	private static final long serialVersionUID = 1L;
 	private final Tn3270 terminal;
     private final JTextArea screenArea;
@@ -40,7 +40,7 @@ public class SimpleTerminalUI extends JFrame implements ScreenUpdateListener {
         this.cursorLabel = new JLabel("Cursor: 0,0");
         
         setupUI();
-        terminal.addScreenUpdateListener(this);
+        terminal.addScreenChangeListener(this);
     }
     
     private void setupUI() {
@@ -295,17 +295,30 @@ public class SimpleTerminalUI extends JFrame implements ScreenUpdateListener {
     }
     
     @Override
-    public void onScreenUpdate() {
+    public void onScreenChange(ScreenChange change) {
         SwingUtilities.invokeLater(() -> {
-            // Update screen content
+            // Update screen content, only the rows the host actually touched
         	try {
-        		screenArea.setText(terminal.screen().getString());
+        		Screen screen = terminal.screen();
+        		int height = terminal.buffer().getHeight();
+        		int lineLength = TelnetConstants.SCREEN_WIDTH + 1;
+        		
+        		if(change.isFullScreen() || screenArea.getDocument().getLength() != height * lineLength - 1) {
+        			screenArea.setText(screen.getString());
+        		} else {
+        			for(int row = 0; row < height; row++) {
+        				if(change.isRowDirty(row)) {
+        					int start = row * lineLength;
+        					screenArea.replaceRange(screen.getString(row), start, start + TelnetConstants.SCREEN_WIDTH);
+        				}
+        			}
+        		}
         	} catch (Exception e) {
         		screenArea.setText("Error retrieving screen content: " + e.getMessage());
         	}
             
             // Update cursor position
-            BufferPosition cursor = terminal.buffer().getCursorBufferPosition();
+            BufferPosition cursor = new BufferPosition(terminal.buffer().readCursorPosition());
             cursorLabel.setText(String.format("Cursor: %d,%d (pos %d)",  cursor.getRow(), cursor.getCol(), cursor.getPosition()));
         });
     }
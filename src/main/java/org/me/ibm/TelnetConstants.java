@@ -9,6 +9,7 @@ public class TelnetConstants {
     public static final byte WILL = (byte) 0xFB;
     public static final byte SB = (byte) 0xFA;    // Subnegotiation Begin
     public static final byte SE = (byte) 0xF0;    // Subnegotiation End
+    public static final byte AO = (byte) 0xF5;    // Abort Output, SYSREQ on a TN3270E session
     
     // Telnet Options
     public static final byte BINARY = 0;
@@ -17,12 +18,68 @@ public class TelnetConstants {
     public static final byte TERMINAL_TYPE = 24;
     public static final byte END_OF_RECORD = 25;
     public static final byte FORCE_LOGOUT = (byte) 0x12;
+    public static final byte TN3270E = 40;
     public static final byte EOR = (byte) 0xEF;   // eor
     
     // Terminal Type
     public static final String TERMINAL_TYPE_IBM3278 = "IBM-3278-2-E";
     public static final String TERMINAL_TYPE_IBM3279 = "IBM-3279-2-E";
     
+    // TN3270E subnegotiation (RFC 2355)
+    public static final byte E_ASSOCIATE = 0;
+    public static final byte E_CONNECT = 1;
+    public static final byte E_DEVICE_TYPE = 2;
+    public static final byte E_FUNCTIONS = 3;
+    public static final byte E_IS = 4;
+    public static final byte E_REASON = 5;
+    public static final byte E_REJECT = 6;
+    public static final byte E_REQUEST = 7;
+    public static final byte E_SEND = 8;
+    
+    // TN3270E device type reject reasons
+    public static final byte E_REASON_CONN_PARTNER = 0;
+    public static final byte E_REASON_DEVICE_IN_USE = 1;
+    public static final byte E_REASON_INV_ASSOCIATE = 2;
+    public static final byte E_REASON_INV_NAME = 3;
+    public static final byte E_REASON_INV_DEVICE_TYPE = 4;
+    public static final byte E_REASON_TYPE_NAME_ERROR = 5;
+    public static final byte E_REASON_UNKNOWN_ERROR = 6;
+    public static final byte E_REASON_UNSUPPORTED_REQ = 7;
+    
+    // TN3270E functions
+    public static final byte E_FUNC_BIND_IMAGE = 0;
+    public static final byte E_FUNC_DATA_STREAM_CTL = 1;
+    public static final byte E_FUNC_RESPONSES = 2;
+    public static final byte E_FUNC_SCS_CTL_CODES = 3;
+    public static final byte E_FUNC_SYSREQ = 4;
+    
+    // TN3270E header, data type, request flag, response flag, 2 byte sequence number
+    public static final int E_HEADER_SIZE = 5;
+    public static final byte E_DT_3270_DATA = 0x00;
+    public static final byte E_DT_SCS_DATA = 0x01;
+    public static final byte E_DT_RESPONSE = 0x02;
+    public static final byte E_DT_BIND_IMAGE = 0x03;
+    public static final byte E_DT_UNBIND = 0x04;
+    public static final byte E_DT_NVT_DATA = 0x05;
+    public static final byte E_DT_REQUEST = 0x06;
+    public static final byte E_DT_SSCP_LU_DATA = 0x07;
+    public static final byte E_DT_PRINT_EOJ = 0x08;
+    
+    // response flag of 3270-DATA records, what the host wants back
+    public static final byte E_RSF_NO_RESPONSE = 0x00;
+    public static final byte E_RSF_ERROR_RESPONSE = 0x01;
+    public static final byte E_RSF_ALWAYS_RESPONSE = 0x02;
+    // response flag of RESPONSE records
+    public static final byte E_RSF_POSITIVE_RESPONSE = 0x00;
+    public static final byte E_RSF_NEGATIVE_RESPONSE = 0x01;
+    
+    // first byte of a RESPONSE record
+    public static final byte E_POS_DEVICE_END = 0x00;
+    public static final byte E_NEG_COMMAND_REJECT = 0x00;
+    public static final byte E_NEG_INTERVENTION_REQUIRED = 0x01;
+    public static final byte E_NEG_OPERATION_CHECK = 0x02;
+    public static final byte E_NEG_COMPONENT_DISCONNECTED = 0x03;
+    
     // 3270 Command Codes
     public static final byte WRITE = (byte) 0xF1;
     public static final byte ERASE_WRITE = (byte) 0xF5;
@@ -30,6 +87,11 @@ public class TelnetConstants {
     public static final byte READ_BUFFER = (byte) 0xF2;
     public static final byte READ_MODIFIED = (byte) 0xF6;
     public static final byte READ_MODIFIED_ALL = (byte) 0x6E;
+    public static final byte ERASE_ALL_UNPROTECTED = (byte) 0x6F;
+    // local (channel attached) codes of the three commands outside the 0xF0 range
+    public static final byte LOCAL_ERASE_WRITE_ALTERNATE = 0x0D;
+    public static final byte LOCAL_READ_MODIFIED_ALL = 0x0E;
+    public static final byte LOCAL_ERASE_ALL_UNPROTECTED = 0x0F;
     
     // 3270 Orders
     public static final byte SF = 0x1D;    // Start Field
@@ -44,11 +106,12 @@ public class TelnetConstants {
     public static final byte GE = 0x08;    // Graphics Escape
     
     // Write Control Characters
-    public static final byte WCC_KEYBOARD_RESTORE = 0x01; // bit 0
-    public static final byte WCC_SOUND_ALARM = 0x02; // bit 1
-    public static final byte WCC_START_PRINTER = 0x04; // bit 2
-    public static final byte WCC_PRINT = 0x08;// bit 3
-    public static final byte WCC_ERASE_ALL_UNPROTECTED = 0x40; // bit 6 or (byte)64
+    public static final byte WCC_RESET_MDT = 0x01; // bit 7 in IBM's numbering
+    public static final byte WCC_KEYBOARD_RESTORE = 0x02; // bit 6 in IBM's numbering
+    public static final byte WCC_SOUND_ALARM = 0x04; // bit 5 in IBM's numbering
+    public static final byte WCC_START_PRINTER = 0x08; // bit 4 in IBM's numbering
+    public static final byte WCC_PRINT = 0x30; // bits 2-3 in IBM's numbering, the printout format
+    public static final byte WCC_RESET = 0x40; // bit 1 in IBM's numbering, resets partitions and reply mode, which this terminal doesn't have
     
     // Field Attributes
     public static final byte ATTR_PROTECTED = 0x20;
@@ -57,6 +120,12 @@ public class TelnetConstants {
     public static final byte ATTR_INTENSITY_MASK = 0x08;
     public static final byte ATTR_MDT = 0x01;  // Modified Data Tag
     
+    // Extended Attribute Types (SFE, SA and MF)
+    public static final byte XA_ALL = 0x00;
+    public static final byte XA_HIGHLIGHTING = 0x41;
+    public static final byte XA_FOREGROUND = 0x42;
+    public static final byte XA_3270 = (byte) 0xC0;
+    
     // Display Attributes
     public static final byte DISPLAY_NORMAL = 0x00;
     public static final byte DISPLAY_INVISIBLE = 0x08;
@@ -86,6 +155,7 @@ public class TelnetConstants {
     public static final byte AID_PA1 = (byte) 0x6C;
     public static final byte AID_PA2 = (byte) 0x6E;
     public static final byte AID_PA3 = (byte) 0x6B;
+    public static final byte AID_SYSREQ = (byte) 0xF0;
     
     // Buffer size for IBM-3278-2-E (24x80)
     public static final int SCREEN_WIDTH = 80;
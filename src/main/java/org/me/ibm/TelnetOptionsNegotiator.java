@@ -3,6 +3,9 @@ package org.me.ibm;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
 
 public class TelnetOptionsNegotiator {
     private final InputStream inputStream;
@@ -12,6 +15,21 @@ public class TelnetOptionsNegotiator {
     private String terminalType;
     private Buffer buffer;
     
+    // TN3270E is off unless asked for, the host then gets WONT and carries on with plain TN3270
+    private static final int REQUESTED_FUNCTIONS =
+    	Tn3270eSession.functionBit(TelnetConstants.E_FUNC_BIND_IMAGE) |
+    	Tn3270eSession.functionBit(TelnetConstants.E_FUNC_RESPONSES) |
+    	Tn3270eSession.functionBit(TelnetConstants.E_FUNC_SYSREQ);
+    private boolean tn3270eEnabled = false;
+    private String deviceName;
+    private LuPool luPool;
+    // the LU asked for in the last DEVICE-TYPE REQUEST, and the ones the host turned down
+    private String requestedDevice;
+    private final Set<String> rejectedDevices = new HashSet<>();
+    private String deviceType;
+    private String connectedDevice;
+    private volatile Tn3270eSession tn3270e;
+    
     public TelnetOptionsNegotiator(InputStream inputStream, OutputStream outputStream) {
         this.inputStream = inputStream;
         this.outputStream = outputStream;
@@ -26,6 +44,33 @@ public class TelnetOptionsNegotiator {
     }
     
     public int negotiateOptions() throws IOException {
+        Tn3270Events.Negotiation event = new Tn3270Events.Negotiation();
+        event.begin();
+        try {
+            sendInitialOptions();
+            
+            // Process telnet negotiations byte by byte until we get first non-telnet byte
+            return processNegotiationsUntilData();
+        } finally {
+            event.phase = "NEGOTIATE";
+            event.option = -1;
+            event.commit();
+        }
+    }
+    
+    public void sendInitialOptions() throws IOException {
+        Tn3270Events.Negotiation event = new Tn3270Events.Negotiation();
+        event.begin();
+        try {
+            sendInitialOptionsNow();
+        } finally {
+            event.phase = "INITIAL_OPTIONS";
+            event.option = -1;
+            event.commit();
+        }
+    }
+    
+    private void sendInitialOptionsNow() throws IOException {
         // Send initial telnet option negotiations for 3270 terminal
         
         // Negotiate Binary mode
@@ -42,9 +87,6 @@ public class TelnetOptionsNegotiator {
         // Suppress Go Ahead
         sendWill(TelnetConstants.SUPPRESS_GO_AHEAD);
         sendDo(TelnetConstants.SUPPRESS_GO_AHEAD);
-        
-        // Process telnet negotiations byte by byte until we get first non-telnet byte
-        return processNegotiationsUntilData();
     }
     
     private byte[] negotiationBuffer = new byte[256];
@@ -151,11 +193,39 @@ public class TelnetOptionsNegotiator {
         }
     }
     
+    // one Negotiation event per command from the host, named after the command
     private Integer processTelnetCommand() throws IOException {
         if (bufferPos < 2) {
 			return null;
 		}
         
+        Tn3270Events.Negotiation event = new Tn3270Events.Negotiation();
+        event.begin();
+        try {
+            return handleTelnetCommand();
+        } finally {
+            if (event.shouldCommit()) {
+                event.phase = commandName(negotiationBuffer[1]);
+                event.option = (bufferPos >= 3 ? negotiationBuffer[2] & 0xFF : -1);
+                event.commit();
+            }
+        }
+    }
+    
+    private static String commandName(byte command) {
+        switch (command) {
+            case TelnetConstants.DO: return "DO";
+            case TelnetConstants.DONT: return "DONT";
+            case TelnetConstants.WILL: return "WILL";
+            case TelnetConstants.WONT: return "WONT";
+            case TelnetConstants.SB: return "SB";
+            case TelnetConstants.SE: return "SE";
+            case TelnetConstants.IAC: return "IAC";
+            default: return Integer.toString(command & 0xFF);
+        }
+    }
+    
+    private Integer handleTelnetCommand() throws IOException {
         byte command = negotiationBuffer[1];
         
         switch (command) {
@@ -211,6 +281,11 @@ public class TelnetOptionsNegotiator {
         
         byte option = negotiationBuffer[2];
         
+        if (option == TelnetConstants.TN3270E) {
+            processTn3270eSubnegotiation();
+            return;
+        }
+        
         if (option == TelnetConstants.TERMINAL_TYPE && bufferPos >= 5) {
             byte subCommand = negotiationBuffer[3];
             if (subCommand == 1) { // SEND command
@@ -220,6 +295,114 @@ public class TelnetOptionsNegotiator {
     }
     
     
+    // IAC SB TN3270E <operation> ... IAC SE, the bytes of interest run from 3 up to the IAC SE
+    private void processTn3270eSubnegotiation() throws IOException {
+        int end = bufferPos - 2;
+        if (end < 5) {
+            return;
+        }
+        
+        byte operation = negotiationBuffer[3];
+        byte subOperation = negotiationBuffer[4];
+        
+        if (operation == TelnetConstants.E_SEND && subOperation == TelnetConstants.E_DEVICE_TYPE) {
+            String device = deviceName;
+            if (luPool != null) {
+                device = luPool.acquire(rejectedDevices);
+                if (device == null) {
+                    throw new IOException("No LU left in the pool to connect to.");
+                }
+            }
+            sendDeviceTypeRequest(device);
+        } else if (operation == TelnetConstants.E_DEVICE_TYPE && subOperation == TelnetConstants.E_IS) {
+            int connect = 5;
+            while (connect < end && negotiationBuffer[connect] != TelnetConstants.E_CONNECT) {
+                connect++;
+            }
+            deviceType = new String(negotiationBuffer, 5, connect - 5, StandardCharsets.US_ASCII);
+            connectedDevice = (connect < end
+            	? new String(negotiationBuffer, connect + 1, end - connect - 1, StandardCharsets.US_ASCII)
+            	: requestedDevice);
+            sendFunctions(TelnetConstants.E_REQUEST, REQUESTED_FUNCTIONS);
+        } else if (operation == TelnetConstants.E_DEVICE_TYPE && subOperation == TelnetConstants.E_REJECT) {
+            byte reason = (end > 6 && negotiationBuffer[5] == TelnetConstants.E_REASON ? negotiationBuffer[6] : TelnetConstants.E_REASON_UNKNOWN_ERROR);
+            deviceRejected(reason);
+        } else if (operation == TelnetConstants.E_FUNCTIONS && subOperation == TelnetConstants.E_REQUEST) {
+            // the host's proposal, agree when it only has what we support, counter with the overlap otherwise
+            int offered = functionsOf(5, end);
+            int agreed = offered & REQUESTED_FUNCTIONS;
+            if (agreed == offered) {
+                sendFunctions(TelnetConstants.E_IS, agreed);
+                startTn3270e(agreed);
+            } else {
+                sendFunctions(TelnetConstants.E_REQUEST, agreed);
+            }
+        } else if (operation == TelnetConstants.E_FUNCTIONS && subOperation == TelnetConstants.E_IS) {
+            startTn3270e(functionsOf(5, end) & REQUESTED_FUNCTIONS);
+        }
+    }
+    
+    private void deviceRejected(byte reason) throws IOException {
+        if (requestedDevice == null) {
+            // nothing particular was asked for, carry on as a plain TN3270 session
+            sendWont(TelnetConstants.TN3270E);
+            return;
+        }
+        
+        if (luPool != null) {
+            luPool.release(requestedDevice);
+            rejectedDevices.add(requestedDevice);
+            if (reason == TelnetConstants.E_REASON_DEVICE_IN_USE || reason == TelnetConstants.E_REASON_INV_NAME) {
+                String next = luPool.acquire(rejectedDevices);
+                if (next != null) {
+                    sendDeviceTypeRequest(next);
+                    return;
+                }
+            }
+        }
+        
+        String rejected = requestedDevice;
+        requestedDevice = null;
+        throw new IOException("Host rejected TN3270E device " + deviceType(rejected) + ", reason " + reason + ".");
+    }
+    
+    private String deviceType(String device) {
+        return terminalType + (device != null ? " CONNECT " + device : "");
+    }
+    
+    private int functionsOf(int start, int end) {
+        int functions = 0;
+        for (int i = start; i < end; i++) {
+            if (negotiationBuffer[i] >= 0 && negotiationBuffer[i] < Integer.SIZE) {
+                functions |= Tn3270eSession.functionBit(negotiationBuffer[i]);
+            }
+        }
+        return functions;
+    }
+    
+    private void startTn3270e(int functions) {
+        tn3270e = new Tn3270eSession(outputStream, deviceType, connectedDevice, functions);
+        if (buffer != null) {
+            buffer.setTn3270e(tn3270e);
+        }
+    }
+    
+    private void endTn3270e() {
+        tn3270e = null;
+        if (buffer != null) {
+            buffer.setTn3270e(null);
+        }
+        releaseDevice();
+    }
+    
+    // gives a pooled LU back, on disconnect or when the host drops TN3270E
+    public void releaseDevice() {
+        if (luPool != null && requestedDevice != null) {
+            luPool.release(requestedDevice);
+        }
+        requestedDevice = null;
+    }
+    
     private void handleDo(byte option) throws IOException {
         switch (option) {
             case TelnetConstants.BINARY:
@@ -240,6 +423,14 @@ public class TelnetOptionsNegotiator {
                 sendWill(option);
                 break;
                 
+            case TelnetConstants.TN3270E:
+                if (tn3270eEnabled) {
+                    sendWill(option);
+                } else {
+                    sendWont(option);
+                }
+                break;
+                
             default:
                 sendWont(option);
                 break;
@@ -247,6 +438,9 @@ public class TelnetOptionsNegotiator {
     }
     
     private void handleDont(byte option) throws IOException {
+        if (option == TelnetConstants.TN3270E) {
+            endTn3270e();
+        }
         sendWont(option);
     }
     
@@ -297,6 +491,39 @@ public class TelnetOptionsNegotiator {
         outputStream.flush();
     }
     
+    private void sendDeviceTypeRequest(String device) throws IOException {
+        requestedDevice = device;
+        outputStream.write(TelnetConstants.IAC);
+        outputStream.write(TelnetConstants.SB);
+        outputStream.write(TelnetConstants.TN3270E);
+        outputStream.write(TelnetConstants.E_DEVICE_TYPE);
+        outputStream.write(TelnetConstants.E_REQUEST);
+        outputStream.write(terminalType.getBytes(StandardCharsets.US_ASCII));
+        if (device != null) {
+            outputStream.write(TelnetConstants.E_CONNECT);
+            outputStream.write(device.getBytes(StandardCharsets.US_ASCII));
+        }
+        outputStream.write(TelnetConstants.IAC);
+        outputStream.write(TelnetConstants.SE);
+        outputStream.flush();
+    }
+    
+    private void sendFunctions(byte operation, int functions) throws IOException {
+        outputStream.write(TelnetConstants.IAC);
+        outputStream.write(TelnetConstants.SB);
+        outputStream.write(TelnetConstants.TN3270E);
+        outputStream.write(TelnetConstants.E_FUNCTIONS);
+        outputStream.write(operation);
+        for (byte function = 0; function < Integer.SIZE; function++) {
+            if ((functions & Tn3270eSession.functionBit(function)) != 0) {
+                outputStream.write(function);
+            }
+        }
+        outputStream.write(TelnetConstants.IAC);
+        outputStream.write(TelnetConstants.SE);
+        outputStream.flush();
+    }
+    
     private void sendWill(byte option) throws IOException {
         outputStream.write(TelnetConstants.IAC);
         outputStream.write(TelnetConstants.WILL);
@@ -333,6 +560,32 @@ public class TelnetOptionsNegotiator {
         return endOfRecord;
     }
     
+    public boolean isTn3270eEnabled() {
+        return tn3270eEnabled;
+    }
+    
+    public void setTn3270eEnabled(boolean tn3270eEnabled) {
+        this.tn3270eEnabled = tn3270eEnabled;
+    }
+    
+    // a specific LU to connect to, ignored when there is a pool
+    public void setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+    }
+    
+    public void setLuPool(LuPool luPool) {
+        this.luPool = luPool;
+    }
+    
+    public boolean isTn3270e() {
+        return tn3270e != null;
+    }
+    
+    // null until the host agreed on the functions
+    public Tn3270eSession getTn3270eSession() {
+        return tn3270e;
+    }
+    
     public String getTerminalType() {
         return terminalType;
     }
@@ -1,7 +1,13 @@
 package org.me.ibm;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -16,18 +22,63 @@ public class Tn3270 implements AutoCloseable {
     private Screen screen;
     private IDataStreamParser parser;
     private Thread parserThread;
-    private boolean connected;
+    private volatile boolean connected;
     private boolean secure = true;
+    private boolean tcpNoDelay = true;
+    private boolean virtualThreads = false;
+    private final Tn3270SessionEngine engine;
+    private Tn3270SessionEngine.ChannelSession session;
+    private Tn3270Metrics metricsRegistry = Tn3270Metrics.getDefault();
+    private String metricsKey;
+    // the buffer's update count when the current connection started, the buffer outlives reconnects
+    private volatile long connectUpdateCount;
+    private Path traceFile;
+    private SessionTrace trace;
+    private boolean tn3270e = false;
+    private String deviceName;
+    private LuPool luPool;
+    private String terminalType;
     
     // Default connection parameters
     private static final String DEFAULT_HOST = "localhost";
     private static final int DEFAULT_PORT = 23;
     
     public Tn3270() {
+        this(null);
+    }
+    
+    // sessions created with an engine are driven by its selector threads instead of a parser thread each
+    public Tn3270(Tn3270SessionEngine engine) {
         this.connected = false;
         this.buffer = new Buffer();
         this.screen = null; // Will be initialized after connection
         this.parser = null; // Will be initialized after connection
+        this.engine = engine;
+    }
+    
+    // parser loop and blocking waits run on virtual threads, so scripted sessions don't cost a platform thread each
+    public static Tn3270 withVirtualThreads() {
+        Tn3270 tn3270 = new Tn3270();
+        tn3270.setVirtualThreads(true);
+        return tn3270;
+    }
+    
+    public Tn3270SessionEngine getEngine() {
+        return engine;
+    }
+    
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    public void setVirtualThreads(boolean virtualThreads) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change thread mode while connected.");
+		}
+    	if(virtualThreads && !Tn3270Threads.isVirtualThreadSupported()) {
+    		throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+    	}
+		this.virtualThreads = virtualThreads;
     }
     
     public boolean isSecure() {
@@ -41,6 +92,18 @@ public class Tn3270 implements AutoCloseable {
 		this.secure = secure;
     }
     
+    public boolean isTcpNoDelay() {
+    	return tcpNoDelay;
+    }
+    
+    // on by default: negotiation and AIDs are small writes, with Nagle each one can wait for the host's delayed ACK
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+    	if(connected) {
+    		throw new IllegalStateException("Cannot change TCP_NODELAY while connected.");
+    	}
+    	this.tcpNoDelay = tcpNoDelay;
+    }
+    
     public void connect() throws IOException {
         connect(DEFAULT_HOST, DEFAULT_PORT);
     }
@@ -50,6 +113,11 @@ public class Tn3270 implements AutoCloseable {
             throw new IllegalStateException("Already connected. Call disconnect() first.");
         }
         
+        if (engine != null) {
+        	connectWithEngine(hostname, port);
+        	return;
+        }
+        
         try {
         	if(secure) {
 	        	try {
@@ -72,25 +140,38 @@ public class Tn3270 implements AutoCloseable {
 				plainSocket.connect(sockaddr, connectTimeout);
 				socket = plainSocket;
         	}
+        	socket.setTcpNoDelay(tcpNoDelay);
+        	
+        	InputStream inputStream = socket.getInputStream();
+        	OutputStream outputStream = socket.getOutputStream();
+        	if (traceFile != null) {
+        		trace = SessionTrace.create(traceFile);
+        		inputStream = trace.tap(inputStream);
+        		outputStream = trace.tap(outputStream);
+        	}
           
         	boolean gotLock = false;
         	try {
         		gotLock = buffer.acquireLock();
+        		buffer.resetKeyboard();
+        		connectUpdateCount = buffer.getUpdateCount();
 
         		// Initialize telnet options negotiation
-        		telnetOptions = new TelnetOptionsNegotiator(socket.getInputStream(), socket.getOutputStream());
+        		telnetOptions = new TelnetOptionsNegotiator(inputStream, outputStream);
         		telnetOptions.setBuffer(buffer);
+        		configure(telnetOptions);
             
         		// Initialize screen with output stream for sending commands
-        		screen = new Screen(buffer, socket.getOutputStream());
+        		screen = new Screen(buffer, outputStream);
             
         		// Negotiate telnet options and get first non-telnet byte
         		final int firstDataByte = telnetOptions.negotiateOptions();
             
         		// Initialize and start data stream parser
-        		parser = new DataStreamParser(buffer, socket.getInputStream());
+        		parser = new DataStreamParser(buffer, inputStream);
             
-        		parserThread = new Thread(() -> {
+        		ThreadFactory threadFactory = (virtualThreads ? Tn3270Threads.virtualThreadFactory() : Tn3270Threads.platformThreadFactory());
+        		parserThread = threadFactory.newThread(() -> {
         			try {
         				parser.parse(firstDataByte);
         			} catch (IOException e) {
@@ -100,14 +181,15 @@ public class Tn3270 implements AutoCloseable {
         				// Connection lost, mark as disconnected
         				connected = false;
         			}
-        		}, "TN3270-Parser");
+        		});
             
-        		parserThread.setDaemon(true);
         		parserThread.start();
             
         		connected = true;
+        		registerMetrics(hostname, port);
         	} finally{
         		if(gotLock){
+        			// a host that sends nothing until it hears from us still connects, waitForScreenUpdate() is there for that
         			buffer.awaitEor();
         			buffer.unlock();
         		}
@@ -118,6 +200,54 @@ public class Tn3270 implements AutoCloseable {
         }
     }
     
+    private void connectWithEngine(String hostname, int port) throws IOException {
+    	if (secure) {
+    		throw new IOException("TLS is not supported by the session engine, call setSecure(false) first.");
+    	}
+    	
+    	SocketChannel channel = null;
+    	try {
+    		channel = SocketChannel.open();
+    		channel.socket().connect(new java.net.InetSocketAddress(hostname, port), connectTimeout);
+    		socket = channel.socket();
+    		socket.setTcpNoDelay(tcpNoDelay);
+    		
+    		if (traceFile != null) {
+    			trace = SessionTrace.create(traceFile);
+    		}
+    		
+    		boolean gotLock = false;
+    		try {
+    			gotLock = buffer.acquireLock();
+    			buffer.resetKeyboard();
+    			connectUpdateCount = buffer.getUpdateCount();
+    			
+    			// negotiation and parsing run on the engine's event loop from here on
+    			session = engine.register(channel, buffer, trace, this::configure, () -> connected = false);
+    			telnetOptions = session.negotiator();
+    			parser = session.parser();
+    			screen = new Screen(buffer, session.outputStream());
+    			
+    			connected = true;
+    			registerMetrics(hostname, port);
+    		} finally {
+    			if(gotLock){
+    				// as in the blocking mode, a host without a first screen is not an error
+    				buffer.awaitEor();
+    				buffer.unlock();
+    			}
+    		}
+    	} catch (IOException | InterruptedException | TimeoutException e) {
+    		if (session != null) {
+    			session.close();
+    		} else if (channel != null) {
+    			channel.close();
+    		}
+    		cleanup();
+    		throw new IOException("Failed to connect to " + hostname + ":" + port, e);
+    	}
+    }
+    
     public void disconnect() throws IOException {
         if (!connected) {
             return;
@@ -131,6 +261,16 @@ public class Tn3270 implements AutoCloseable {
                 parser.stop();
             }
             
+            // Engine sessions close their channel and leave the event loop
+            if (session != null) {
+                session.close();
+            }
+            
+            // Close socket first, it unblocks a parser thread sitting in read()
+            if (socket != null && !socket.isClosed()) {
+                socket.close();
+            }
+            
             // Wait for parser thread to finish (with timeout)
             if (parserThread != null && parserThread.isAlive()) {
                 try {
@@ -140,23 +280,51 @@ public class Tn3270 implements AutoCloseable {
                 }
             }
             
-            // Close socket
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-            
         } finally {
             cleanup();
         }
     }
     
+    private void configure(TelnetOptionsNegotiator negotiator) {
+        if (terminalType != null) {
+            negotiator.setTerminalType(terminalType);
+        }
+        negotiator.setTn3270eEnabled(tn3270e);
+        negotiator.setDeviceName(deviceName);
+        negotiator.setLuPool(luPool);
+    }
+    
+    private void registerMetrics(String hostname, int port) {
+        if (metricsRegistry != null) {
+            metricsKey = metricsRegistry.register(hostname + ":" + port, buffer.getMetrics());
+        }
+    }
+    
     private void cleanup() {
+        if (metricsRegistry != null) {
+            metricsRegistry.unregister(metricsKey);
+        }
+        metricsKey = null;
+        if (telnetOptions != null) {
+            // the LU goes back to the pool for the next session
+            telnetOptions.releaseDevice();
+        }
+        buffer.setTn3270e(null);
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                System.err.println("Error closing session trace: " + e.getMessage());
+            }
+            trace = null;
+        }
         connected = false;
         socket = null;
         telnetOptions = null;
         screen = null;
         parser = null;
         parserThread = null;
+        session = null;
     }
     
     public Screen screen() {
@@ -170,6 +338,84 @@ public class Tn3270 implements AutoCloseable {
         return buffer;
     }
     
+    // this session's counters, they keep their values across reconnects
+    public SessionMetrics getMetrics() {
+        return buffer.getMetrics();
+    }
+    
+    public Path getTraceFile() {
+        return traceFile;
+    }
+    
+    // every connect writes what goes over the socket to this file (replacing it), see SessionTrace and TraceReplay
+    public void setTraceFile(Path traceFile) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change the trace file while connected.");
+		}
+        this.traceFile = traceFile;
+    }
+    
+    public boolean isTn3270e() {
+        return tn3270e;
+    }
+    
+    // agree to TN3270E (RFC 2355) when the host offers it, off by default so hosts keep seeing plain TN3270
+    public void setTn3270e(boolean tn3270e) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change TN3270E while connected.");
+		}
+        this.tn3270e = tn3270e;
+    }
+    
+    public String getDeviceName() {
+        return deviceName;
+    }
+    
+    // the LU to ask for with TN3270E, null lets the host pick one
+    public void setDeviceName(String deviceName) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change the device name while connected.");
+		}
+        this.deviceName = deviceName;
+    }
+    
+    public LuPool getLuPool() {
+        return luPool;
+    }
+    
+    // the LU is taken from the pool on connect, the next one is tried when the host rejects it
+    public void setLuPool(LuPool luPool) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change the LU pool while connected.");
+		}
+        this.luPool = luPool;
+    }
+    
+    public String getTerminalType() {
+        return terminalType;
+    }
+    
+    // e.g. IBM-3278-2-E, null keeps the negotiator's default
+    public void setTerminalType(String terminalType) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change the terminal type while connected.");
+		}
+        this.terminalType = terminalType;
+    }
+    
+    // what the host agreed to, null when the session isn't TN3270E
+    public Tn3270eSession getTn3270eSession() {
+        return buffer.getTn3270e();
+    }
+    
+    // null keeps the session out of every registry, the session still counts for itself
+    public void setMetricsRegistry(Tn3270Metrics metricsRegistry) {
+    	if(connected) {
+			throw new IllegalStateException("Cannot change the metrics registry while connected.");
+		}
+        this.metricsRegistry = metricsRegistry;
+    }
+    
     public boolean isConnected() {
         return connected && socket != null && !socket.isClosed();
     }
@@ -198,30 +444,64 @@ public class Tn3270 implements AutoCloseable {
         buffer.removeScreenUpdateListener(listener);
     }
     
+    public void addScreenChangeListener(ScreenChangeListener listener) {
+        buffer.addScreenChangeListener(listener);
+    }
+    
+    public void removeScreenChangeListener(ScreenChangeListener listener) {
+        buffer.removeScreenChangeListener(listener);
+    }
+    
+    public CodePage getCodePage() {
+        return buffer.getCodePage();
+    }
+    
+    // e.g. CodePage.forCcsid(273) for a German host, can be switched while connected
+    public void setCodePage(CodePage codePage) throws InterruptedException, TimeoutException {
+        boolean gotLock = false;
+        try {
+            gotLock = buffer.acquireLock();
+            buffer.setCodePage(codePage);
+        } finally {
+            if (gotLock) {
+                buffer.unlock();
+            }
+        }
+    }
+    
+    // hand listener calls to the dispatcher's executor so slow listeners never hold up the parser
+    public void setListenerDispatcher(ScreenChangeDispatcher dispatcher) {
+        buffer.setDispatcher(dispatcher);
+    }
+    
+    public ScreenChangeDispatcher getListenerDispatcher() {
+        return buffer.getDispatcher();
+    }
+    
     public void waitForConnection() throws InterruptedException {
-        // Wait for initial connection and option negotiation to complete
-        Thread.sleep(500); // Basic wait - could be improved with proper synchronization
+        waitForConnection(5000, TimeUnit.MILLISECONDS);
+    }
+    
+    // connected once negotiation is done and the host has sent its first record on this connection
+    public boolean waitForConnection(long wait, TimeUnit unit) throws InterruptedException {
+        try {
+            return buffer.awaitCondition(b -> connected && b.getUpdateCount() != connectUpdateCount, wait, unit);
+        } catch (TimeoutException e) {
+            return false;
+        }
     }
     
     public void waitForScreenUpdate() throws InterruptedException {
-        // Simple implementation - could be improved with proper synchronization
-        Object monitor = new Object();
-        ScreenUpdateListener listener = new ScreenUpdateListener() {
-            @Override
-            public void onScreenUpdate() {
-                synchronized (monitor) {
-                    monitor.notify();
-                }
-            }
-        };
-        
-        addScreenUpdateListener(listener);
+        waitForScreenUpdate(5000, TimeUnit.MILLISECONDS); // Wait up to 5 seconds
+    }
+    
+    // woken straight from the record processing, no listener is registered per call
+    public boolean waitForScreenUpdate(long wait, TimeUnit unit) throws InterruptedException {
         try {
-            synchronized (monitor) {
-                monitor.wait(5000); // Wait up to 5 seconds
-            }
-        } finally {
-            removeScreenUpdateListener(listener);
+            long updateCount = buffer.getUpdateCount();
+            return buffer.awaitUpdate(updateCount, wait, unit);
+        } catch (TimeoutException e) {
+            return false;
         }
     }
     
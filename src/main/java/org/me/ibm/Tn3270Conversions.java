@@ -1,6 +1,5 @@
 package org.me.ibm;
 
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public abstract class Tn3270Conversions {
@@ -115,7 +114,12 @@ public abstract class Tn3270Conversions {
 	
 	
 	public static byte asciiToEbcdic(char ascii) {
-		return (byte) ASCII_TO_EBCDIC_TABLE[ascii];
+		return (byte) (ascii < ASCII_TO_EBCDIC_TABLE.length ? ASCII_TO_EBCDIC_TABLE[ascii] : 0x40);
+	}
+	
+	// copy of the built-in table, CodePage.DEFAULT is built from it
+	static char[] ebcdicToAsciiTable() {
+		return EBCDIC_TO_ASCII_TABLE.clone();
 	}
 	
 	public static char ebcdicToAscii(byte ebcdic) {
@@ -126,226 +130,63 @@ public abstract class Tn3270Conversions {
 	}
     
     
+    // 12-bit addresses carry six bits per byte, each mapped onto a printable EBCDIC code
+    private static final byte[] ADDRESS_CODES = new byte[]{
+    	(byte)0x40,(byte)0xC1,(byte)0xC2,(byte)0xC3,(byte)0xC4,(byte)0xC5,(byte)0xC6,(byte)0xC7,
+    	(byte)0xC8,(byte)0xC9,(byte)0x4A,(byte)0x4B,(byte)0x4C,(byte)0x4D,(byte)0x4E,(byte)0x4F,
+    	(byte)0x50,(byte)0xD1,(byte)0xD2,(byte)0xD3,(byte)0xD4,(byte)0xD5,(byte)0xD6,(byte)0xD7,
+    	(byte)0xD8,(byte)0xD9,(byte)0x5A,(byte)0x5B,(byte)0x5C,(byte)0x5D,(byte)0x5E,(byte)0x5F,
+    	(byte)0x60,(byte)0x61,(byte)0xE2,(byte)0xE3,(byte)0xE4,(byte)0xE5,(byte)0xE6,(byte)0xE7,
+    	(byte)0xE8,(byte)0xE9,(byte)0x6A,(byte)0x6B,(byte)0x6C,(byte)0x6D,(byte)0x6E,(byte)0x6F,
+    	(byte)0xF0,(byte)0xF1,(byte)0xF2,(byte)0xF3,(byte)0xF4,(byte)0xF5,(byte)0xF6,(byte)0xF7,
+    	(byte)0xF8,(byte)0xF9,(byte)0x7A,(byte)0x7B,(byte)0x7C,(byte)0x7D,(byte)0x7E,(byte)0x7F
+    };
+    
+    public static final int MAX_12_BIT_ADDRESS = 0x0FFF;
+    public static final int MAX_14_BIT_ADDRESS = 0x3FFF;
+    public static final int MAX_16_BIT_ADDRESS = 0xFFFF;
+    
     public static final byte[] getPositionAddress(int pos){
-    	byte[] bytes = ByteBuffer.allocate(4).putInt(ADDRESS_TO_POSITION[pos]).array();
-    	return new byte[]{bytes[2],bytes[3]};
+    	byte[] address = new byte[2];
+    	encodeAddress(pos, address, 0);
+    	return address;
+    }
+    
+    // 12-bit coding while the position fits, 14-bit binary above that, writes two bytes at offset
+    public static void encodeAddress(int position, byte[] dst, int offset) {
+    	if(position <= MAX_12_BIT_ADDRESS) {
+    		encode12BitAddress(position, dst, offset);
+    	} else {
+    		encode14BitAddress(position, dst, offset);
+    	}
+    }
+    
+    public static void encode12BitAddress(int position, byte[] dst, int offset) {
+    	dst[offset] = ADDRESS_CODES[(position >> 6) & 0x3F];
+    	dst[offset + 1] = ADDRESS_CODES[position & 0x3F];
+    }
+    
+    // the top two bits of the first byte stay 00, that is what marks the address as binary
+    public static void encode14BitAddress(int position, byte[] dst, int offset) {
+    	dst[offset] = (byte) ((position >> 8) & 0x3F);
+    	dst[offset + 1] = (byte) position;
+    }
+    
+    // only valid once the host has agreed to 16-bit addressing, the bytes can't be told apart from the other modes
+    public static void encode16BitAddress(int position, byte[] dst, int offset) {
+    	dst[offset] = (byte) (position >> 8);
+    	dst[offset + 1] = (byte) position;
+    }
+    
+    // the mode comes from the top two bits of the first byte, 00 is 14-bit binary, 01 and 11 are 12-bit coded
+    public static int decodeAddress(byte byte1, byte byte2) {
+    	if((byte1 & 0xC0) == 0) {
+    		return ((byte1 & 0x3F) << 8) | (byte2 & 0xFF);
+    	}
+    	return ((byte1 & 0x3F) << 6) | (byte2 & 0x3F);
+    }
+    
+    public static int decode16BitAddress(byte byte1, byte byte2) {
+    	return ((byte1 & 0xFF) << 8) | (byte2 & 0xFF);
     }
-	
-	private static final int[] ADDRESS_TO_POSITION = new int[]{
-    	0x4040,0x40C1,0x40C2,0x40C3,0x40C4,0x40C5,0x40C6,0x40C7,0x40C8,0x40C9,
-    	0x404A,0x404B,0x404C,0x404D,0x404E,0x404F,0x4050,0x40D1,0x40D2,0x40D3,
-    	0x40D4,0x40D5,0x40D6,0x40D7,0x40D8,0x40D9,0x405A,0x405B,0x405C,0x405D,
-    	0x405E,0x405F,0x4060,0x4061,0x40E2,0x40E3,0x40E4,0x40E5,0x40E6,0x40E7,
-    	0x40E8,0x40E9,0x406A,0x406B,0x406C,0x406D,0x406E,0x406F,0x40F0,0x40F1,
-    	0x40F2,0x40F3,0x40F4,0x40F5,0x40F6,0x40F7,0x40F8,0x40F9,0x407A,0x407B,
-    	0x407C,0x407D,0x407E,0x407F,0xC140,0xC1C1,0xC1C2,0xC1C3,0xC1C4,0xC1C5,
-    	0xC1C6,0xC1C7,0xC1C8,0xC1C9,0xC14A,0xC14B,0xC14C,0xC14D,0xC14E,0xC14F,
-    	
-    	0xC150,0xC1D1,0xC1D2,0xC1D3,0xC1D4,0xC1D5,0xC1D6,0xC1D7,0xC1D8,0xC1D9,
-    	0xC15A,0xC15B,0xC15C,0xC15D,0xC15E,0xC15F,0xC160,0xC161,0xC1E2,0xC1E3,
-    	0xC1E4,0xC1E5,0xC1E6,0xC1E7,0xC1E8,0xC1E9,0xC16A,0xC16B,0xC16C,0xC16D,
-    	0xC16E,0xC16F,0xC1F0,0xC1F1,0xC1F2,0xC1F3,0xC1F4,0xC1F5,0xC1F6,0xC1F7,
-    	0xC1F8,0xC1F9,0xC17A,0xC17B,0xC17C,0xC17D,0xC17E,0xC17F,0xC240,0xC2C1,
-    	0xC2C2,0xC2C3,0xC2C4,0xC2C5,0xC2C6,0xC2C7,0xC2C8,0xC2C9,0xC24A,0xC24B,
-    	0xC24C,0xC24D,0xC24E,0xC24F,0xC250,0xC2D1,0xC2D2,0xC2D3,0xC2D4,0xC2D5,
-    	0xC2D6,0xC2D7,0xC2D8,0xC2D9,0xC25A,0xC25B,0xC25C,0xC25D,0xC25E,0xC25F,
-    	
-    	0xC260,0xC261,0xC2E2,0xC2E3,0xC2E4,0xC2E5,0xC2E6,0xC2E7,0xC2E8,0xC2E9,
-    	0xC26A,0xC26B,0xC26C,0xC26D,0xC26E,0xC26F,0xC2F0,0xC2F1,0xC2F2,0xC2F3,
-    	0xC2F4,0xC2F5,0xC2F6,0xC2F7,0xC2F8,0xC2F9,0xC27A,0xC27B,0xC27C,0xC27D,
-    	0xC27E,0xC27F,0xC340,0xC3C1,0xC3C2,0xC3C3,0xC3C4,0xC3C5,0xC3C6,0xC3C7,
-    	0xC3C8,0xC3C9,0xC34A,0xC34B,0xC34C,0xC34D,0xC34E,0xC34F,0xC350,0xC3D1,
-    	0xC3D2,0xC3D3,0xC3D4,0xC3D5,0xC3D6,0xC3D7,0xC3D8,0xC3D9,0xC35A,0xC35B,
-    	0xC35C,0xC35D,0xC35E,0xC35F,0xC360,0xC361,0xC3E2,0xC3E3,0xC3E4,0xC3E5,
-    	0xC3E6,0xC3E7,0xC3E8,0xC3E9,0xC36A,0xC36B,0xC36C,0xC36D,0xC36E,0xC36F,
-    	
-    	0xC3F0,0xC3F1,0xC3F2,0xC3F3,0xC3F4,0xC3F5,0xC3F6,0xC3F7,0xC3F8,0xC3F9,
-    	0xC37A,0xC37B,0xC37C,0xC37D,0xC37E,0xC37F,0xC440,0xC4C1,0xC4C2,0xC4C3,
-    	0xC4C4,0xC4C5,0xC4C6,0xC4C7,0xC4C8,0xC4C9,0xC44A,0xC44B,0xC44C,0xC44D,
-    	0xC44E,0xC44F,0xC450,0xC4D1,0xC4D2,0xC4D3,0xC4D4,0xC4D5,0xC4D6,0xC4D7,
-    	0xC4D8,0xC4D9,0xC45A,0xC45B,0xC45C,0xC45D,0xC45E,0xC45F,0xC460,0xC461,
-    	0xC4E2,0xC4E3,0xC4E4,0xC4E5,0xC4E6,0xC4E7,0xC4E8,0xC4E9,0xC46A,0xC46B,
-    	0xC46C,0xC46D,0xC46E,0xC46F,0xC4F0,0xC4F1,0xC4F2,0xC4F3,0xC4F4,0xC4F5,
-    	0xC4F6,0xC4F7,0xC4F8,0xC4F9,0xC47A,0xC47B,0xC47C,0xC47D,0xC47E,0xC47F,
-    	
-    	0xC540,0xC5C1,0xC5C2,0xC5C3,0xC5C4,0xC5C5,0xC5C6,0xC5C7,0xC5C8,0xC5C9,
-    	0xC54A,0xC54B,0xC54C,0xC54D,0xC54E,0xC54F,0xC550,0xC5D1,0xC5D2,0xC5D3,
-    	0xC5D4,0xC5D5,0xC5D6,0xC5D7,0xC5D8,0xC5D9,0xC55A,0xC55B,0xC55C,0xC55D,
-    	0xC55E,0xC55F,0xC560,0xC561,0xC5E2,0xC5E3,0xC5E4,0xC5E5,0xC5E6,0xC5E7,
-    	0xC5E8,0xC5E9,0xC56A,0xC56B,0xC56C,0xC56D,0xC56E,0xC56F,0xC5F0,0xC5F1,
-    	0xC5F2,0xC5F3,0xC5F4,0xC5F5,0xC5F6,0xC5F7,0xC5F8,0xC5F9,0xC57A,0xC57B,
-    	0xC57C,0xC57D,0xC57E,0xC57F,0xC640,0xC6C1,0xC6C2,0xC6C3,0xC6C4,0xC6C5,
-    	0xC6C6,0xC6C7,0xC6C8,0xC6C9,0xC64A,0xC64B,0xC64C,0xC64D,0xC64E,0xC64F,
-    	
-    	0xC650,0xC6D1,0xC6D2,0xC6D3,0xC6D4,0xC6D5,0xC6D6,0xC6D7,0xC6D8,0xC6D9,
-    	0xC65A,0xC65B,0xC65C,0xC65D,0xC65E,0xC65F,0xC660,0xC661,0xC6E2,0xC6E3,
-    	0xC6E4,0xC6E5,0xC6E6,0xC6E7,0xC6E8,0xC6E9,0xC66A,0xC66B,0xC66C,0xC66D,
-    	0xC66E,0xC66F,0xC6F0,0xC6F1,0xC6F2,0xC6F3,0xC6F4,0xC6F5,0xC6F6,0xC6F7,
-    	0xC6F8,0xC6F9,0xC67A,0xC67B,0xC67C,0xC67D,0xC67E,0xC67F,0xC740,0xC7C1,
-    	0xC7C2,0xC7C3,0xC7C4,0xC7C5,0xC7C6,0xC7C7,0xC7C8,0xC7C9,0xC74A,0xC74B,
-    	0xC74C,0xC74D,0xC74E,0xC74F,0xC750,0xC7D1,0xC7D2,0xC7D3,0xC7D4,0xC7D5,
-    	0xC7D6,0xC7D7,0xC7D8,0xC7D9,0xC75A,0xC75B,0xC75C,0xC75D,0xC75E,0xC75F,
-    	
-    	0xC760,0xC761,0xC7E2,0xC7E3,0xC7E4,0xC7E5,0xC7E6,0xC7E7,0xC7E8,0xC7E9,
-    	0xC76A,0xC76B,0xC76C,0xC76D,0xC76E,0xC76F,0xC7F0,0xC7F1,0xC7F2,0xC7F3,
-    	0xC7F4,0xC7F5,0xC7F6,0xC7F7,0xC7F8,0xC7F9,0xC77A,0xC77B,0xC77C,0xC77D,
-    	0xC77E,0xC77F,0xC840,0xC8C1,0xC8C2,0xC8C3,0xC8C4,0xC8C5,0xC8C6,0xC8C7,
-    	0xC8C8,0xC8C9,0xC84A,0xC84B,0xC84C,0xC84D,0xC84E,0xC84F,0xC850,0xC8D1,
-    	0xC8D2,0xC8D3,0xC8D4,0xC8D5,0xC8D6,0xC8D7,0xC8D8,0xC8D9,0xC85A,0xC85B,
-    	0xC85C,0xC85D,0xC85E,0xC85F,0xC860,0xC861,0xC8E2,0xC8E3,0xC8E4,0xC8E5,
-    	0xC8E6,0xC8E7,0xC8E8,0xC8E9,0xC86A,0xC86B,0xC86C,0xC86D,0xC86E,0xC86F,
-    	
-    	0xC8F0,0xC8F1,0xC8F2,0xC8F3,0xC8F4,0xC8F5,0xC8F6,0xC8F7,0xC8F8,0xC8F9,
-    	0xC87A,0xC87B,0xC87C,0xC87D,0xC87E,0xC87F,0xC940,0xC9C1,0xC9C2,0xC9C3,
-    	0xC9C4,0xC9C5,0xC9C6,0xC9C7,0xC9C8,0xC9C9,0xC94A,0xC94B,0xC94C,0xC94D,
-    	0xC94E,0xC94F,0xC950,0xC9D1,0xC9D2,0xC9D3,0xC9D4,0xC9D5,0xC9D6,0xC9D7,
-    	0xC9D8,0xC9D9,0xC95A,0xC95B,0xC95C,0xC95D,0xC95E,0xC95F,0xC960,0xC961,
-    	0xC9E2,0xC9E3,0xC9E4,0xC9E5,0xC9E6,0xC9E7,0xC9E8,0xC9E9,0xC96A,0xC96B,
-    	0xC96C,0xC96D,0xC96E,0xC96F,0xC9F0,0xC9F1,0xC9F2,0xC9F3,0xC9F4,0xC9F5,
-    	0xC9F6,0xC9F7,0xC9F8,0xC9F9,0xC97A,0xC97B,0xC97C,0xC97D,0xC97E,0xC97F,
-    	
-    	0x4A40,0x4AC1,0x4AC2,0x4AC3,0x4AC4,0x4AC5,0x4AC6,0x4AC7,0x4AC8,0x4AC9,
-    	0x4A4A,0x4A4B,0x4A4C,0x4A4D,0x4A4E,0x4A4F,0x4A50,0x4AD1,0x4AD2,0x4AD3,
-    	0x4AD4,0x4AD5,0x4AD6,0x4AD7,0x4AD8,0x4AD9,0x4A5A,0x4A5B,0x4A5C,0x4A5D,
-    	0x4A5E,0x4A5F,0x4A60,0x4A61,0x4AE2,0x4AE3,0x4AE4,0x4AE5,0x4AE6,0x4AE7,
-    	0x4AE8,0x4AE9,0x4A6A,0x4A6B,0x4A6C,0x4A6D,0x4A6E,0x4A6F,0x4AF0,0x4AF1,
-    	0x4AF2,0x4AF3,0x4AF4,0x4AF5,0x4AF6,0x4AF7,0x4AF8,0x4AF9,0x4A7A,0x4A7B,
-    	0x4A7C,0x4A7D,0x4A7E,0x4A7F,0x4B40,0x4BC1,0x4BC2,0x4BC3,0x4BC4,0x4BC5,
-    	0x4BC6,0x4BC7,0x4BC8,0x4BC9,0x4B4A,0x4B4B,0x4B4C,0x4B4D,0x4B4E,0x4B4F,
-    	
-    	0x4B50,0x4BD1,0x4BD2,0x4BD3,0x4BD4,0x4BD5,0x4BD6,0x4BD7,0x4BD8,0x4BD9,
-    	0x4B5A,0x4B5B,0x4B5C,0x4B5D,0x4B5E,0x4B5F,0x4B60,0x4B61,0x4BE2,0x4BE3,
-    	0x4BE4,0x4BE5,0x4BE6,0x4BE7,0x4BE8,0x4BE9,0x4B6A,0x4B6B,0x4B6C,0x4B6D,
-    	0x4B6E,0x4B6F,0x4BF0,0x4BF1,0x4BF2,0x4BF3,0x4BF4,0x4BF5,0x4BF6,0x4BF7,
-    	0x4BF8,0x4BF9,0x4B7A,0x4B7B,0x4B7C,0x4B7D,0x4B7E,0x4B7F,0x4C40,0x4CC1,
-    	0x4CC2,0x4CC3,0x4CC4,0x4CC5,0x4CC6,0x4CC7,0x4CC8,0x4CC9,0x4C4A,0x4C4B,
-    	0x4C4C,0x4C4D,0x4C4E,0x4C4F,0x4C50,0x4CD1,0x4CD2,0x4CD3,0x4CD4,0x4CD5,
-    	0x4CD6,0x4CD7,0x4CD8,0x4CD9,0x4C5A,0x4C5B,0x4C5C,0x4C5D,0x4C5E,0x4C5F,
-    	
-    	0x4C60,0x4C61,0x4CE2,0x4CE3,0x4CE4,0x4CE5,0x4CE6,0x4CE7,0x4CE8,0x4CE9,
-    	0x4C6A,0x4C6B,0x4C6C,0x4C6D,0x4C6E,0x4C6F,0x4CF0,0x4CF1,0x4CF2,0x4CF3,
-    	0x4CF4,0x4CF5,0x4CF6,0x4CF7,0x4CF8,0x4CF9,0x4C7A,0x4C7B,0x4C7C,0x4C7D,
-    	0x4C7E,0x4C7F,0x4D40,0x4DC1,0x4DC2,0x4DC3,0x4DC4,0x4DC5,0x4DC6,0x4DC7,
-    	0x4DC8,0x4DC9,0x4D4A,0x4D4B,0x4D4C,0x4D4D,0x4D4E,0x4D4F,0x4D50,0x4DD1,
-    	0x4DD2,0x4DD3,0x4DD4,0x4DD5,0x4DD6,0x4DD7,0x4DD8,0x4DD9,0x4D5A,0x4D5B,
-    	0x4D5C,0x4D5D,0x4D5E,0x4D5F,0x4D60,0x4D61,0x4DE2,0x4DE3,0x4DE4,0x4DE5,
-    	0x4DE6,0x4DE7,0x4DE8,0x4DE9,0x4D6A,0x4D6B,0x4D6C,0x4D6D,0x4D6E,0x4D6F,
-    	
-    	0x4DF0,0x4DF1,0x4DF2,0x4DF3,0x4DF4,0x4DF5,0x4DF6,0x4DF7,0x4DF8,0x4DF9,
-    	0x4D7A,0x4D7B,0x4D7C,0x4D7D,0x4D7E,0x4D7F,0x4E40,0x4EC1,0x4EC2,0x4EC3,
-    	0x4EC4,0x4EC5,0x4EC6,0x4EC7,0x4EC8,0x4EC9,0x4E4A,0x4E4B,0x4E4C,0x4E4D,
-    	0x4E4E,0x4E4F,0x4E50,0x4ED1,0x4ED2,0x4ED3,0x4ED4,0x4ED5,0x4ED6,0x4ED7,
-    	0x4ED8,0x4ED9,0x4E5A,0x4E5B,0x4E5C,0x4E5D,0x4E5E,0x4E5F,0x4E60,0x4E61,
-    	0x4EE2,0x4EE3,0x4EE4,0x4EE5,0x4EE6,0x4EE7,0x4EE8,0x4EE9,0x4E6A,0x4E6B,
-    	0x4E6C,0x4E6D,0x4E6E,0x4E6F,0x4EF0,0x4EF1,0x4EF2,0x4EF3,0x4EF4,0x4EF5,
-    	0x4EF6,0x4EF7,0x4EF8,0x4EF9,0x4E7A,0x4E7B,0x4E7C,0x4E7D,0x4E7E,0x4E7F,
-    	
-    	0x4F40,0x4FC1,0x4FC2,0x4FC3,0x4FC4,0x4FC5,0x4FC6,0x4FC7,0x4FC8,0x4FC9,
-    	0x4F4A,0x4F4B,0x4F4C,0x4F4D,0x4F4E,0x4F4F,0x4F50,0x4FD1,0x4FD2,0x4FD3,
-    	0x4FD4,0x4FD5,0x4FD6,0x4FD7,0x4FD8,0x4FD9,0x4F5A,0x4F5B,0x4F5C,0x4F5D,
-    	0x4F5E,0x4F5F,0x4F60,0x4F61,0x4FE2,0x4FE3,0x4FE4,0x4FE5,0x4FE6,0x4FE7,
-    	0x4FE8,0x4FE9,0x4F6A,0x4F6B,0x4F6C,0x4F6D,0x4F6E,0x4F6F,0x4FF0,0x4FF1,
-    	0x4FF2,0x4FF3,0x4FF4,0x4FF5,0x4FF6,0x4FF7,0x4FF8,0x4FF9,0x4F7A,0x4F7B,
-    	0x4F7C,0x4F7D,0x4F7E,0x4F7F,0x5040,0x50C1,0x50C2,0x50C3,0x50C4,0x50C5,
-    	0x50C6,0x50C7,0x50C8,0x50C9,0x504A,0x504B,0x504C,0x504D,0x504E,0x504F,
-    	
-    	0x5050,0x50D1,0x50D2,0x50D3,0x50D4,0x50D5,0x50D6,0x50D7,0x50D8,0x50D9,
-    	0x505A,0x505B,0x505C,0x505D,0x505E,0x505F,0x5060,0x5061,0x50E2,0x50E3,
-    	0x50E4,0x50E5,0x50E6,0x50E7,0x50E8,0x50E9,0x506A,0x506B,0x506C,0x506D,
-    	0x506E,0x506F,0x50F0,0x50F1,0x50F2,0x50F3,0x50F4,0x50F5,0x50F6,0x50F7,
-    	0x50F8,0x50F9,0x507A,0x507B,0x507C,0x507D,0x507E,0x507F,0xD140,0xD1C1,
-    	0xD1C2,0xD1C3,0xD1C4,0xD1C5,0xD1C6,0xD1C7,0xD1C8,0xD1C9,0xD14A,0xD14B,
-    	0xD14C,0xD14D,0xD14E,0xD14F,0xD150,0xD1D1,0xD1D2,0xD1D3,0xD1D4,0xD1D5,
-    	0xD1D6,0xD1D7,0xD1D8,0xD1D9,0xD15A,0xD15B,0xD15C,0xD15D,0xD15E,0xD15F,
-    	
-    	0xD160,0xD161,0xD1E2,0xD1E3,0xD1E4,0xD1E5,0xD1E6,0xD1E7,0xD1E8,0xD1E9,
-    	0xD16A,0xD16B,0xD16C,0xD16D,0xD16E,0xD16F,0xD1F0,0xD1F1,0xD1F2,0xD1F3,
-    	0xD1F4,0xD1F5,0xD1F6,0xD1F7,0xD1F8,0xD1F9,0xD17A,0xD17B,0xD17C,0xD17D,
-    	0xD17E,0xD17F,0xD240,0xD2C1,0xD2C2,0xD2C3,0xD2C4,0xD2C5,0xD2C6,0xD2C7,
-    	0xD2C8,0xD2C9,0xD24A,0xD24B,0xD24C,0xD24D,0xD24E,0xD24F,0xD250,0xD2D1,
-    	0xD2D2,0xD2D3,0xD2D4,0xD2D5,0xD2D6,0xD2D7,0xD2D8,0xD2D9,0xD25A,0xD25B,
-    	0xD25C,0xD25D,0xD25E,0xD25F,0xD260,0xD261,0xD2E2,0xD2E3,0xD2E4,0xD2E5,
-    	0xD2E6,0xD2E7,0xD2E8,0xD2E9,0xD26A,0xD26B,0xD26C,0xD26D,0xD26E,0xD26F,
-    	
-    	0xD2F0,0xD2F1,0xD2F2,0xD2F3,0xD2F4,0xD2F5,0xD2F6,0xD2F7,0xD2F8,0xD2F9,
-    	0xD27A,0xD27B,0xD27C,0xD27D,0xD27E,0xD27F,0xD340,0xD3C1,0xD3C2,0xD3C3,
-    	0xD3C4,0xD3C5,0xD3C6,0xD3C7,0xD3C8,0xD3C9,0xD34A,0xD34B,0xD34C,0xD34D,
-    	0xD34E,0xD34F,0xD350,0xD3D1,0xD3D2,0xD3D3,0xD3D4,0xD3D5,0xD3D6,0xD3D7,
-    	0xD3D8,0xD3D9,0xD35A,0xD35B,0xD35C,0xD35D,0xD35E,0xD35F,0xD360,0xD361,
-    	0xD3E2,0xD3E3,0xD3E4,0xD3E5,0xD3E6,0xD3E7,0xD3E8,0xD3E9,0xD36A,0xD36B,
-    	0xD36C,0xD36D,0xD36E,0xD36F,0xD3F0,0xD3F1,0xD3F2,0xD3F3,0xD3F4,0xD3F5,
-    	0xD3F6,0xD3F7,0xD3F8,0xD3F9,0xD37A,0xD37B,0xD37C,0xD37D,0xD37E,0xD37F,
-    	
-    	0xD440,0xD4C1,0xD4C2,0xD4C3,0xD4C4,0xD4C5,0xD4C6,0xD4C7,0xD4C8,0xD4C9,
-    	0xD44A,0xD44B,0xD44C,0xD44D,0xD44E,0xD44F,0xD450,0xD4D1,0xD4D2,0xD4D3,
-    	0xD4D4,0xD4D5,0xD4D6,0xD4D7,0xD4D8,0xD4D9,0xD45A,0xD45B,0xD45C,0xD45D,
-    	0xD45E,0xD45F,0xD460,0xD461,0xD4E2,0xD4E3,0xD4E4,0xD4E5,0xD4E6,0xD4E7,
-    	0xD4E8,0xD4E9,0xD46A,0xD46B,0xD46C,0xD46D,0xD46E,0xD46F,0xD4F0,0xD4F1,
-    	0xD4F2,0xD4F3,0xD4F4,0xD4F5,0xD4F6,0xD4F7,0xD4F8,0xD4F9,0xD47A,0xD47B,
-    	0xD47C,0xD47D,0xD47E,0xD47F,0xD540,0xD5C1,0xD5C2,0xD5C3,0xD5C4,0xD5C5,
-    	0xD5C6,0xD5C7,0xD5C8,0xD5C9,0xD54A,0xD54B,0xD54C,0xD54D,0xD54E,0xD54F,
-    	
-    	0xD550,0xD5D1,0xD5D2,0xD5D3,0xD5D4,0xD5D5,0xD5D6,0xD5D7,0xD5D8,0xD5D9,
-    	0xD55A,0xD55B,0xD55C,0xD55D,0xD55E,0xD55F,0xD560,0xD561,0xD5E2,0xD5E3,
-    	0xD5E4,0xD5E5,0xD5E6,0xD5E7,0xD5E8,0xD5E9,0xD56A,0xD56B,0xD56C,0xD56D,
-    	0xD56E,0xD56F,0xD5F0,0xD5F1,0xD5F2,0xD5F3,0xD5F4,0xD5F5,0xD5F6,0xD5F7,
-    	0xD5F8,0xD5F9,0xD57A,0xD57B,0xD57C,0xD57D,0xD57E,0xD57F,0xD640,0xD6C1,
-    	0xD6C2,0xD6C3,0xD6C4,0xD6C5,0xD6C6,0xD6C7,0xD6C8,0xD6C9,0xD64A,0xD64B,
-    	0xD64C,0xD64D,0xD64E,0xD64F,0xD650,0xD6D1,0xD6D2,0xD6D3,0xD6D4,0xD6D5,
-    	0xD6D6,0xD6D7,0xD6D8,0xD6D9,0xD65A,0xD65B,0xD65C,0xD65D,0xD65E,0xD65F,
-    	
-    	0xD660,0xD661,0xD6E2,0xD6E3,0xD6E4,0xD6E5,0xD6E6,0xD6E7,0xD6E8,0xD6E9,
-    	0xD66A,0xD66B,0xD66C,0xD66D,0xD66E,0xD66F,0xD6F0,0xD6F1,0xD6F2,0xD6F3,
-    	0xD6F4,0xD6F5,0xD6F6,0xD6F7,0xD6F8,0xD6F9,0xD67A,0xD67B,0xD67C,0xD67D,
-    	0xD67E,0xD67F,0xD740,0xD7C1,0xD7C2,0xD7C3,0xD7C4,0xD7C5,0xD7C6,0xD7C7,
-    	0xD7C8,0xD7C9,0xD74A,0xD74B,0xD74C,0xD74D,0xD74E,0xD74F,0xD750,0xD7D1,
-    	0xD7D2,0xD7D3,0xD7D4,0xD7D5,0xD7D6,0xD7D7,0xD7D8,0xD7D9,0xD75A,0xD75B,
-    	0xD75C,0xD75D,0xD75E,0xD75F,0xD760,0xD761,0xD7E2,0xD7E3,0xD7E4,0xD7E5,
-    	0xD7E6,0xD7E7,0xD7E8,0xD7E9,0xD76A,0xD76B,0xD76C,0xD76D,0xD76E,0xD76F,
-    	
-    	0xD7F0,0xD7F1,0xD7F2,0xD7F3,0xD7F4,0xD7F5,0xD7F6,0xD7F7,0xD7F8,0xD7F9,
-    	0xD77A,0xD77B,0xD77C,0xD77D,0xD77E,0xD77F,0xD840,0xD8C1,0xD8C2,0xD8C3,
-    	0xD8C4,0xD8C5,0xD8C6,0xD8C7,0xD8C8,0xD8C9,0xD84A,0xD84B,0xD84C,0xD84D,
-    	0xD84E,0xD84F,0xD850,0xD8D1,0xD8D2,0xD8D3,0xD8D4,0xD8D5,0xD8D6,0xD8D7,
-    	0xD8D8,0xD8D9,0xD85A,0xD85B,0xD85C,0xD85D,0xD85E,0xD85F,0xD860,0xD861,
-    	0xD8E2,0xD8E3,0xD8E4,0xD8E5,0xD8E6,0xD8E7,0xD8E8,0xD8E9,0xD86A,0xD86B,
-    	0xD86C,0xD86D,0xD86E,0xD86F,0xD8F0,0xD8F1,0xD8F2,0xD8F3,0xD8F4,0xD8F5,
-    	0xD8F6,0xD8F7,0xD8F8,0xD8F9,0xD87A,0xD87B,0xD87C,0xD87D,0xD87E,0xD87F,
-    	
-    	0xD940,0xD9C1,0xD9C2,0xD9C3,0xD9C4,0xD9C5,0xD9C6,0xD9C7,0xD9C8,0xD9C9,
-    	0xD94A,0xD94B,0xD94C,0xD94D,0xD94E,0xD94F,0xD950,0xD9D1,0xD9D2,0xD9D3,
-    	0xD9D4,0xD9D5,0xD9D6,0xD9D7,0xD9D8,0xD9D9,0xD95A,0xD95B,0xD95C,0xD95D,
-    	0xD95E,0xD95F,0xD960,0xD961,0xD9E2,0xD9E3,0xD9E4,0xD9E5,0xD9E6,0xD9E7,
-    	0xD9E8,0xD9E9,0xD96A,0xD96B,0xD96C,0xD96D,0xD96E,0xD96F,0xD9F0,0xD9F1,
-    	0xD9F2,0xD9F3,0xD9F4,0xD9F5,0xD9F6,0xD9F7,0xD9F8,0xD9F9,0xD97A,0xD97B,
-    	0xD97C,0xD97D,0xD97E,0xD97F,0x5A40,0x5AC1,0x5AC2,0x5AC3,0x5AC4,0x5AC5,
-    	0x5AC6,0x5AC7,0x5AC8,0x5AC9,0x5A4A,0x5A4B,0x5A4C,0x5A4D,0x5A4E,0x5A4F,
-    	
-    	0x5A50,0x5AD1,0x5AD2,0x5AD3,0x5AD4,0x5AD5,0x5AD6,0x5AD7,0x5AD8,0x5AD9,
-    	0x5A5A,0x5A5B,0x5A5C,0x5A5D,0x5A5E,0x5A5F,0x5A60,0x5A61,0x5AE2,0x5AE3,
-    	0x5AE4,0x5AE5,0x5AE6,0x5AE7,0x5AE8,0x5AE9,0x5A6A,0x5A6B,0x5A6C,0x5A6D,
-    	0x5A6E,0x5A6F,0x5AF0,0x5AF1,0x5AF2,0x5AF3,0x5AF4,0x5AF5,0x5AF6,0x5AF7,
-    	0x5AF8,0x5AF9,0x5A7A,0x5A7B,0x5A7C,0x5A7D,0x5A7E,0x5A7F,0x5B40,0x5BC1,
-    	0x5BC2,0x5BC3,0x5BC4,0x5BC5,0x5BC6,0x5BC7,0x5BC8,0x5BC9,0x5B4A,0x5B4B,
-    	0x5B4C,0x5B4D,0x5B4E,0x5B4F,0x5B50,0x5BD1,0x5BD2,0x5BD3,0x5BD4,0x5BD5,
-    	0x5BD6,0x5BD7,0x5BD8,0x5BD9,0x5B5A,0x5B5B,0x5B5C,0x5B5D,0x5B5E,0x5B5F,
-    	
-    	0x5B60,0x5B61,0x5BE2,0x5BE3,0x5BE4,0x5BE5,0x5BE6,0x5BE7,0x5BE8,0x5BE9,
-    	0x5B6A,0x5B6B,0x5B6C,0x5B6D,0x5B6E,0x5B6F,0x5BF0,0x5BF1,0x5BF2,0x5BF3,
-    	0x5BF4,0x5BF5,0x5BF6,0x5BF7,0x5BF8,0x5BF9,0x5B7A,0x5B7B,0x5B7C,0x5B7D,
-    	0x5B7E,0x5B7F,0x5C40,0x5CC1,0x5CC2,0x5CC3,0x5CC4,0x5CC5,0x5CC6,0x5CC7,
-    	0x5CC8,0x5CC9,0x5C4A,0x5C4B,0x5C4C,0x5C4D,0x5C4E,0x5C4F,0x5C50,0x5CD1,
-    	0x5CD2,0x5CD3,0x5CD4,0x5CD5,0x5CD6,0x5CD7,0x5CD8,0x5CD9,0x5C5A,0x5C5B,
-    	0x5C5C,0x5C5D,0x5C5E,0x5C5F,0x5C60,0x5C61,0x5CE2,0x5CE3,0x5CE4,0x5CE5,
-    	0x5CE6,0x5CE7,0x5CE8,0x5CE9,0x5C6A,0x5C6B,0x5C6C,0x5C6D,0x5C6E,0x5C6F,
-    	
-    	0x5CF0,0x5CF1,0x5CF2,0x5CF3,0x5CF4,0x5CF5,0x5CF6,0x5CF7,0x5CF8,0x5CF9,
-    	0x5C7A,0x5C7B,0x5C7C,0x5C7D,0x5C7E,0x5C7F,0x5D40,0x5DC1,0x5DC2,0x5DC3,
-    	0x5DC4,0x5DC5,0x5DC6,0x5DC7,0x5DC8,0x5DC9,0x5D4A,0x5D4B,0x5D4C,0x5D4D,
-    	0x5D4E,0x5D4F,0x5D50,0x5DD1,0x5DD2,0x5DD3,0x5DD4,0x5DD5,0x5DD6,0x5DD7,
-    	0x5DD8,0x5DD9,0x5D5A,0x5D5B,0x5D5C,0x5D5D,0x5D5E,0x5D5F,0x5D60,0x5D61,
-    	0x5DE2,0x5DE3,0x5DE4,0x5DE5,0x5DE6,0x5DE7,0x5DE8,0x5DE9,0x5D6A,0x5D6B,
-    	0x5D6C,0x5D6D,0x5D6E,0x5D6F,0x5DF0,0x5DF1,0x5DF2,0x5DF3,0x5DF4,0x5DF5,
-    	0x5DF6,0x5DF7,0x5DF8,0x5DF9,0x5D7A,0x5D7B,0x5D7C,0x5D7D,0x5D7E,0x5D7F
-    };
 }
@@ -0,0 +1,91 @@
+package org.me.ibm;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * Flight Recorder events for the session's main operations, they show up in JMC under TN3270.
+ * Each event has a default threshold so only the slow cases get written, lower it per event in a
+ * .jfc settings file (JMC's template manager edits them) passed as
+ * -XX:StartFlightRecording:settings=tn3270.jfc. With no recording running begin()/commit() cost
+ * next to nothing.
+ */
+public final class Tn3270Events {
+	private static final String CATEGORY = "TN3270";
+
+	private Tn3270Events() {
+	}
+
+	@Name("org.me.ibm.Negotiation")
+	@Label("Telnet Negotiation")
+	@Description("A phase of telnet option negotiation, the whole exchange or one command from the host")
+	@Category(CATEGORY)
+	@Threshold("0 ms")
+	static final class Negotiation extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Option")
+		int option;
+	}
+
+	@Name("org.me.ibm.Record")
+	@Label("Inbound Record")
+	@Description("A host record applied to the buffer, until the snapshot is published")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static final class Record extends Event {
+		@Label("Command")
+		int command;
+
+		@Label("WCC")
+		int wcc;
+
+		@Label("Size")
+		@DataAmount
+		int bytes;
+	}
+
+	@Name("org.me.ibm.Aid")
+	@Label("AID Key")
+	@Description("An AID sent to the host, from writing the record until the answer unblocked the sender")
+	@Category(CATEGORY)
+	@Threshold("20 ms")
+	static final class Aid extends Event {
+		@Label("AID")
+		int aid;
+
+		@Label("Size")
+		@DataAmount
+		int bytes;
+	}
+
+	@Name("org.me.ibm.LockWait")
+	@Label("Buffer Lock Wait")
+	@Description("Time spent waiting for the buffer lock")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static final class LockWait extends Event {
+		@Label("Acquired")
+		boolean acquired;
+	}
+
+	@Name("org.me.ibm.ListenerDispatch")
+	@Label("Listener Dispatch")
+	@Description("Calling the screen listeners for a record, or handing them to the dispatcher")
+	@Category(CATEGORY)
+	@Threshold("1 ms")
+	static final class ListenerDispatch extends Event {
+		@Label("Listeners")
+		int listeners;
+
+		@Label("Dispatched")
+		@Description("Handed to a ScreenChangeDispatcher instead of called in place")
+		boolean dispatched;
+	}
+}
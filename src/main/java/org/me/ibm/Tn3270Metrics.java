@@ -0,0 +1,206 @@
+package org.me.ibm;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Registry of the connected sessions' metrics plus a total over every session that was ever
+ * registered. Tn3270 registers on connect and unregisters on disconnect. Pull the numbers with
+ * getSessions()/getTotal(), or call registerMBeans() once to publish them over JMX as
+ * org.me.ibm:type=Tn3270Metrics,name=total and org.me.ibm:type=Session,name=<session>.
+ * The total is summed when it is read, from the live sessions plus what the closed ones left
+ * behind, so sessions never write to shared counters while recording.
+ */
+public final class Tn3270Metrics {
+	private static final String DOMAIN = "org.me.ibm";
+	private static final Tn3270Metrics DEFAULT = new Tn3270Metrics();
+
+	private final SessionMetrics retired = new SessionMetrics();
+	private final Map<String, SessionMetrics> sessions = new ConcurrentHashMap<>();
+	private final AtomicLong nextId = new AtomicLong();
+	private volatile MBeanServer server;
+
+	public Tn3270Metrics() {
+		retired.enableHistograms();
+	}
+
+	public static Tn3270Metrics getDefault() {
+		return DEFAULT;
+	}
+
+	// a new sum on every call, sessions still recording may be part way through a record
+	public synchronized SessionMetrics getTotal() {
+		SessionMetrics total = new SessionMetrics();
+		total.enableHistograms();
+		total.add(retired);
+		for (SessionMetrics metrics : sessions.values()) {
+			total.add(metrics);
+		}
+		return total;
+	}
+
+	public Map<String, SessionMetrics> getSessions() {
+		return Collections.unmodifiableMap(sessions);
+	}
+
+	// the name gets a sequence number so several sessions to the same host stay apart, returns it
+	public String register(String name, SessionMetrics metrics) {
+		String key = name + "#" + nextId.incrementAndGet();
+		metrics.enableHistograms();
+		sessions.put(key, metrics);
+
+		MBeanServer current = server;
+		if (current != null) {
+			register(current, sessionName(key), metrics);
+		}
+		return key;
+	}
+
+	// the session's counts stay in the total
+	public void unregister(String key) {
+		if (key == null) {
+			return;
+		}
+		synchronized (this) {
+			SessionMetrics metrics = sessions.remove(key);
+			if (metrics == null) {
+				return;
+			}
+			retired.add(metrics);
+		}
+
+		MBeanServer current = server;
+		if (current != null) {
+			try {
+				current.unregisterMBean(sessionName(key));
+			} catch (JMException e) {
+				assert true;
+			}
+		}
+	}
+
+	public synchronized void registerMBeans() {
+		registerMBeans(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public synchronized void registerMBeans(MBeanServer mbeanServer) {
+		if (server != null) {
+			return;
+		}
+		server = mbeanServer;
+		register(mbeanServer, objectName("type=Tn3270Metrics,name=total"), new Total());
+		for (Map.Entry<String, SessionMetrics> entry : sessions.entrySet()) {
+			register(mbeanServer, sessionName(entry.getKey()), entry.getValue());
+		}
+	}
+
+	private static void register(MBeanServer mbeanServer, ObjectName name, SessionMetricsMXBean metrics) {
+		try {
+			if (!mbeanServer.isRegistered(name)) {
+				mbeanServer.registerMBean(metrics, name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register " + name + " with JMX.", e);
+		}
+	}
+
+	// resets the live sessions too, a total that jumped back up right after reset would be odd
+	private synchronized void reset() {
+		retired.reset();
+		for (SessionMetrics metrics : sessions.values()) {
+			metrics.reset();
+		}
+	}
+
+	// the JMX view of getTotal(), summed again on every attribute read
+	private final class Total implements SessionMetricsMXBean {
+		@Override
+		public long getRecordsReceived() {
+			return getTotal().getRecordsReceived();
+		}
+
+		@Override
+		public long getBytesReceived() {
+			return getTotal().getBytesReceived();
+		}
+
+		@Override
+		public long getRecordsSent() {
+			return getTotal().getRecordsSent();
+		}
+
+		@Override
+		public long getBytesSent() {
+			return getTotal().getBytesSent();
+		}
+
+		@Override
+		public long getEorSignaledCount() {
+			return getTotal().getEorSignaledCount();
+		}
+
+		@Override
+		public long getEorSuppressedCount() {
+			return getTotal().getEorSuppressedCount();
+		}
+
+		@Override
+		public long getLockTryAcquiredCount() {
+			return getTotal().getLockTryAcquiredCount();
+		}
+
+		@Override
+		public long getLockTryMissedCount() {
+			return getTotal().getLockTryMissedCount();
+		}
+
+		@Override
+		public Map<String, Long> getOrderCounts() {
+			return getTotal().getOrderCounts();
+		}
+
+		@Override
+		public Map<String, Double> getParseTimeMicros() {
+			return getTotal().getParseTimeMicros();
+		}
+
+		@Override
+		public Map<String, Double> getLockWaitTimeMicros() {
+			return getTotal().getLockWaitTimeMicros();
+		}
+
+		@Override
+		public Map<String, Double> getAidLatencyMicros() {
+			return getTotal().getAidLatencyMicros();
+		}
+
+		@Override
+		public Map<String, Double> getListenerDispatchTimeMicros() {
+			return getTotal().getListenerDispatchTimeMicros();
+		}
+
+		@Override
+		public void reset() {
+			Tn3270Metrics.this.reset();
+		}
+	}
+
+	private static ObjectName sessionName(String key) {
+		return objectName("type=Session,name=" + ObjectName.quote(key));
+	}
+
+	private static ObjectName objectName(String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties);
+		} catch (JMException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
@@ -0,0 +1,457 @@
+package org.me.ibm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+ * Drives many Tn3270 sessions from a small pool of selector threads instead of one
+ * blocking parser thread per session. Each event loop reads whatever is available on
+ * its channels, runs telnet negotiation and record framing, and hands complete records
+ * to the session's DataStreamParser. Buffer and Screen are used exactly as in the
+ * blocking mode, except that a record arriving while a user thread holds the buffer lock
+ * is kept and retried every millisecond instead of parking the loop. A session with
+ * too many records waiting stops reading until they are applied.
+ */
+public class Tn3270SessionEngine implements AutoCloseable {
+	private static final int READ_BUFFER_SIZE = 16384;
+	private static final long DEFERRED_RETRY_MILLIS = 1;
+	private static final int MAX_DEFERRED_RECORDS = 32;
+
+	private final EventLoop[] loops;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicInteger sessionCount = new AtomicInteger();
+	private volatile boolean running;
+
+	public Tn3270SessionEngine() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	public Tn3270SessionEngine(int eventLoops) {
+		if (eventLoops <= 0) {
+			throw new IllegalArgumentException("At least one event loop is required.");
+		}
+
+		this.running = true;
+		this.loops = new EventLoop[eventLoops];
+		for (int i = 0; i < eventLoops; i++) {
+			try {
+				loops[i] = new EventLoop(Selector.open(), "TN3270-EventLoop-" + i);
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("Unable to open selector", e);
+			}
+			loops[i].thread.start();
+		}
+	}
+
+	public int getEventLoopCount() {
+		return loops.length;
+	}
+
+	public int getSessionCount() {
+		return sessionCount.get();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	// trace may be null, otherwise everything read and written on the channel is appended to it.
+	// configure sets up the negotiator (TN3270E, device name) before the first option goes out
+	ChannelSession register(SocketChannel channel, Buffer buffer, SessionTrace trace, Consumer<TelnetOptionsNegotiator> configure, Runnable onClose) throws IOException {
+		if (!running) {
+			throw new IOException("Session engine is closed.");
+		}
+
+		channel.configureBlocking(false);
+
+		EventLoop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+		ChannelSession session = new ChannelSession(loop, channel, buffer, trace, configure, onClose);
+		sessionCount.incrementAndGet();
+
+		// registration and the initial telnet options have to happen on the loop thread
+		loop.execute(session::open);
+		return session;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		for (EventLoop loop : loops) {
+			if (loop != null) {
+				loop.selector.wakeup();
+			}
+		}
+	}
+
+	private class EventLoop implements Runnable {
+		private final Selector selector;
+		private final Thread thread;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		// sessions with records waiting for the buffer lock, only touched by the loop thread
+		private final Set<ChannelSession> deferred = new LinkedHashSet<>();
+		// one read buffer per loop, the parser copies what it needs into its own record buffer
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		private EventLoop(Selector selector, String name) {
+			this.selector = selector;
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+		}
+
+		private void execute(Runnable task) {
+			tasks.add(task);
+			if (Thread.currentThread() != thread) {
+				selector.wakeup();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					runTasks();
+					if (deferred.isEmpty()) {
+						selector.select();
+					} else {
+						selector.select(DEFERRED_RETRY_MILLIS);
+						retryDeferred();
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						ChannelSession session = (ChannelSession) key.attachment();
+						try {
+							if (key.isValid() && key.isReadable()) {
+								session.read(readBuffer);
+							}
+							if (key.isValid() && key.isWritable()) {
+								session.writePending();
+							}
+						} catch (IOException | CancelledKeyException e) {
+							session.close();
+						} catch (RuntimeException e) {
+							// a parser or listener bug takes down its own session, not the loop
+							fail(session, e);
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Session engine event loop error: " + e.getMessage());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					((ChannelSession) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					assert true;
+				}
+			}
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					System.err.println("Session engine task failed: " + e);
+				}
+			}
+		}
+
+		private void retryDeferred() {
+			Iterator<ChannelSession> sessions = deferred.iterator();
+			while (sessions.hasNext()) {
+				ChannelSession session = sessions.next();
+				try {
+					if (session.isClosed() || session.processDeferred()) {
+						sessions.remove();
+					}
+				} catch (IOException e) {
+					sessions.remove();
+					session.close();
+				} catch (RuntimeException e) {
+					sessions.remove();
+					fail(session, e);
+				}
+			}
+		}
+
+		private void fail(ChannelSession session, RuntimeException e) {
+			System.err.println("Session engine closing session after error: " + e);
+			e.printStackTrace();
+			session.close();
+		}
+	}
+
+	class ChannelSession {
+		private final EventLoop loop;
+		private final SocketChannel channel;
+		private final Runnable onClose;
+		private final SessionTrace trace;
+		private final TelnetOptionsNegotiator negotiator;
+		private final DataStreamParser parser;
+		private final ChannelOutputStream outputStream;
+		private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+		private SelectionKey key;
+		private boolean negotiated;
+		private boolean readPaused;
+		// closed from the loop, from user threads and by ChannelOutputStream, only the first one counts
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private ChannelSession(EventLoop loop, SocketChannel channel, Buffer buffer, SessionTrace trace, Consumer<TelnetOptionsNegotiator> configure, Runnable onClose) {
+			this.loop = loop;
+			this.channel = channel;
+			this.onClose = onClose;
+			this.trace = trace;
+			this.outputStream = new ChannelOutputStream(this);
+			// the negotiator is only fed through processOngoingTelnetByte, it never reads itself
+			this.negotiator = new TelnetOptionsNegotiator(null, outputStream);
+			this.negotiator.setBuffer(buffer);
+			configure.accept(negotiator);
+			this.parser = new DataStreamParser(buffer, null);
+			this.parser.setNonBlocking(true);
+			this.negotiated = false;
+		}
+
+		private void open() {
+			try {
+				key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+				negotiator.sendInitialOptions();
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		private void read(ByteBuffer readBuffer) throws IOException {
+			while (!readPaused) {
+				readBuffer.clear();
+				int count = channel.read(readBuffer);
+
+				if (count == -1) {
+					throw new ClosedChannelException();
+				}
+				if (count == 0) {
+					return;
+				}
+
+				receive(readBuffer.array(), 0, count);
+				if (parser.getDeferredCount() > 0) {
+					loop.deferred.add(this);
+					if (parser.getDeferredCount() >= MAX_DEFERRED_RECORDS) {
+						// the rest stays in the socket until the user thread lets go of the buffer
+						readPaused = true;
+						updateInterest();
+					}
+				}
+			}
+		}
+
+		// true once nothing is waiting any more
+		private boolean processDeferred() throws IOException {
+			boolean done = parser.processDeferred();
+			if (readPaused && parser.getDeferredCount() < MAX_DEFERRED_RECORDS) {
+				readPaused = false;
+				updateInterest();
+			}
+			return done;
+		}
+
+		private void updateInterest() {
+			if (closed.get() || key == null) {
+				return;
+			}
+			int ops = (readPaused ? 0 : SelectionKey.OP_READ);
+			if (!pending.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(ops);
+		}
+
+		private void receive(byte[] data, int offset, int length) throws IOException {
+			if (trace != null) {
+				trace.inbound(data, offset, length);
+			}
+
+			int i = offset;
+			int end = offset + length;
+
+			// telnet negotiation runs until the first byte of 3270 data shows up
+			while (!negotiated && i < end) {
+				Integer dataByte = negotiator.processOngoingTelnetByte(data[i]);
+
+				if (dataByte == null) {
+					negotiated = true;
+					parser.begin(-1);
+				} else {
+					i++;
+					if (dataByte >= 0) {
+						negotiated = true;
+						parser.begin(dataByte);
+					}
+				}
+			}
+
+			if (i < end) {
+				parser.receive(data, i, end - i);
+			}
+		}
+
+		private void enqueue(ByteBuffer data) {
+			loop.execute(() -> {
+				pending.add(data);
+				try {
+					writePending();
+				} catch (IOException e) {
+					close();
+				}
+			});
+		}
+
+		private void writePending() throws IOException {
+			if (closed.get() || key == null) {
+				return;
+			}
+
+			ByteBuffer head;
+			while ((head = pending.peek()) != null) {
+				channel.write(head);
+				if (head.hasRemaining()) {
+					// socket buffer is full, continue when the channel becomes writable
+					updateInterest();
+					return;
+				}
+				outputStream.recycle(pending.poll());
+			}
+			updateInterest();
+		}
+
+		TelnetOptionsNegotiator negotiator() {
+			return negotiator;
+		}
+
+		DataStreamParser parser() {
+			return parser;
+		}
+
+		OutputStream outputStream() {
+			return outputStream;
+		}
+
+		SocketChannel channel() {
+			return channel;
+		}
+
+		boolean isClosed() {
+			return closed.get();
+		}
+
+		void close() {
+			if (!closed.compareAndSet(false, true)) {
+				return;
+			}
+			sessionCount.decrementAndGet();
+			parser.stop();
+
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				assert true;
+			}
+
+			if (onClose != null) {
+				onClose.run();
+			}
+		}
+	}
+
+	// collects everything written until flush() and hands it to the event loop as one write. The
+	// loop gives the buffer back once it is on the wire, so a session that waits for the answer
+	// to each record keeps sending from the same one
+	private static class ChannelOutputStream extends OutputStream {
+		private static final int INITIAL_CAPACITY = 512;
+
+		private final ChannelSession session;
+		private final RecordBuffer data = new RecordBuffer(INITIAL_CAPACITY);
+		private ByteBuffer spare;
+
+		private ChannelOutputStream(ChannelSession session) {
+			this.session = session;
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			ensureOpen();
+			data.append((byte) b);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			data.append(b, off, len);
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			ensureOpen();
+			if (data.isEmpty()) {
+				return;
+			}
+
+			if (session.trace != null) {
+				session.trace.outbound(data.array(), 0, data.length());
+			}
+
+			ByteBuffer out = spare;
+			if (out == null || out.capacity() < data.length()) {
+				out = ByteBuffer.allocate(Math.max(data.length(), INITIAL_CAPACITY));
+			}
+			spare = null;
+			out.clear();
+			out.put(data.array(), 0, data.length()).flip();
+			data.reset();
+			session.enqueue(out);
+		}
+
+		// called by the loop with a buffer that was written completely
+		private synchronized void recycle(ByteBuffer written) {
+			if (spare == null || written.capacity() > spare.capacity()) {
+				spare = written;
+			}
+		}
+
+		@Override
+		public void close() {
+			session.close();
+		}
+
+		private void ensureOpen() throws IOException {
+			if (session.isClosed()) {
+				throw new IOException("Session is closed.");
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package org.me.ibm;
+
+import java.util.concurrent.ThreadFactory;
+
+public final class Tn3270Threads {
+	private static final String PARSER_THREAD_NAME = "TN3270-Parser";
+	
+	// Thread.ofVirtual() only exists from Java 21 on, the project still builds for 17 so it is looked up reflectively
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+	
+	private Tn3270Threads() {
+	}
+	
+	public static ThreadFactory platformThreadFactory() {
+		return runnable -> {
+			Thread thread = new Thread(runnable, PARSER_THREAD_NAME);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREAD_FACTORY != null;
+	}
+	
+	public static ThreadFactory virtualThreadFactory() {
+		if (VIRTUAL_THREAD_FACTORY == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+		}
+		return VIRTUAL_THREAD_FACTORY;
+	}
+	
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, PARSER_THREAD_NAME + "-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
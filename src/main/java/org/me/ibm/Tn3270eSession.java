@@ -0,0 +1,132 @@
+package org.me.ibm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * What a TN3270E negotiation (RFC 2355) agreed on: device type, the LU the host connected us
+ * to and the functions both sides support. Once the buffer has one, every record in either
+ * direction starts with the 5 byte TN3270E header. The parser and the screen use it under the
+ * buffer lock, for the record headers and for responses to host records that ask for one.
+ */
+public class Tn3270eSession {
+	private final OutputStream outputStream;
+	private final String deviceType;
+	private final String deviceName;
+	private final int functions;
+	private final RecordBuffer response = new RecordBuffer(16);
+
+	private volatile byte[] bindImage;
+	// the host is talking to us from the SSCP (after SYSREQ or before a BIND), not the application
+	private volatile boolean sscpMode;
+	private int nextSequence = 0;
+	private long positiveResponses = 0;
+	private long negativeResponses = 0;
+
+	public Tn3270eSession(OutputStream outputStream, String deviceType, String deviceName, int functions) {
+		this.outputStream = outputStream;
+		this.deviceType = deviceType;
+		this.deviceName = deviceName;
+		this.functions = functions;
+	}
+
+	public static int functionBit(byte function) {
+		return 1 << function;
+	}
+
+	public String getDeviceType() {
+		return deviceType;
+	}
+
+	// the LU, null if the host didn't say
+	public String getDeviceName() {
+		return deviceName;
+	}
+
+	public boolean hasFunction(byte function) {
+		return (functions & functionBit(function)) != 0;
+	}
+
+	public int getFunctions() {
+		return functions;
+	}
+
+	// the BIND RU as the host sent it, null while unbound or without the BIND-IMAGE function
+	public byte[] getBindImage() {
+		byte[] image = bindImage;
+		return (image != null ? image.clone() : null);
+	}
+
+	public boolean isBound() {
+		return bindImage != null;
+	}
+
+	void bind(byte[] image) {
+		this.bindImage = image;
+		this.sscpMode = false;
+	}
+
+	void unbind() {
+		this.bindImage = null;
+	}
+
+	public boolean isSscpMode() {
+		return sscpMode;
+	}
+
+	void setSscpMode(boolean sscpMode) {
+		this.sscpMode = sscpMode;
+	}
+
+	// call while holding the buffer lock, sequence numbers only count up when responses were agreed on
+	public RecordBuffer appendHeader(byte dataType, RecordBuffer out) {
+		int sequence = 0;
+		if (hasFunction(TelnetConstants.E_FUNC_RESPONSES)) {
+			sequence = nextSequence;
+			nextSequence = (nextSequence + 1) & 0x7FFF;
+		}
+
+		out.append(dataType);
+		out.append((byte) 0);
+		out.append(TelnetConstants.E_RSF_NO_RESPONSE);
+		out.appendEscaped((byte) (sequence >> 8));
+		out.appendEscaped((byte) sequence);
+		return out;
+	}
+
+	// call while holding the buffer lock, answers the host record with this sequence number
+	public void sendResponse(int sequence, boolean positive, byte code) throws IOException {
+		response.reset();
+		response.append(TelnetConstants.E_DT_RESPONSE);
+		response.append((byte) 0);
+		response.append(positive ? TelnetConstants.E_RSF_POSITIVE_RESPONSE : TelnetConstants.E_RSF_NEGATIVE_RESPONSE);
+		response.appendEscaped((byte) (sequence >> 8));
+		response.appendEscaped((byte) sequence);
+		response.append(code);
+		response.append(TelnetConstants.IAC);
+		response.append(TelnetConstants.EOR);
+
+		outputStream.write(response.array(), 0, response.length());
+		outputStream.flush();
+
+		if (positive) {
+			positiveResponses++;
+		} else {
+			negativeResponses++;
+		}
+	}
+
+	// SYSREQ is the telnet AO command once the SYSREQ function is on
+	public void sendSysReq() throws IOException {
+		outputStream.write(new byte[] { TelnetConstants.IAC, TelnetConstants.AO });
+		outputStream.flush();
+	}
+
+	public long getPositiveResponseCount() {
+		return positiveResponses;
+	}
+
+	public long getNegativeResponseCount() {
+		return negativeResponses;
+	}
+}
@@ -0,0 +1,158 @@
+package org.me.ibm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Plays a SessionTrace back into a Buffer through DataStreamParser, the same path a live
+ * session takes. The host's side of the negotiation goes through a TelnetOptionsNegotiator whose
+ * replies are dropped, so a TN3270E session comes back as one. Inbound entries are fed to the
+ * parser, outbound ones only set the AID key so the buffer's EOR handling behaves as it did in
+ * the session. A speed of 0 replays as fast as
+ * the parser goes, 1 keeps the original timing, 2 twice as fast and so on.
+ *
+ *   java -cp telnet_3.jar org.me.ibm.TraceReplay session.trace [speed]
+ */
+public class TraceReplay {
+	private final Path file;
+	private double speed;
+	private long entries;
+	private long bytes;
+	private long elapsedNanos;
+
+	public TraceReplay(Path file) {
+		this.file = file;
+	}
+
+	public void setSpeed(double speed) {
+		if (speed < 0) {
+			throw new IllegalArgumentException("Speed can't be negative.");
+		}
+		this.speed = speed;
+	}
+
+	public void replay(Buffer buffer) throws IOException, InterruptedException, TimeoutException {
+		DataStreamParser parser = new DataStreamParser(buffer, null);
+		TelnetOptionsNegotiator negotiator = new TelnetOptionsNegotiator(null, OutputStream.nullOutputStream());
+		negotiator.setBuffer(buffer);
+		negotiator.setTn3270eEnabled(true);
+		boolean negotiated = false;
+
+		entries = 0;
+		bytes = 0;
+		long start = System.nanoTime();
+		try (SessionTrace.Reader reader = SessionTrace.open(file)) {
+			while (reader.next()) {
+				if (speed > 0) {
+					long due = start + (long) (reader.getNanos() / speed);
+					long wait = due - System.nanoTime();
+					if (wait > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+				}
+
+				if (reader.isInbound()) {
+					byte[] data = reader.getData();
+					int i = 0;
+					// as in a live session the negotiation runs until the first byte of 3270 data
+					while (!negotiated && i < reader.getLength()) {
+						Integer dataByte = negotiator.processOngoingTelnetByte(data[i]);
+						if (dataByte == null) {
+							negotiated = true;
+							parser.begin(-1);
+						} else {
+							i++;
+							if (dataByte >= 0) {
+								negotiated = true;
+								parser.begin(dataByte);
+							}
+						}
+					}
+					if (i < reader.getLength()) {
+						parser.receive(data, i, reader.getLength() - i);
+					}
+					bytes += reader.getLength();
+				} else {
+					sent(buffer, reader.getData(), reader.getLength());
+				}
+				entries++;
+			}
+		} finally {
+			elapsedNanos = System.nanoTime() - start;
+			parser.stop();
+		}
+	}
+
+	// an inbound 3270 record starts with its AID (after the header on TN3270E), telnet replies start with IAC
+	private static void sent(Buffer buffer, byte[] data, int length) throws InterruptedException, TimeoutException {
+		int aid = aidOf(buffer.getTn3270e(), data, length);
+		if (aid < 0) {
+			return;
+		}
+
+		boolean gotLock = false;
+		try {
+			gotLock = buffer.acquireLock();
+			buffer.setAidKey(aid);
+			buffer.markAidSent();
+		} finally {
+			if (gotLock) {
+				buffer.unlock();
+			}
+		}
+	}
+
+	private static int aidOf(Tn3270eSession tn3270e, byte[] data, int length) {
+		if (length >= 2 && data[0] == TelnetConstants.IAC) {
+			return (data[1] == TelnetConstants.AO ? TelnetConstants.AID_SYSREQ & 0xFF : -1);
+		}
+		if (tn3270e == null) {
+			return (length > 0 ? data[0] & 0xFF : -1);
+		}
+		if (length > TelnetConstants.E_HEADER_SIZE && data[0] == TelnetConstants.E_DT_3270_DATA) {
+			return data[TelnetConstants.E_HEADER_SIZE] & 0xFF;
+		}
+		// the SSCP gets typed text without an AID, responses aren't keys at all
+		return (length > 0 && data[0] == TelnetConstants.E_DT_SSCP_LU_DATA ? TelnetConstants.AID_ENTER & 0xFF : -1);
+	}
+
+	public long getEntriesReplayed() {
+		return entries;
+	}
+
+	public long getBytesReplayed() {
+		return bytes;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: TraceReplay <trace file> [speed, 0 = as fast as possible]");
+			System.exit(1);
+		}
+
+		TraceReplay replay = new TraceReplay(Path.of(args[0]));
+		replay.setSpeed(args.length > 1 ? Double.parseDouble(args[1]) : 0);
+
+		Buffer buffer = new Buffer();
+		buffer.getMetrics().enableHistograms();
+		replay.replay(buffer);
+
+		SessionMetrics metrics = buffer.getMetrics();
+		double seconds = replay.getElapsedNanos() / 1e9;
+		System.out.println(buffer.getSnapshot().getString("\n"));
+		System.out.printf("%d entries, %d records, %d bytes in %.3f s (%.0f records/s, %.1f MB/s)%n",
+			replay.getEntriesReplayed(), metrics.getRecordsReceived(), replay.getBytesReplayed(), seconds,
+			metrics.getRecordsReceived() / seconds, replay.getBytesReplayed() / seconds / 1e6);
+		System.out.printf("parse p50 %.1f us, p99 %.1f us, max %.1f us%n",
+			metrics.getParseTime().getValueAtPercentile(50) / 1e3,
+			metrics.getParseTime().getValueAtPercentile(99) / 1e3,
+			metrics.getParseTime().getMax() / 1e3);
+	}
+}
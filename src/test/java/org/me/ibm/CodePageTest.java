@@ -0,0 +1,43 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class CodePageTest {
+	@Test
+	void lookupsShareOneInstance() {
+		CodePage codePage = CodePage.forCcsid(37);
+
+		assertSame(codePage, CodePage.forCcsid(37));
+		assertSame(codePage, CodePage.forName("IBM037"));
+		assertSame(codePage, CodePage.forName("cp037"));
+	}
+
+	@Test
+	void tablesRoundTrip() {
+		CodePage german = CodePage.forCcsid(273);
+
+		assertEquals('A', german.decode((byte) 0xC1));
+		assertEquals((byte) 0xC1, german.encode('A'));
+		assertEquals('\u00C4', german.decode(german.encode('\u00C4')));
+		// control codes show as blanks, unknown characters become EBCDIC spaces
+		assertEquals(' ', german.decode((byte) 0x05));
+		assertEquals((byte) 0x40, german.encode('\u4E00'));
+	}
+
+	@Test
+	void unsupportedCodePagesAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> CodePage.forCcsid(1));
+		assertThrows(IllegalArgumentException.class, () -> CodePage.forName("UTF-8"));
+		assertThrows(IllegalArgumentException.class, () -> CodePage.forName("no such charset"));
+	}
+
+	@Test
+	void defaultNeedsNoCharset() {
+		assertEquals('A', CodePage.DEFAULT.decode((byte) 0xC1));
+		assertEquals(0, CodePage.DEFAULT.getCcsid());
+	}
+}
@@ -0,0 +1,209 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.me.ibm.Records.EOR;
+import static org.me.ibm.Records.bytes;
+import static org.me.ibm.Records.feed;
+import static org.me.ibm.Records.screen;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class DataStreamParserTest {
+	private final Buffer buffer = new Buffer();
+	private final DataStreamParser parser = Records.parser(buffer);
+
+	@Test
+	void recordSplitAcrossReadsIsReassembled() throws Exception {
+		byte[] record = screen("HELLO");
+		for (int i = 0; i < record.length; i++) {
+			parser.receive(record, i, 1);
+		}
+
+		assertEquals("HELLO", buffer.string(0, 5));
+	}
+
+	@Test
+	void nothingIsAppliedBeforeEor() throws Exception {
+		byte[] record = screen("HELLO");
+		parser.receive(record, 0, record.length - 2);
+		assertEquals("     ", buffer.string(0, 5));
+
+		parser.receive(record, record.length - 2, 2);
+		assertEquals("HELLO", buffer.string(0, 5));
+	}
+
+	@Test
+	void escapedIacIsOneDataByte() throws Exception {
+		feed(parser, bytes(0xF5, 0xC3, 0x11, 0x40, 0x40, "A", 0xFF, 0xFF, "B", EOR));
+
+		assertEquals((byte) 0xFF, buffer.getEbcdicByte(1));
+		assertEquals('B', buffer.getAsciiCharacter(2));
+	}
+
+	@Test
+	void telnetCommandsInsideARecordAreDropped() throws Exception {
+		feed(parser, bytes(0xF5, 0xC3, 0x11, 0x40, 0x40, "A",
+			0xFF, 0xF1,						// IAC NOP
+			"B",
+			0xFF, 0xFD, 0x19,				// IAC DO EOR
+			"C",
+			0xFF, 0xFA, 0x18, 0x01, 0xFF, 0xF0,	// IAC SB TERMINAL-TYPE SEND IAC SE
+			"D", EOR));
+
+		assertEquals("ABCD", buffer.string(0, 4));
+	}
+
+	@Test
+	void severalRecordsInOneRead() throws Exception {
+		feed(parser, bytes(screen("ONE"), bytes(0xF1, 0xC3, 0x11, 0x40, 0x44, "TWO", EOR)));
+
+		assertEquals("ONE TWO", buffer.string(0, 7));
+	}
+
+	@Test
+	void eraseWriteAlternateIsDecodedInBothForms() throws Exception {
+		for (int command : new int[] { 0x7E, TelnetConstants.LOCAL_ERASE_WRITE_ALTERNATE }) {
+			feed(parser, bytes(0xF1, 0xC3, 0x11, 0x40, 0x40, "XXXXXXXX", EOR));
+			feed(parser, bytes(command, 0xC3, 0x11, 0x40, 0x40, "A", EOR));
+
+			assertEquals("A       ", buffer.string(0, 8));
+		}
+	}
+
+	@Test
+	void shortFormCommandsMapToTheirSnaCodes() throws Exception {
+		feed(parser, bytes(0xF1, 0xC3, 0x11, 0x40, 0x40, "XXXXXXXX", EOR));
+		feed(parser, bytes(0x05, 0xC3, 0x11, 0x40, 0x40, "A", EOR));
+
+		assertEquals("A       ", buffer.string(0, 8));
+	}
+
+	@Test
+	void resetMdtBitClearsTheModifiedFlags() throws Exception {
+		feed(parser, form());
+		type(INPUT, 'J');
+		assertTrue(buffer.isFieldModified(INPUT_FIELD));
+
+		feed(parser, bytes(0xF1, TelnetConstants.WCC_RESET_MDT, EOR));
+
+		assertFalse(buffer.isFieldModified(INPUT_FIELD));
+		assertEquals('J', buffer.getAsciiCharacter(INPUT));
+	}
+
+	@Test
+	void resetBitLeavesTheInputAlone() throws Exception {
+		feed(parser, form());
+		type(INPUT, 'J');
+
+		feed(parser, bytes(0xF1, 0xC2, EOR));
+
+		assertTrue(buffer.isFieldModified(INPUT_FIELD));
+		assertEquals('J', buffer.getAsciiCharacter(INPUT));
+	}
+
+	@Test
+	void startPrinterBitLeavesTheScreenAlone() throws Exception {
+		feed(parser, form());
+		type(INPUT, 'J');
+
+		feed(parser, bytes(0xF1, 0xC0 | TelnetConstants.WCC_START_PRINTER, TelnetConstants.SBA, 0x40, 0x48, "X", EOR));
+
+		assertEquals("J X", buffer.string(INPUT, 3));
+	}
+
+	@Test
+	void alarmBitStillRunsTheBackgroundCopy() throws Exception {
+		feed(parser, form());
+		type(INPUT, 'J');
+
+		feed(parser, bytes(0xF1, 0xC0 | TelnetConstants.WCC_SOUND_ALARM, TelnetConstants.SBA, 0x40, 0x48, "X", EOR));
+
+		// the copy blanks the screen, the restore only brings back fields the write left empty
+		assertEquals("NAME", buffer.string(1, 4));
+		assertEquals(0, buffer.getEbcdicByte(INPUT));
+		assertEquals('X', buffer.getAsciiCharacter(INPUT + 2));
+	}
+
+	@Test
+	void eraseAllUnprotectedIsDecodedInBothForms() throws Exception {
+		for (int command : new int[] { 0x6F, TelnetConstants.LOCAL_ERASE_ALL_UNPROTECTED }) {
+			feed(parser, form());
+			type(INPUT, 'J');
+			buffer.acquireLock();
+			try {
+				buffer.setAidKey(TelnetConstants.AID_ENTER & 0xFF);
+				buffer.setCursorPosition(0);
+			} finally {
+				buffer.unlock();
+			}
+
+			feed(parser, bytes(command, EOR));
+
+			assertEquals("NAME", buffer.string(1, 4));
+			assertEquals(0, buffer.getEbcdicByte(INPUT));
+			assertFalse(buffer.isFieldModified(INPUT_FIELD));
+			assertEquals(INPUT, buffer.getCursorPosition());
+			assertEquals(KeyboardState.UNLOCKED, buffer.getKeyboardState());
+		}
+	}
+
+	@Test
+	void nonBlockingParserDefersRecordsWhileTheLockIsHeld() throws Exception {
+		parser.setNonBlocking(true);
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			try {
+				buffer.acquireLock();
+				try {
+					held.countDown();
+					release.await();
+				} finally {
+					buffer.unlock();
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		holder.start();
+		held.await();
+
+		feed(parser, screen("ONE"));
+		feed(parser, screen("TWO"));
+		assertEquals(2, parser.getDeferredCount());
+		assertEquals(0, buffer.getUpdateCount());
+		assertFalse(parser.processDeferred());
+		assertTrue(buffer.getMetrics().getLockTryMissedCount() > 0);
+
+		release.countDown();
+		holder.join();
+		assertTrue(parser.processDeferred());
+		assertEquals(0, parser.getDeferredCount());
+		assertEquals(2, buffer.getUpdateCount());
+		assertEquals("TWO", buffer.string(0, 3));
+	}
+
+	private static final int INPUT_FIELD = 5;
+	private static final int INPUT = INPUT_FIELD + 1;
+
+	// a protected label at 0, an unprotected input field at 5, protected again from 16
+	private static byte[] form() {
+		return bytes(0xF5, 0xC3,
+			TelnetConstants.SF, 0x60, "NAME",
+			TelnetConstants.SF, 0x40,
+			TelnetConstants.SBA, 0x40, 0x50, TelnetConstants.SF, 0x60, EOR);
+	}
+
+	private void type(int position, char ch) throws Exception {
+		buffer.acquireLock();
+		try {
+			buffer.setAsciiCharacter(position, ch);
+		} finally {
+			buffer.unlock();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.me.ibm.Records.EOR;
+import static org.me.ibm.Records.bytes;
+import static org.me.ibm.Records.feed;
+import static org.me.ibm.Records.screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class KeyboardStateTest {
+	private final Buffer buffer = new Buffer();
+	private final DataStreamParser parser = Records.parser(buffer);
+
+	@Test
+	void newBufferWaitsForTheFirstScreen() {
+		assertEquals(KeyboardState.AWAITING_FIRST, buffer.getKeyboardState());
+		assertTrue(buffer.isKeyboardLocked());
+	}
+
+	@Test
+	void firstScreenUnlocksWithoutTheRestoreBit() throws Exception {
+		feed(parser, bytes(0xF5, 0xC0, "LOGON", EOR));
+
+		assertEquals(KeyboardState.UNLOCKED, buffer.getKeyboardState());
+	}
+
+	@Test
+	void aidLocksUntilTheHostRestoresTheKeyboard() throws Exception {
+		feed(parser, screen("READY"));
+		sendAid();
+		assertEquals(KeyboardState.LOCKED, buffer.getKeyboardState());
+
+		// reset MDT alone is an interim screen, the keyboard stays locked
+		feed(parser, bytes(0xF1, TelnetConstants.WCC_RESET_MDT, "BUSY", EOR));
+		assertEquals(KeyboardState.LOCKED, buffer.getKeyboardState());
+		assertEquals(1, buffer.getMetrics().getEorSuppressedCount());
+
+		feed(parser, bytes(0xF1, TelnetConstants.WCC_KEYBOARD_RESTORE, "DONE", EOR));
+		assertEquals(KeyboardState.UNLOCKED, buffer.getKeyboardState());
+	}
+
+	@Test
+	void resetGoesBackToWaitingForTheFirstScreen() throws Exception {
+		feed(parser, screen("READY"));
+		sendAid();
+
+		buffer.acquireLock();
+		try {
+			buffer.resetKeyboard();
+		} finally {
+			buffer.unlock();
+		}
+		assertEquals(KeyboardState.AWAITING_FIRST, buffer.getKeyboardState());
+		assertEquals(null, buffer.getAidKey());
+	}
+
+	@Test
+	void awaitKeyboardUnlockReturnsFalseWhenTheWaitRunsOut() throws Exception {
+		feed(parser, screen("READY"));
+		sendAid();
+
+		assertFalse(buffer.awaitKeyboardUnlock(50, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void awaitKeyboardUnlockWakesOnTheRestoringRecord() throws Exception {
+		feed(parser, screen("READY"));
+		sendAid();
+
+		Thread host = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+				feed(parser, screen("DONE"));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		host.start();
+
+		assertTrue(buffer.awaitKeyboardUnlock(5, TimeUnit.SECONDS));
+		assertEquals("DONE", buffer.string(0, 4));
+		host.join();
+	}
+
+	@Test
+	void wccBitsDoNotOverlap() {
+		byte[] bits = {
+			TelnetConstants.WCC_RESET_MDT,
+			TelnetConstants.WCC_KEYBOARD_RESTORE,
+			TelnetConstants.WCC_SOUND_ALARM,
+			TelnetConstants.WCC_START_PRINTER,
+			TelnetConstants.WCC_PRINT,
+			TelnetConstants.WCC_RESET
+		};
+		int seen = 0;
+		for (byte bit : bits) {
+			assertEquals(0, seen & bit);
+			seen |= bit;
+		}
+	}
+
+	private void sendAid() throws Exception {
+		buffer.acquireLock();
+		try {
+			buffer.setAidKey(TelnetConstants.AID_ENTER & 0xFF);
+		} finally {
+			buffer.unlock();
+		}
+	}
+}
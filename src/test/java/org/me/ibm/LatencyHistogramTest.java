@@ -0,0 +1,70 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+	@Test
+	void percentilesStayWithinTheBucketError() {
+		for (int bits : new int[] { LatencyHistogram.DEFAULT_SUB_BUCKET_BITS, 7 }) {
+			LatencyHistogram histogram = new LatencyHistogram(bits);
+			for (long value = 1; value <= 10_000; value++) {
+				histogram.record(value * 1000);
+			}
+			double error = 1.0 / (1 << bits);
+
+			assertEquals(10_000, histogram.getCount());
+			assertWithin(5_000_000, histogram.getValueAtPercentile(50), error);
+			assertWithin(9_900_000, histogram.getValueAtPercentile(99), error);
+			assertEquals(10_000_000, histogram.getMax());
+		}
+	}
+
+	@Test
+	void extremeValuesHaveABucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(0);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(2, histogram.getCount());
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	void addMapsBetweenPrecisions() {
+		LatencyHistogram fine = new LatencyHistogram(7);
+		for (long value = 1; value <= 1000; value++) {
+			fine.record(value);
+		}
+		LatencyHistogram coarse = new LatencyHistogram(2);
+		coarse.add(fine);
+
+		assertEquals(1000, coarse.getCount());
+		assertEquals(1000, coarse.getMax());
+		assertWithin(500, coarse.getValueAtPercentile(50), 0.25);
+	}
+
+	@Test
+	void resetEmptiesIt() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(42);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	void precisionIsChecked() {
+		assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(0));
+		assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(11));
+	}
+
+	private static void assertWithin(long expected, long actual, double error) {
+		assertTrue(Math.abs(actual - expected) <= expected * error, "expected about " + expected + " but was " + actual);
+	}
+}
@@ -0,0 +1,47 @@
+package org.me.ibm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+// builds host records for the tests, text is converted with the built-in EBCDIC table
+final class Records {
+	static final int EOR = 0x1EF; // marker for IAC EOR in bytes(), never a data byte
+
+	private Records() {
+	}
+
+	// ints so the EBCDIC values read like the data stream docs, constants may be bytes, EOR becomes IAC EOR
+	static byte[] bytes(Object... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Object part : parts) {
+			if (part instanceof String) {
+				for (char ch : ((String) part).toCharArray()) {
+					out.write(Tn3270Conversions.asciiToEbcdic(ch));
+				}
+			} else if (part instanceof byte[]) {
+				out.writeBytes((byte[]) part);
+			} else if (part instanceof Byte) {
+				out.write((Byte) part);
+			} else if ((Integer) part == EOR) {
+				out.write(TelnetConstants.IAC);
+				out.write(TelnetConstants.EOR);
+			} else {
+				out.write((Integer) part);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	// erase/write with keyboard restore and reset MDT, the text at position 0
+	static byte[] screen(String text) {
+		return bytes(0xF5, 0xC3, 0x11, 0x40, 0x40, text, EOR);
+	}
+
+	static DataStreamParser parser(Buffer buffer) {
+		return new DataStreamParser(buffer, null);
+	}
+
+	static void feed(DataStreamParser parser, byte[] data) throws IOException {
+		parser.receive(data, 0, data.length);
+	}
+}
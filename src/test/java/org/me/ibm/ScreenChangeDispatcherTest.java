@@ -0,0 +1,111 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ScreenChangeDispatcherTest {
+	// runs the dispatcher's tasks only when the test says so
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+	private final ScreenChangeDispatcher dispatcher = new ScreenChangeDispatcher(tasks::add);
+	private final ScreenChange change = new ScreenChange(1, 1L, new int[0], 0, 0, false);
+
+	@Test
+	void listenerOfBothKindsGetsBothCallbacks() {
+		BothKinds listener = new BothKinds();
+		Buffer buffer = new Buffer();
+		buffer.setDispatcher(dispatcher);
+		buffer.addScreenUpdateListener(listener);
+		buffer.addScreenChangeListener(listener);
+
+		dispatcher.submit((ScreenUpdateListener) listener, change);
+		dispatcher.submit((ScreenChangeListener) listener, change);
+		runTasks();
+
+		assertEquals(1, listener.updates.get());
+		assertEquals(1, listener.changes.get());
+	}
+
+	@Test
+	void eventsAfterRemoveAreDropped() {
+		AtomicInteger calls = new AtomicInteger();
+		ScreenChangeListener listener = ignored -> calls.incrementAndGet();
+		dispatcher.add(listener);
+		dispatcher.submit(listener, change);
+
+		dispatcher.remove(listener);
+		// a notify that read the listener list before the remove
+		dispatcher.submit(listener, change);
+		runTasks();
+
+		assertEquals(0, calls.get());
+		assertEquals(0, dispatcher.getPendingCount());
+		assertEquals(1, dispatcher.getSubmittedCount());
+	}
+
+	@Test
+	void listenersAreMovedToANewDispatcher() {
+		AtomicInteger calls = new AtomicInteger();
+		ScreenUpdateListener listener = calls::incrementAndGet;
+		Buffer buffer = new Buffer();
+		buffer.addScreenUpdateListener(listener);
+		buffer.setDispatcher(dispatcher);
+
+		dispatcher.submit(listener, change);
+		buffer.setDispatcher(null);
+		dispatcher.submit(listener, change);
+		runTasks();
+
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	void errorInAListenerDoesNotStallItsQueue() {
+		AtomicInteger calls = new AtomicInteger();
+		ScreenChangeListener listener = ignored -> {
+			if (calls.incrementAndGet() == 1) {
+				throw new AssertionError("listener bug");
+			}
+		};
+		dispatcher.add(listener);
+		dispatcher.submit(listener, change);
+		dispatcher.submit(listener, change);
+
+		assertThrows(AssertionError.class, () -> tasks.poll().run());
+		runTasks();
+
+		assertEquals(2, calls.get());
+		assertEquals(1, dispatcher.getFailedCount());
+		assertEquals(1, dispatcher.getDeliveredCount());
+
+		dispatcher.submit(listener, change);
+		runTasks();
+		assertEquals(3, calls.get());
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private static class BothKinds implements ScreenUpdateListener, ScreenChangeListener {
+		private final AtomicInteger updates = new AtomicInteger();
+		private final AtomicInteger changes = new AtomicInteger();
+
+		@Override
+		public void onScreenUpdate() {
+			updates.incrementAndGet();
+		}
+
+		@Override
+		public void onScreenChange(ScreenChange change) {
+			changes.incrementAndGet();
+		}
+	}
+}
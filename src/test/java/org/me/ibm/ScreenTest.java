@@ -0,0 +1,67 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.me.ibm.Records.feed;
+import static org.me.ibm.Records.screen;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ScreenTest {
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final Buffer buffer = new Buffer();
+	private final DataStreamParser parser = Records.parser(buffer);
+	private final Screen screen = new Screen(buffer, out);
+
+	@BeforeEach
+	void firstScreen() throws Exception {
+		feed(parser, screen("READY"));
+	}
+
+	@Test
+	void aidKeyReturnsOnceTheHostRestoresTheKeyboard() throws Exception {
+		screen.setStrictKeyboardWait(true);
+		Thread host = answerAfter(50);
+
+		screen.enter();
+
+		assertFalse(screen.isKeyboardLocked());
+		assertEquals("DONE", buffer.string(0, 4));
+		host.join();
+	}
+
+	@Test
+	void aidKeyReturnsWithTheKeyboardLockedByDefault() throws Exception {
+		screen.enter();
+
+		assertTrue(out.size() > 0);
+		assertTrue(screen.isKeyboardLocked());
+	}
+
+	@Test
+	void strictAidKeyThrowsWhenTheKeyboardStaysLocked() {
+		screen.setStrictKeyboardWait(true);
+
+		assertThrows(TimeoutException.class, screen::enter);
+		assertTrue(screen.isKeyboardLocked());
+	}
+
+	private Thread answerAfter(long millis) {
+		Thread host = new Thread(() -> {
+			try {
+				Thread.sleep(millis);
+				feed(parser, screen("DONE"));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		host.start();
+		return host;
+	}
+}
@@ -0,0 +1,66 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class Tn3270ConversionsTest {
+	@Test
+	void twelveBitAddressesUseTheCodeTable() {
+		assertArrayEquals(new byte[] { 0x40, 0x40 }, Tn3270Conversions.getPositionAddress(0));
+		assertArrayEquals(new byte[] { (byte) 0xC1, 0x50 }, Tn3270Conversions.getPositionAddress(80));
+		assertArrayEquals(new byte[] { 0x5D, 0x7F }, Tn3270Conversions.getPositionAddress(1919));
+	}
+
+	@Test
+	void twelveBitAddressesRoundTrip() {
+		byte[] address = new byte[2];
+		for (int position = 0; position <= Tn3270Conversions.MAX_12_BIT_ADDRESS; position++) {
+			Tn3270Conversions.encode12BitAddress(position, address, 0);
+			assertEquals(position, Tn3270Conversions.decodeAddress(address[0], address[1]));
+		}
+	}
+
+	@Test
+	void largerPositionsSwitchToFourteenBitBinary() {
+		assertArrayEquals(new byte[] { 0x10, 0x00 }, Tn3270Conversions.getPositionAddress(4096));
+
+		byte[] address = new byte[2];
+		for (int position = Tn3270Conversions.MAX_12_BIT_ADDRESS + 1; position <= Tn3270Conversions.MAX_14_BIT_ADDRESS; position++) {
+			Tn3270Conversions.encodeAddress(position, address, 0);
+			assertEquals(0, address[0] & 0xC0);
+			assertEquals(position, Tn3270Conversions.decodeAddress(address[0], address[1]));
+		}
+	}
+
+	@Test
+	void fourteenBitDecodingOfSmallAddresses() {
+		// hosts may send binary addresses for any position, the top bits 00 tell them apart
+		assertEquals(80, Tn3270Conversions.decodeAddress((byte) 0x00, (byte) 0x50));
+	}
+
+	@Test
+	void sixteenBitAddressesRoundTrip() {
+		byte[] address = new byte[2];
+		for (int position : new int[] { 0, 255, 256, 0x3FFF, 0x4000, Tn3270Conversions.MAX_16_BIT_ADDRESS }) {
+			Tn3270Conversions.encode16BitAddress(position, address, 0);
+			assertEquals(position, Tn3270Conversions.decode16BitAddress(address[0], address[1]));
+		}
+	}
+
+	@Test
+	void encodeWritesAtTheOffset() {
+		byte[] record = new byte[4];
+		Tn3270Conversions.encodeAddress(80, record, 2);
+		assertArrayEquals(new byte[] { 0, 0, (byte) 0xC1, 0x50 }, record);
+	}
+
+	@Test
+	void characterConversions() {
+		assertEquals((byte) 0xC1, Tn3270Conversions.asciiToEbcdic('A'));
+		assertEquals('A', Tn3270Conversions.ebcdicToAscii((byte) 0xC1));
+		assertEquals('0', Tn3270Conversions.ebcdicToAscii(0xF0));
+		assertEquals(' ', Tn3270Conversions.ebcdicToAscii((byte) 0x40));
+	}
+}
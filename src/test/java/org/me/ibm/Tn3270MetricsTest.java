@@ -0,0 +1,61 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class Tn3270MetricsTest {
+	private final Tn3270Metrics registry = new Tn3270Metrics();
+
+	@Test
+	void histogramsOnlyOnceRegistered() {
+		SessionMetrics metrics = new SessionMetrics();
+		metrics.recordParsed(1000);
+		assertFalse(metrics.isHistogramsEnabled());
+		assertNull(metrics.getParseTime());
+		assertEquals(1, metrics.getRecordsReceived());
+
+		registry.register("host:23", metrics);
+		assertTrue(metrics.isHistogramsEnabled());
+	}
+
+	@Test
+	void totalIsSummedWhenRead() {
+		SessionMetrics first = new SessionMetrics();
+		SessionMetrics second = new SessionMetrics();
+		String key = registry.register("host:23", first);
+		registry.register("host:23", second);
+
+		first.recordParsed(1000);
+		second.recordParsed(2000);
+		second.recordSent(10);
+		assertEquals(2, registry.getTotal().getRecordsReceived());
+		assertEquals(2, registry.getTotal().getParseTime().getCount());
+
+		// what a closed session counted stays in the total, later recording doesn't
+		registry.unregister(key);
+		first.recordParsed(1000);
+		assertEquals(2, registry.getTotal().getRecordsReceived());
+		assertEquals(10, registry.getTotal().getBytesSent());
+		assertEquals(1, registry.getSessions().size());
+	}
+
+	@Test
+	void tryLockIsCountedApartFromWaits() throws Exception {
+		Buffer buffer = new Buffer();
+		SessionMetrics metrics = buffer.getMetrics();
+		registry.register("host:23", metrics);
+
+		assertTrue(buffer.tryAcquireLock());
+		buffer.unlock();
+		assertEquals(1, metrics.getLockTryAcquiredCount());
+		assertEquals(0, metrics.getLockWaitTime().getCount());
+
+		buffer.acquireLock();
+		buffer.unlock();
+		assertEquals(1, metrics.getLockWaitTime().getCount());
+	}
+}
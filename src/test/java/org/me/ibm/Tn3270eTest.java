@@ -0,0 +1,127 @@
+package org.me.ibm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.me.ibm.Records.EOR;
+import static org.me.ibm.Records.bytes;
+import static org.me.ibm.Records.feed;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class Tn3270eTest {
+	private static final int ALL_FUNCTIONS = Tn3270eSession.functionBit(TelnetConstants.E_FUNC_BIND_IMAGE)
+		| Tn3270eSession.functionBit(TelnetConstants.E_FUNC_RESPONSES)
+		| Tn3270eSession.functionBit(TelnetConstants.E_FUNC_SYSREQ);
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final Buffer buffer = new Buffer();
+	private final DataStreamParser parser = Records.parser(buffer);
+	private Tn3270eSession session;
+
+	@BeforeEach
+	void connect() {
+		session = new Tn3270eSession(out, TelnetConstants.TERMINAL_TYPE_IBM3278, "LU01", ALL_FUNCTIONS);
+		buffer.setTn3270e(session);
+	}
+
+	@Test
+	void headerIsStrippedFrom3270Data() throws Exception {
+		feed(parser, bytes(0x00, 0x00, 0x00, 0x00, 0x01, 0xF5, 0xC3, 0x11, 0x40, 0x40, "READY", EOR));
+
+		assertEquals("READY", buffer.string(0, 5));
+		assertEquals(0, out.size());
+	}
+
+	@Test
+	void alwaysResponseIsAnsweredPositively() throws Exception {
+		feed(parser, bytes(0x00, 0x00, TelnetConstants.E_RSF_ALWAYS_RESPONSE, 0x00, 0x07, 0xF1, 0x40, "MSG", EOR));
+
+		assertArrayEquals(bytes(TelnetConstants.E_DT_RESPONSE, 0x00, TelnetConstants.E_RSF_POSITIVE_RESPONSE, 0x00, 0x07,
+			TelnetConstants.E_POS_DEVICE_END, EOR), out.toByteArray());
+		assertEquals(1, session.getPositiveResponseCount());
+		// the host asking for a definite response gives the keyboard back, even without the WCC bit
+		assertEquals(KeyboardState.UNLOCKED, buffer.getKeyboardState());
+	}
+
+	@Test
+	void sequenceNumbersWithIacAreEscaped() throws Exception {
+		feed(parser, bytes(0x00, 0x00, TelnetConstants.E_RSF_ALWAYS_RESPONSE, 0x00, 0xFF, 0xFF, 0xF1, 0x40, EOR));
+
+		assertArrayEquals(bytes(TelnetConstants.E_DT_RESPONSE, 0x00, TelnetConstants.E_RSF_POSITIVE_RESPONSE, 0x00, 0xFF, 0xFF,
+			TelnetConstants.E_POS_DEVICE_END, EOR), out.toByteArray());
+	}
+
+	@Test
+	void noResponseWithoutTheFunction() throws Exception {
+		buffer.setTn3270e(new Tn3270eSession(out, TelnetConstants.TERMINAL_TYPE_IBM3278, "LU01", 0));
+		feed(parser, bytes(0x00, 0x00, TelnetConstants.E_RSF_ALWAYS_RESPONSE, 0x00, 0x07, 0xF1, 0x40, "MSG", EOR));
+
+		assertEquals(0, out.size());
+		assertEquals("MSG", buffer.string(0, 3));
+	}
+
+	@Test
+	void sscpDataGoesOnAClearedScreen() throws Exception {
+		// a formatted screen whose only field is protected
+		feed(parser, bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0xF5, 0xC3, 0x1D, 0x60, "APPLICATION", EOR));
+		feed(parser, bytes(TelnetConstants.E_DT_SSCP_LU_DATA, 0x00, 0x00, 0x00, 0x01, "SSCP READY", EOR));
+
+		assertTrue(session.isSscpMode());
+		assertEquals("SSCP READY", buffer.string(0, 10));
+		assertEquals(0, buffer.getFieldCount());
+		assertEquals(KeyboardState.UNLOCKED, buffer.getKeyboardState());
+
+		feed(parser, bytes(0x00, 0x00, 0x00, 0x00, 0x02, 0xF5, 0xC3, "BACK", EOR));
+		assertFalse(session.isSscpMode());
+	}
+
+	@Test
+	void bindImageIsKeptUntilUnbind() throws Exception {
+		feed(parser, bytes(TelnetConstants.E_DT_BIND_IMAGE, 0x00, 0x00, 0x00, 0x00, 0x31, 0x01, 0x03, EOR));
+
+		assertTrue(session.isBound());
+		assertArrayEquals(new byte[] { 0x31, 0x01, 0x03 }, session.getBindImage());
+
+		feed(parser, bytes(TelnetConstants.E_DT_UNBIND, 0x00, 0x00, 0x00, 0x00, 0x01, EOR));
+		assertFalse(session.isBound());
+		assertNull(session.getBindImage());
+	}
+
+	@Test
+	void outboundSequenceOnlyCountsWithResponses() {
+		RecordBuffer header = new RecordBuffer();
+		session.appendHeader(TelnetConstants.E_DT_3270_DATA, header);
+		session.appendHeader(TelnetConstants.E_DT_3270_DATA, header);
+		assertArrayEquals(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 }, Arrays.copyOf(header.array(), header.length()));
+
+		Tn3270eSession plain = new Tn3270eSession(out, TelnetConstants.TERMINAL_TYPE_IBM3278, null, 0);
+		header.reset();
+		plain.appendHeader(TelnetConstants.E_DT_3270_DATA, header);
+		plain.appendHeader(TelnetConstants.E_DT_3270_DATA, header);
+		assertArrayEquals(new byte[10], Arrays.copyOf(header.array(), header.length()));
+	}
+
+	@Test
+	void inboundRecordsCarryTheHeader() throws Exception {
+		feed(parser, bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0xF5, 0xC3, 0x11, 0x40, 0x40, "READY", EOR));
+		Screen screen = new Screen(buffer, out);
+
+		RecordBuffer record = screen.encodeInbound(TelnetConstants.AID_ENTER, new RecordBuffer());
+		assertEquals(TelnetConstants.E_DT_3270_DATA, record.array()[0]);
+		assertEquals(TelnetConstants.AID_ENTER, record.array()[TelnetConstants.E_HEADER_SIZE]);
+	}
+
+	@Test
+	void sysreqIsTelnetAbortOutput() throws Exception {
+		session.sendSysReq();
+
+		assertArrayEquals(new byte[] { TelnetConstants.IAC, TelnetConstants.AO }, out.toByteArray());
+	}
+}